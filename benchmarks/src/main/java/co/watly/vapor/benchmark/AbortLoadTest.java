@@ -0,0 +1,106 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import co.watly.vapor.controller.DroneStatus;
+import co.watly.vapor.controller.FleetController;
+import co.watly.vapor.controller.PlanningMode;
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDrone;
+import co.watly.vapor.model.IDroneData;
+
+/**
+ * Load test of the fleet-wide emergency abort: all the drones are put in flight on maneuvers that last minutes,
+ * then {@link FleetController#abortAll()} is called. For each drone it measures the time from the abort call 
+ * to the emergency landing reaching the drone.
+ * Usage: AbortLoadTest [drones] [landing delay in ms]
+ * @author Marco Vasapollo
+ *
+ */
+public final class AbortLoadTest {
+    
+    private static final long MANEUVER_DELAY = TimeUnit.MINUTES.toMillis(10);
+    
+    private AbortLoadTest() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int drones = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        long landingDelay = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(2);
+        Itinerary[] itineraries = Fixtures.itineraries(1024, 11);
+        // When each drone received its landing, in System.nanoTime()
+        long[] landingReceived = new long[drones];
+        try (FleetController fleet = new FleetController()) {
+            for (int i = 0; i < drones; i++) {
+                VaporController controller = fleet.register("drone-" + i, stormDrone(timer, landingReceived, i, landingDelay));
+                controller.setPlanningMode(PlanningMode.COMPILED);
+            }
+            for (int i = 0; i < drones; i++) {
+                fleet.getController("drone-" + i).whenReady().join();
+                fleet.submit("drone-" + i, itineraries[i & (itineraries.length - 1)]);
+            }
+            while (fleet.getStatuses().values().stream().anyMatch(status -> status != DroneStatus.FLYING)) {
+                Thread.sleep(10);
+            }
+            
+            long start = System.nanoTime();
+            CompletableFuture<Void> landed = fleet.abortAll();
+            long broadcast = System.nanoTime() - start;
+            landed.join();
+            long allLanded = System.nanoTime() - start;
+            
+            long[] latencies = new long[drones];
+            for (int i = 0; i < drones; i++) {
+                latencies[i] = landingReceived[i] - start;
+            }
+            Arrays.sort(latencies);
+            long aborted = fleet.getStatuses().values().stream().filter(status -> status == DroneStatus.ABORTED).count();
+            System.err.println(drones + " drones aborted (" + aborted + " reported as aborted), broadcast in " + micros(broadcast) + " us, all landed in " + TimeUnit.NANOSECONDS.toMillis(allLanded) + " ms");
+            System.err.println("Abort to landing command latency: p50 " + micros(latencies[drones / 2]) + " us, p99 " + micros(latencies[(int) (drones * 0.99)]) + " us, max " + micros(latencies[drones - 1]) + " us");
+        }
+        finally {
+            timer.shutdownNow();
+        }
+    }
+    
+    /**
+     * A drone whose maneuvers last minutes, but the landing
+     */
+    private static IDrone stormDrone(ScheduledExecutorService timer, long[] landingReceived, int index, long landingDelay) {
+        final CompletableFuture<IDroneData> data = CompletableFuture.completedFuture(Fixtures.droneData());
+        return (IDrone) Proxy.newProxyInstance(IDrone.class.getClassLoader(), new Class<?>[] { IDrone.class }, (proxy, method, args) -> {
+            if ("getData".equals(method.getName())) {
+                return data;
+            }
+            boolean landing = "down".equals(method.getName());
+            if (landing) {
+                landingReceived[index] = System.nanoTime();
+            }
+            CompletableFuture<Void> maneuver = new CompletableFuture<>();
+            timer.schedule(() -> maneuver.complete(null), landing ? landingDelay : MANEUVER_DELAY, TimeUnit.MILLISECONDS);
+            return maneuver;
+        });
+    }
+    
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import co.watly.vapor.controller.Assignment;
+import co.watly.vapor.controller.AssignmentSolver;
+import co.watly.vapor.controller.FeasibilityMatrix;
+import co.watly.vapor.controller.FeasibilityScreen;
+import co.watly.vapor.controller.FleetController;
+import co.watly.vapor.controller.PlanningMode;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDroneData;
+
+/**
+ * Load test of the drone to itinerary assignment: a wave of delivery rounds against a mixed fleet.
+ * It reports the screening and solving times, compares the total flight time with taking the itineraries in order,
+ * checks the gap from the optimum on a small wave (exact Hungarian algorithm) and dispatches a wave through a {@link FleetController}.
+ * Usage: AssignmentLoadTest [itineraries] [drones] [stops per round]
+ * @author Marco Vasapollo
+ *
+ */
+public final class AssignmentLoadTest {
+    
+    private static final int EXACT_SIZE = 300;
+    
+    private static final int DISPATCHED_DRONES = 200;
+    
+    // Beyond any total flight time: the exact assignment first maximizes the assigned itineraries
+    private static final long INFEASIBLE = 1L << 40;
+    
+    private AssignmentLoadTest() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int itineraryCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int droneCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int stops = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        FeasibilityScreen screen = new FeasibilityScreen();
+        
+        Random random = new Random(7);
+        List<IDroneData> drones = fleet(droneCount, random);
+        for (int itineraries : new int[] { itineraryCount, droneCount }) {
+            List<Itinerary> wave = Arrays.asList(Fixtures.rounds(itineraries, stops, 42));
+            long start = System.nanoTime();
+            FeasibilityMatrix matrix = screen.screen(wave, drones, pool, pool.getParallelism()).join();
+            long screened = System.nanoTime() - start;
+            Assignment assignment = AssignmentSolver.solve(matrix);
+            long solved = System.nanoTime() - start - screened;
+            long[] inOrder = inOrder(matrix);
+            System.err.println(itineraries + "x" + droneCount + ": screened in " + TimeUnit.NANOSECONDS.toMillis(screened) + " ms, solved in " + TimeUnit.NANOSECONDS.toMillis(solved) + " ms, " 
+                    + assignment.getAssignedCount() + " assigned in " + TimeUnit.MILLISECONDS.toSeconds(assignment.getTotalFlightTime()) + " s of flight; in order: " 
+                    + inOrder[0] + " assigned in " + TimeUnit.MILLISECONDS.toSeconds(inOrder[1]) + " s");
+        }
+        
+        List<Itinerary> small = Arrays.asList(Fixtures.rounds(EXACT_SIZE, stops, 43));
+        FeasibilityMatrix matrix = screen.screen(small, fleet(EXACT_SIZE + EXACT_SIZE / 3, random), pool, pool.getParallelism()).join();
+        Assignment assignment = AssignmentSolver.solve(matrix);
+        long optimum = hungarian(matrix);
+        System.err.println(EXACT_SIZE + " itineraries: " + assignment.getAssignedCount() + " assigned in " + assignment.getTotalFlightTime() + " ms, optimum " + optimum % INFEASIBLE + " ms with " 
+                + (EXACT_SIZE - optimum / INFEASIBLE) + " assigned, gap " + String.format("%.2f", 100.0 * (assignment.getTotalFlightTime() - optimum % INFEASIBLE) / (optimum % INFEASIBLE)) + "%");
+        
+        try (FleetController fleet = new FleetController()) {
+            List<IDroneData> fleetData = fleet(DISPATCHED_DRONES, random);
+            for (int i = 0; i < DISPATCHED_DRONES; i++) {
+                fleet.register("drone-" + i, Fixtures.drone(fleetData.get(i))).setPlanningMode(PlanningMode.COMPILED);
+                fleet.getController("drone-" + i).whenReady().join();
+            }
+            List<Itinerary> wave = Arrays.asList(Fixtures.rounds(DISPATCHED_DRONES * 3 / 4, stops, 44));
+            Assignment dispatched = fleet.dispatch(wave, screen, pool).join();
+            int failed = 0;
+            for (int i = 0; i < wave.size(); i++) {
+                CompletableFuture<Void> mission = dispatched.getMission(i);
+                if (mission != null && mission.handle((v, e) -> e).join() != null) {
+                    failed++;
+                }
+            }
+            System.err.println(wave.size() + " itineraries dispatched to " + DISPATCHED_DRONES + " drones: " + dispatched.getAssignedCount() + " assigned, " + failed + " missions failed");
+        }
+    }
+    
+    private static List<IDroneData> fleet(int size, Random random) {
+        List<IDroneData> drones = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            drones.add(Fixtures.droneData(random));
+        }
+        return drones;
+    }
+    
+    /**
+     * Each itinerary, in the wave order, takes its fastest free drone
+     * @return assigned itineraries and their total flight time
+     */
+    private static long[] inOrder(FeasibilityMatrix matrix) {
+        boolean[] busy = new boolean[matrix.getDroneCount()];
+        long assigned = 0;
+        long total = 0;
+        for (int itinerary = 0; itinerary < matrix.getItineraryCount(); itinerary++) {
+            int fastest = -1;
+            for (int drone = 0; drone < busy.length; drone++) {
+                if (!busy[drone] && matrix.isFeasible(itinerary, drone) && (fastest < 0 || matrix.getFlightTime(itinerary, drone) < matrix.getFlightTime(itinerary, fastest))) {
+                    fastest = drone;
+                }
+            }
+            if (fastest >= 0) {
+                busy[fastest] = true;
+                assigned++;
+                total += matrix.getFlightTime(itinerary, fastest);
+            }
+        }
+        return new long[] { assigned, total };
+    }
+    
+    /**
+     * Exact minimum cost assignment of every itinerary (rows) to a distinct drone (columns), infeasible pairs cost {@link #INFEASIBLE}
+     * @return the minimum cost: unassigned itineraries times {@link #INFEASIBLE} plus the total flight time
+     */
+    private static long hungarian(FeasibilityMatrix matrix) {
+        int n = matrix.getItineraryCount();
+        int m = matrix.getDroneCount();
+        long[] u = new long[n + 1];
+        long[] v = new long[m + 1];
+        int[] p = new int[m + 1];
+        int[] way = new int[m + 1];
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            long[] minv = new long[m + 1];
+            Arrays.fill(minv, Long.MAX_VALUE);
+            boolean[] used = new boolean[m + 1];
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                long delta = Long.MAX_VALUE;
+                int j1 = 0;
+                for (int j = 1; j <= m; j++) {
+                    if (!used[j]) {
+                        long cost = matrix.isFeasible(i0 - 1, j - 1) ? matrix.getFlightTime(i0 - 1, j - 1) : INFEASIBLE;
+                        long current = cost - u[i0] - v[j];
+                        if (current < minv[j]) {
+                            minv[j] = current;
+                            way[j] = j0;
+                        }
+                        if (minv[j] < delta) {
+                            delta = minv[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    }
+                    else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            }
+            while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            }
+            while (j0 != 0);
+        }
+        long cost = 0;
+        for (int j = 1; j <= m; j++) {
+            if (p[j] != 0) {
+                cost += matrix.isFeasible(p[j] - 1, j - 1) ? matrix.getFlightTime(p[j] - 1, j - 1) : INFEASIBLE;
+            }
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.util.JSON;
+
+/**
+ * Cost of decoding the Vapor Generator output into Drone Commands
+ * @author Marco Vasapollo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodingBenchmark {
+    
+    private String json;
+    
+    @Setup
+    public void setup() {
+        json = JSON.convert(Fixtures.controller().compile(Fixtures.itineraries(1, 42)[0]));
+    }
+    
+    @Benchmark
+    public DroneCommand[] fromJSON() {
+        return DroneCommand.fromJSON(json);
+    }
+    
+    @Benchmark
+    public DroneCommand[] parse() {
+        return JSON.parse(json, DroneCommand[].class);
+    }
+    
+    @Benchmark
+    public int stream(Blackhole blackhole) {
+        return DroneCommand.fromJSON(new StringReader(json), blackhole::consume);
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.model.IDrone;
+import co.watly.vapor.util.DroneCommandMapper;
+
+/**
+ * Per-command overhead of mapping a Drone Command onto the {@link IDrone} method, against a stub drone.
+ * The reflective benchmarks measure the original dispatch, as a baseline for the precompiled one
+ * @author Marco Vasapollo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    
+    private IDrone drone;
+    private DroneCommand move;
+    private DroneCommand rotation;
+    
+    @Setup
+    public void setup() {
+        drone = Fixtures.drone();
+        DroneCommand[] droneCommands = Fixtures.controller().compile(Fixtures.itineraries(1, 42)[0]);
+        for (DroneCommand droneCommand : droneCommands) {
+            if ("rotate".equals(droneCommand.getName())) {
+                rotation = droneCommand;
+            }
+            else {
+                move = droneCommand;
+            }
+        }
+    }
+    
+    @Benchmark
+    public CompletableFuture<Void> invokeMove() {
+        return DroneCommandMapper.invoke(move.getName(), move.getSpeed(), move.getArg(), drone);
+    }
+    
+    @Benchmark
+    public CompletableFuture<Void> invokeRotate() {
+        return DroneCommandMapper.invoke(rotation.getName(), rotation.getSpeed(), rotation.getArg(), drone);
+    }
+    
+    @Benchmark
+    public CompletableFuture<Void> invokeMoveReflective() {
+        return ReflectiveDispatch.invoke(move.getName(), move.getSpeed(), move.getArg(), drone);
+    }
+    
+    @Benchmark
+    public CompletableFuture<Void> invokeRotateReflective() {
+        return ReflectiveDispatch.invoke(rotation.getName(), rotation.getSpeed(), rotation.getArg(), drone);
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.watly.vapor.controller.BoundedExecutor;
+import co.watly.vapor.controller.ExecutionContext;
+import co.watly.vapor.controller.ExecutionMode;
+import co.watly.vapor.controller.PlanningMode;
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDrone;
+import co.watly.vapor.model.IDroneData;
+import co.watly.vapor.telemetry.Measure;
+import co.watly.vapor.telemetry.MetricsTelemetry;
+
+/**
+ * Load test of the {@link ExecutionContext}: drones fly while a burst of plans is requested, 
+ * once with everything on the common pool and once with bounded planning and drone executors.
+ * The drones complete their maneuvers through the common pool, as drone SDKs delivering their callbacks asynchronously do.
+ * It reports the dispatch overhead of the flights (flight time beyond the maneuvers, per command), 
+ * how much of the burst has been planned or shed, and the saturation of the bounded executors.
+ * Usage: ExecutionContextLoadTest [flying drones] [burst plans] [maneuver delay in ms]
+ * @author Marco Vasapollo
+ *
+ */
+public final class ExecutionContextLoadTest {
+    
+    private static final int PLANNING_QUEUE_DEPTH = 256;
+    private static final int DRONE_THREADS = 2;
+    private static final int DRONE_QUEUE_DEPTH = 4096;
+    
+    private ExecutionContextLoadTest() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int flights = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int burst = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        long maneuverDelay = args.length > 2 ? Long.parseLong(args[2]) : 5;
+        
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(1);
+        Itinerary[] itineraries = Fixtures.itineraries(1024, 11);
+        VaporController compiler = Fixtures.controller();
+        compiler.setPlanningMode(PlanningMode.COMPILED);
+        DroneCommand[][] plans = new DroneCommand[64][];
+        for (int i = 0; i < plans.length; i++) {
+            plans[i] = compiler.compile(itineraries[i]);
+        }
+        try {
+            // Warm-up, so that both runs find the code compiled
+            run("Warm-up", ExecutionContext.COMMON, timer, plans, itineraries, flights, burst, maneuverDelay);
+            run("Common pool", ExecutionContext.COMMON, timer, plans, itineraries, flights, burst, maneuverDelay);
+            // A core is left to the drone calls
+            try (ExecutionContext bounded = new ExecutionContext(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), PLANNING_QUEUE_DEPTH, DRONE_THREADS, DRONE_QUEUE_DEPTH)) {
+                MetricsTelemetry metrics = new MetricsTelemetry();
+                bounded.setTelemetry(metrics);
+                run("Bounded", bounded, timer, plans, itineraries, flights, burst, maneuverDelay);
+                for (BoundedExecutor executor : new BoundedExecutor[] { (BoundedExecutor) bounded.getPlanningExecutor(), (BoundedExecutor) bounded.getDroneExecutor() }) {
+                    System.err.println("    " + executor.getName() + ": peak queue " + executor.getPeakQueueSize() + "/" + executor.getQueueDepth() + ", " + executor.getSaturatedCount() + " saturated, " + executor.getRejectionPolicy());
+                }
+                System.err.println("    queue wait p99: planning " + metrics.getHistogram(Measure.PLANNING_QUEUE_WAIT).getPercentile(99) + " us, drone calls " + metrics.getHistogram(Measure.DRONE_QUEUE_WAIT).getPercentile(99) + " us");
+            }
+        }
+        finally {
+            timer.shutdownNow();
+        }
+    }
+    
+    private static void run(String name, ExecutionContext context, ScheduledExecutorService timer, DroneCommand[][] plans, Itinerary[] itineraries, int flights, int burst, long maneuverDelay) {
+        VaporController[] controllers = new VaporController[flights];
+        for (int i = 0; i < flights; i++) {
+            controllers[i] = Fixtures.ready(new VaporController(callbackDrone(timer, maneuverDelay), ExecutionMode.ASYNC, context));
+            controllers[i].setDroneCommands(plans[i % plans.length]);
+        }
+        VaporController planner = Fixtures.ready(new VaporController(Fixtures.drone(), ExecutionMode.ASYNC, context));
+        planner.setPlanningMode(PlanningMode.COMPILED);
+        
+        final AtomicLong overheadTotal = new AtomicLong();
+        final AtomicLong overheadMax = new AtomicLong();
+        CompletableFuture<?>[] flown = new CompletableFuture<?>[flights];
+        for (int i = 0; i < flights; i++) {
+            final int commands = controllers[i].getDroneCommands().length;
+            final long start = System.nanoTime();
+            flown[i] = controllers[i].fly().thenRun(() -> {
+                long overhead = (TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) - commands * maneuverDelay * 1000) / commands;
+                overheadTotal.addAndGet(overhead);
+                overheadMax.accumulateAndGet(overhead, Math::max);
+            });
+        }
+        
+        final AtomicInteger planned = new AtomicInteger();
+        final AtomicInteger shed = new AtomicInteger();
+        long burstStart = System.nanoTime();
+        CompletableFuture<?>[] burstPlans = new CompletableFuture<?>[burst];
+        for (int i = 0; i < burst; i++) {
+            burstPlans[i] = planner.plan(itineraries[i & (itineraries.length - 1)]).handle((droneCommands, error) -> (error == null ? planned : shed).incrementAndGet());
+        }
+        CompletableFuture.allOf(burstPlans).join();
+        long burstTime = System.nanoTime() - burstStart;
+        CompletableFuture.allOf(flown).join();
+        
+        System.err.println(name + ": " + flights + " flights, dispatch overhead per command " + overheadTotal.get() / flights + " us mean, " + overheadMax.get() + " us max; burst of " + burst + " plans: " 
+                + planned.get() + " planned, " + shed.get() + " shed in " + TimeUnit.NANOSECONDS.toMillis(burstTime) + " ms");
+    }
+    
+    /**
+     * @return a drone whose maneuvers last the given delay and complete on the common pool
+     */
+    private static IDrone callbackDrone(ScheduledExecutorService timer, long delay) {
+        final CompletableFuture<IDroneData> data = CompletableFuture.completedFuture(Fixtures.droneData());
+        return (IDrone) Proxy.newProxyInstance(IDrone.class.getClassLoader(), new Class<?>[] { IDrone.class }, (proxy, method, args) -> {
+            if ("getData".equals(method.getName())) {
+                return data;
+            }
+            CompletableFuture<Void> maneuver = new CompletableFuture<>();
+            timer.schedule(() -> ForkJoinPool.commonPool().execute(() -> maneuver.complete(null)), delay, TimeUnit.MILLISECONDS);
+            return maneuver;
+        });
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.ea.async.Async;
+
+import co.watly.vapor.controller.ExecutionMode;
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.Itinerary;
+
+/**
+ * Compares the {@link ExecutionMode}s: startup time (ea-async instrumentation or virtual thread executor,
+ * plus the first setup and flight) and scalability of many concurrent setups and flights.
+ * Run each mode in its own JVM, so that startup costs are not shared.
+ * Usage: ExecutionModeLoadTest ASYNC|VIRTUAL_THREADS [concurrent flights] [maneuver delay in ms]
+ * @author Marco Vasapollo
+ *
+ */
+public final class ExecutionModeLoadTest {
+    
+    private ExecutionModeLoadTest() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        ExecutionMode mode = ExecutionMode.valueOf(args.length > 0 ? args[0] : ExecutionMode.ASYNC.name());
+        int flights = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        long maneuverDelay = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(2);
+        Itinerary[] itineraries = Fixtures.itineraries(1024, 11);
+        try {
+            long start = System.nanoTime();
+            if (mode == ExecutionMode.ASYNC) {
+                Async.init();
+            }
+            VaporController first = Fixtures.ready(new VaporController(Fixtures.delayedDrone(timer, 0), mode));
+            first.setup(itineraries[0]).thenCompose(v -> first.fly()).join();
+            long startup = System.nanoTime() - start;
+            
+            VaporController[] controllers = new VaporController[flights];
+            for (int i = 0; i < flights; i++) {
+                controllers[i] = new VaporController(Fixtures.delayedDrone(timer, maneuverDelay), mode);
+            }
+            for (VaporController controller : controllers) {
+                Fixtures.ready(controller);
+            }
+            start = System.nanoTime();
+            CompletableFuture<?>[] results = new CompletableFuture<?>[flights];
+            for (int i = 0; i < flights; i++) {
+                final VaporController controller = controllers[i];
+                results[i] = controller.setup(itineraries[i & (itineraries.length - 1)]).thenCompose(v -> controller.fly());
+            }
+            CompletableFuture.allOf(results).join();
+            long elapsed = System.nanoTime() - start;
+            System.err.println(mode + ": startup " + TimeUnit.NANOSECONDS.toMillis(startup) + " ms, " + flights + " concurrent flights in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms: " + (long) (flights / (elapsed / 1e9)) + " flights/sec");
+        }
+        finally {
+            timer.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import co.watly.vapor.controller.FleetController;
+import co.watly.vapor.controller.PlanningMode;
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.Itinerary;
+
+/**
+ * Load test of the {@link FleetController}: a few thousand stub drones, each one flying a few missions.
+ * Stub maneuvers complete after a fixed delay on a shared timer, so the test measures the controller overhead.
+ * Usage: FleetLoadTest [drones] [missions per drone] [maneuver delay in ms]
+ * @author Marco Vasapollo
+ *
+ */
+public final class FleetLoadTest {
+    
+    private FleetLoadTest() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int drones = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int missions = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        long maneuverDelay = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(2);
+        Itinerary[] itineraries = Fixtures.itineraries(1024, 7);
+        try (FleetController fleet = new FleetController()) {
+            for (int i = 0; i < drones; i++) {
+                VaporController controller = fleet.register("drone-" + i, Fixtures.delayedDrone(timer, maneuverDelay));
+                controller.setPlanningMode(PlanningMode.COMPILED);
+            }
+            for (int i = 0; i < drones; i++) {
+                fleet.getController("drone-" + i).whenReady().join();
+            }
+            
+            long start = System.nanoTime();
+            List<CompletableFuture<Void>> results = new ArrayList<>(drones * missions);
+            for (int m = 0; m < missions; m++) {
+                for (int i = 0; i < drones; i++) {
+                    results.add(fleet.submit("drone-" + i, itineraries[(i + m) & (itineraries.length - 1)]));
+                }
+            }
+            int failed = 0;
+            for (CompletableFuture<Void> result : results) {
+                try {
+                    result.join();
+                }
+                catch (RuntimeException e) {
+                    failed++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.err.println(drones + " drones, " + results.size() + " missions (" + failed + " failed) in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms: " + (long) (results.size() / (elapsed / 1e9)) + " missions/sec");
+        }
+        finally {
+            timer.shutdownNow();
+        }
+    }
+}
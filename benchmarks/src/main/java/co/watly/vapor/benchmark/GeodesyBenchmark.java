@@ -0,0 +1,101 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import co.watly.vapor.util.GeoPoints;
+
+/**
+ * One-to-many distance and bearing queries (e.g. nearest drone) over {@link #POINTS} points:
+ * the per-call controller methods against the {@link GeoPoints} batch kernel.
+ * Scores are per coordinate pair
+ * @author Marco Vasapollo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeodesyBenchmark {
+    
+    private static final int POINTS = 4096;
+    
+    private double[] latitudes;
+    private double[] longitudes;
+    private GeoPoints geoPoints;
+    private double[] out;
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(5);
+        latitudes = new double[POINTS];
+        longitudes = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            latitudes[i] = 45.4 + random.nextDouble() * 0.2;
+            longitudes[i] = 9.1 + random.nextDouble() * 0.2;
+        }
+        geoPoints = new GeoPoints(latitudes, longitudes);
+        out = new double[POINTS];
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void legacyDistances(Blackhole blackhole) {
+        for (int j = 0; j < POINTS; j++) {
+            blackhole.consume(LegacyGeodesy.calculateDistance(latitudes[0], latitudes[j], longitudes[0], longitudes[j]));
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double[] kernelDistances() {
+        geoPoints.distances(0, out);
+        return out;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public int kernelNearest() {
+        return geoPoints.nearest(45.5, 9.2);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void legacyAngles(Blackhole blackhole) {
+        for (int j = 0; j < POINTS; j++) {
+            blackhole.consume(LegacyGeodesy.calculateAngle(latitudes[0], latitudes[j], longitudes[0], longitudes[j]));
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double[] kernelBearings() {
+        geoPoints.bearings(0, out);
+        return out;
+    }
+}
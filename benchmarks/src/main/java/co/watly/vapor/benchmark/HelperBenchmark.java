@@ -0,0 +1,72 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.watly.vapor.util.Helper;
+import co.watly.vapor.util.Template;
+
+/**
+ * Cost of the string templating used for every DSL sentence and log line,
+ * through the stringFormat facade and through precompiled templates rendered into a reused buffer
+ * @author Marco Vasapollo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HelperBenchmark {
+    
+    private static final Template MOVE = Template.compile("{0} at {1} cm/sec for {2} milliseconds");
+    
+    private static final Template ROTATE = Template.compile("rotate at {0} cm/sec {1} degrees");
+    
+    private final StringBuilder buffer = new StringBuilder(128);
+    private long speed = 540;
+    private long duration = 356637;
+    private double degrees = 26.56505117707392;
+    
+    @Benchmark
+    public String moveSentence() {
+        return Helper.stringFormat("{0} at {1} cm/sec for {2} milliseconds", "forward", speed, duration);
+    }
+    
+    @Benchmark
+    public String rotateSentence() {
+        return Helper.stringFormat("rotate at {0} cm/sec {1} degrees", speed, degrees);
+    }
+    
+    @Benchmark
+    public StringBuilder moveTemplate() {
+        buffer.setLength(0);
+        return MOVE.appendTo(buffer, "forward", speed, duration);
+    }
+    
+    @Benchmark
+    public StringBuilder rotateTemplate() {
+        buffer.setLength(0);
+        return ROTATE.appendTo(buffer, speed, degrees);
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+/**
+ * The per-call distance and angle calculations of the VaporController, kept as the baseline of {@link GeodesyBenchmark}
+ * @author Marco Vasapollo
+ *
+ */
+final class LegacyGeodesy {
+    
+    private LegacyGeodesy() {
+    }
+    
+    static long calculateDistance(double lat1, double lat2, double lon1, double lon2) {
+        final int R = 6371; // Radius of the earth
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lonDistance = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2) + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        double distance = R * c * 100000;
+        return (long) distance;
+    }
+    
+    static double calculateAngle(double lat1, double lat2, double lon1, double lon2) {
+        double angle = Math.toDegrees(Math.atan2(lat2 - lat1, lon2 - lon1));
+        angle = angle + Math.ceil(-angle / 360) * 360;
+        return angle;
+    }
+}
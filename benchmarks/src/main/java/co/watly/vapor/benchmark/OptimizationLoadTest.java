@@ -0,0 +1,106 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import co.watly.vapor.controller.EnergyModel;
+import co.watly.vapor.controller.OverlapPolicy;
+import co.watly.vapor.controller.PlanOptimizer;
+import co.watly.vapor.controller.PlanningMode;
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.simulation.SimulatedDrone;
+import co.watly.vapor.simulation.SimulationClock;
+import co.watly.vapor.telemetry.Measure;
+import co.watly.vapor.telemetry.MetricsTelemetry;
+import co.watly.vapor.telemetry.Phase;
+import co.watly.vapor.util.GeoPoints;
+
+/**
+ * Load test of the {@link PlanOptimizer}: delivery rounds are compiled and optimized, for drones flying a maneuver at a time 
+ * and for drones that can fly forward while climbing. It reports the flight time, journey and commands saved per plan, 
+ * and flies a sample of plans, as compiled and as optimized, on simulated drones: both must land at the same point with the same heading.
+ * Usage: OptimizationLoadTest [plans] [stops per round]
+ * @author Marco Vasapollo
+ *
+ */
+public final class OptimizationLoadTest {
+    
+    // Climbs can run together with forwards, anything else waits
+    private static final OverlapPolicy CLIMB_WHILE_FORWARD = (running, next) -> "up".equals(running.getName()) && "forward".equals(next.getName());
+    
+    private static final int SIMULATED_PLANS = 1000;
+    
+    private OptimizationLoadTest() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int plans = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int stops = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        Itinerary[] rounds = Fixtures.rounds(plans, stops, 42);
+        
+        for (OverlapPolicy overlapPolicy : new OverlapPolicy[] { OverlapPolicy.SEQUENTIAL, CLIMB_WHILE_FORWARD }) {
+            MetricsTelemetry metrics = new MetricsTelemetry();
+            VaporController controller = Fixtures.controller();
+            controller.setPlanningMode(PlanningMode.COMPILED);
+            controller.setOverlapPolicy(overlapPolicy);
+            controller.setTelemetry(metrics);
+            PlanOptimizer optimizer = new PlanOptimizer(overlapPolicy);
+            controller.setPlanOptimizer(optimizer);
+            long flightTime = 0;
+            for (Itinerary round : rounds) {
+                controller.setPlanOptimizer(null);
+                flightTime += optimizer.flightTime(controller.compile(round));
+                controller.setPlanOptimizer(optimizer);
+                controller.compile(round);
+            }
+            long saved = metrics.getHistogram(Measure.FLIGHT_TIME_SAVED).getTotal();
+            System.err.println((overlapPolicy == OverlapPolicy.SEQUENTIAL ? "Sequential" : "Climb while forward") + ": " + plans + " plans optimized in " 
+                    + TimeUnit.NANOSECONDS.toMicros((long) metrics.getHistogram(Phase.OPTIMIZE).getMean()) + " us each, saving " + saved / plans + " ms of flight (" 
+                    + String.format("%.1f", 100.0 * saved / flightTime) + "%), " + metrics.getHistogram(Measure.JOURNEY_SAVED).getTotal() / plans + " cm of journey and " 
+                    + String.format("%.2f", (double) metrics.getHistogram(Measure.COMMANDS_SAVED).getTotal() / plans) + " commands per plan");
+            
+            double worstDistance = 0;
+            double worstHeading = 0;
+            for (int i = 0; i < SIMULATED_PLANS; i++) {
+                DroneCommand[] compiled = controller.compile(rounds[i]);
+                controller.setPlanOptimizer(null);
+                SimulatedDrone original = fly(rounds[i], controller.compile(rounds[i]), overlapPolicy);
+                controller.setPlanOptimizer(optimizer);
+                SimulatedDrone optimized = fly(rounds[i], compiled, overlapPolicy);
+                Coordinates a = original.getPosition();
+                Coordinates b = optimized.getPosition();
+                worstDistance = Math.max(worstDistance, Math.hypot(GeoPoints.distance(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude()), a.getHeight() - b.getHeight()));
+                double heading = Math.abs(original.getHeading() - optimized.getHeading()) % 360;
+                worstHeading = Math.max(worstHeading, Math.min(heading, 360 - heading));
+            }
+            System.err.println("\t" + SIMULATED_PLANS + " plans flown as compiled and as optimized: landed within " + String.format("%.1f", worstDistance) 
+                    + " cm, headings within " + String.format("%.6f", worstHeading) + " degrees");
+        }
+    }
+    
+    private static SimulatedDrone fly(Itinerary itinerary, DroneCommand[] droneCommands, OverlapPolicy overlapPolicy) {
+        SimulationClock clock = new SimulationClock();
+        SimulatedDrone drone = new SimulatedDrone(clock, Fixtures.droneData(), itinerary.getStart(), 0);
+        VaporController controller = new VaporController(drone.getDrone());
+        controller.setOverlapPolicy(overlapPolicy);
+        clock.run(controller.whenReady());
+        controller.setDroneCommands(droneCommands);
+        CompletableFuture<Void> flight = controller.fly();
+        clock.run(flight);
+        flight.join();
+        return drone;
+    }
+}
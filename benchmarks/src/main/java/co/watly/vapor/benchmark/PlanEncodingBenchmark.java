@@ -0,0 +1,87 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.util.BinaryPlan;
+import co.watly.vapor.util.JSON;
+
+/**
+ * JSON against {@link BinaryPlan} encoding of a delivery round plan.
+ * The encoded sizes of both formats are printed at setup
+ * @author Marco Vasapollo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlanEncodingBenchmark {
+    
+    @Param({ "0", "10", "50" })
+    public int stops;
+    
+    private DroneCommand[] plan;
+    private String json;
+    private ByteBuffer binary;
+    private ByteBuffer out;
+    
+    @Setup
+    public void setup() {
+        plan = Fixtures.controller().compile(Fixtures.rounds(1, stops, 42)[0]);
+        json = JSON.convert(plan);
+        binary = BinaryPlan.encode(plan);
+        out = ByteBuffer.allocate(BinaryPlan.encodedSize(plan));
+        System.out.println();
+        System.out.println(plan.length + " commands: JSON " + json.getBytes(StandardCharsets.UTF_8).length + " bytes, binary " + binary.remaining() + " bytes");
+    }
+    
+    @Benchmark
+    public String encodeJSON() {
+        return JSON.convert(plan);
+    }
+    
+    @Benchmark
+    public ByteBuffer encodeBinary() {
+        out.clear();
+        BinaryPlan.encode(plan, out);
+        return out;
+    }
+    
+    @Benchmark
+    public DroneCommand[] decodeJSON() {
+        return DroneCommand.fromJSON(json);
+    }
+    
+    @Benchmark
+    public DroneCommand[] decodeBinary() {
+        binary.rewind();
+        return BinaryPlan.decode(binary);
+    }
+}
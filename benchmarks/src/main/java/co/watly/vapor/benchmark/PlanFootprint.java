@@ -0,0 +1,77 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.util.JSON;
+import co.watly.vapor.util.PlanStore;
+
+/**
+ * Measures the heap taken by many stored plans: as arrays of {@link DroneCommand}s decoded from JSON, as the Vapor Generator output is,
+ * or packed into a {@link PlanStore}. Run it with a heap large enough for the plans, e.g. -Xmx4g.
+ * Usage: PlanFootprint [objects|store] [plans] [stops per round]
+ * @author Marco Vasapollo
+ *
+ */
+public final class PlanFootprint {
+    
+    private PlanFootprint() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "objects";
+        int plans = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        int stops = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        
+        VaporController controller = Fixtures.controller();
+        Itinerary[] itineraries = Fixtures.rounds(1024, stops, 42);
+        String[] json = new String[itineraries.length];
+        for (int i = 0; i < itineraries.length; i++) {
+            json[i] = JSON.convert(controller.compile(itineraries[i]));
+        }
+        
+        long before = usedHeap();
+        Object retained;
+        long commands = 0;
+        if ("store".equals(mode)) {
+            PlanStore store = new PlanStore(plans, plans * (2 * stops + 5));
+            for (int i = 0; i < plans; i++) {
+                store.add(DroneCommand.fromJSON(json[i & (json.length - 1)]));
+            }
+            store.trim();
+            commands = store.getCommandCount();
+            retained = store;
+        }
+        else {
+            DroneCommand[][] stored = new DroneCommand[plans][];
+            for (int i = 0; i < plans; i++) {
+                stored[i] = DroneCommand.fromJSON(json[i & (json.length - 1)]);
+                commands += stored[i].length;
+            }
+            retained = stored;
+        }
+        long used = usedHeap() - before;
+        System.err.println(plans + " plans (" + commands + " commands) as " + mode + ": " + (used >> 20) + " MB, " + used / plans + " bytes per plan, " + used / commands + " bytes per command");
+        // Keeps the plans reachable until measured
+        System.err.println(retained.getClass().getSimpleName() + " measured");
+    }
+    
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
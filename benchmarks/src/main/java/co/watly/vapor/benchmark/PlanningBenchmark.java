@@ -0,0 +1,67 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.Itinerary;
+
+/**
+ * Per-plan cost of turning an itinerary into a flight plan:
+ * speeds, flight height, distance and angle calculations plus the DSL building or the direct compilation
+ * @author Marco Vasapollo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlanningBenchmark {
+    
+    private VaporController controller;
+    private Itinerary[] itineraries;
+    private int index;
+    
+    @Setup
+    public void setup() {
+        controller = Fixtures.controller();
+        itineraries = Fixtures.itineraries(1024, 42);
+    }
+    
+    private Itinerary nextItinerary() {
+        return itineraries[index++ & (itineraries.length - 1)];
+    }
+    
+    @Benchmark
+    public String convert() {
+        return controller.convert(nextItinerary());
+    }
+    
+    @Benchmark
+    public DroneCommand[] compile() {
+        return controller.compile(nextItinerary());
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import co.watly.vapor.model.IDrone;
+
+/**
+ * The original reflective dispatch of the DroneCommandMapper, kept as the baseline of {@link DispatchBenchmark}
+ * @author Marco Vasapollo
+ *
+ */
+final class ReflectiveDispatch {
+    
+    private static final Map<String, Method> COMMANDS = new HashMap<>();
+    private static final Map<String, Class<?>> SECOND_PARAMS = new HashMap<>();
+    
+    static {
+        for (Method method : IDrone.class.getDeclaredMethods()) {
+            COMMANDS.put(method.getName(), method);
+            if (method.getParameterTypes().length > 1) {
+                SECOND_PARAMS.put(method.getName(), method.getParameterTypes()[1]);
+            }
+        }
+    }
+    
+    private ReflectiveDispatch() {
+    }
+    
+    @SuppressWarnings("unchecked")
+    static CompletableFuture<Void> invoke(String command, long speed, Number secondParameter, IDrone drone) {
+        try {
+            return (CompletableFuture<Void>) COMMANDS.get(command).invoke(drone, speed, Number.class.getMethod(SECOND_PARAMS.get(command).getSimpleName().toLowerCase() + "Value").invoke(secondParameter));
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import co.watly.vapor.controller.EnergyModel;
+import co.watly.vapor.controller.FeasibilityMatrix;
+import co.watly.vapor.controller.FeasibilityScreen;
+import co.watly.vapor.controller.PlanningMode;
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDroneData;
+
+/**
+ * Load test of the feasibility pre-screen: a wave of delivery rounds against a mixed fleet.
+ * It reports the time of the whole matrix, then checks a sample of pairs against the planning and
+ * compares with compiling every pair.
+ * Usage: ScreeningLoadTest [itineraries] [drones] [stops per round]
+ * @author Marco Vasapollo
+ *
+ */
+public final class ScreeningLoadTest {
+    
+    private static final int SAMPLES = 2000;
+    
+    private ScreeningLoadTest() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int itineraryCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int droneCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int stops = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        
+        List<Itinerary> itineraries = Arrays.asList(Fixtures.rounds(itineraryCount, stops, 42));
+        Random random = new Random(7);
+        List<IDroneData> drones = new ArrayList<>(droneCount);
+        for (int i = 0; i < droneCount; i++) {
+            drones.add(Fixtures.droneData(random));
+        }
+        // Climbing costs more than cruising, descending less, payload and speed weigh
+        EnergyModel energyModel = new EnergyModel(3, 0.5, 1, 1, 0.4, 0.3);
+        FeasibilityScreen screen = new FeasibilityScreen(energyModel, null);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        
+        // Warm up
+        screen.screen(itineraries.subList(0, Math.min(500, itineraryCount)), drones, pool, pool.getParallelism()).join();
+        
+        long start = System.nanoTime();
+        FeasibilityMatrix matrix = screen.screen(itineraries, drones, pool, pool.getParallelism()).join();
+        long elapsed = System.nanoTime() - start;
+        long pairs = (long) itineraryCount * droneCount;
+        System.err.println(itineraryCount + "x" + droneCount + " pairs screened in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms (" + elapsed / pairs + " ns per pair) on " + pool.getParallelism() + " lanes, " + matrix.countFeasible() + " feasible");
+        
+        // Same verdict and same journey of the planning
+        int mismatches = 0;
+        long planning = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            int itinerary = random.nextInt(itineraryCount);
+            int drone = random.nextInt(droneCount);
+            VaporController controller = Fixtures.ready(new VaporController(Fixtures.drone(drones.get(drone))));
+            controller.setPlanningMode(PlanningMode.COMPILED);
+            controller.setEnergyModel(energyModel);
+            boolean planned;
+            long planStart = System.nanoTime();
+            try {
+                controller.compile(itineraries.get(itinerary));
+                planned = true;
+            }
+            catch (RuntimeException e) {
+                planned = false;
+            }
+            planning += System.nanoTime() - planStart;
+            if (planned != matrix.isFeasible(itinerary, drone)) {
+                mismatches++;
+            }
+        }
+        System.err.println(SAMPLES + " sampled pairs checked against the planning, " + mismatches + " mismatches");
+        System.err.println("Compiling every pair would take about " + TimeUnit.NANOSECONDS.toSeconds(planning / SAMPLES * pairs) + " s");
+    }
+}
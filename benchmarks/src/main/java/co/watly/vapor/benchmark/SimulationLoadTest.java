@@ -0,0 +1,170 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import co.watly.vapor.controller.PlanningMode;
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.simulation.SimulatedDrone;
+import co.watly.vapor.simulation.SimulationClock;
+import co.watly.vapor.telemetry.LatencyHistogram;
+import co.watly.vapor.util.GeoPoints;
+
+/**
+ * Load test of the controllers against simulated drones: every drone flies delivery rounds from its base, back to back,
+ * with its maneuvers lasting their planned durations on a {@link SimulationClock}, plus latency and injected failures.
+ * It reports the real throughput, how much faster than real time the fleet flew, the virtual mission times 
+ * and how far from their base the drones landed. The simulation runs twice, and both runs must end the same.
+ * Usage: SimulationLoadTest [flights] [drones] [stops per round] [latency in ms] [jitter in ms] [failure rate]
+ * @author Marco Vasapollo
+ *
+ */
+public final class SimulationLoadTest {
+    
+    // Time between two missions of the same drone, in virtual ms
+    private static final long TURNAROUND = 60000;
+    
+    private SimulationLoadTest() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int flights = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int drones = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int stops = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        long latency = args.length > 3 ? Long.parseLong(args[3]) : 20;
+        long jitter = args.length > 4 ? Long.parseLong(args[4]) : 80;
+        double failureRate = args.length > 5 ? Double.parseDouble(args[5]) : 0.0005;
+        
+        String first = simulate(flights, drones, stops, latency, jitter, failureRate);
+        String second = simulate(flights, drones, stops, latency, jitter, failureRate);
+        System.err.println(first.equals(second) ? "Deterministic: both runs ended the same" : "NOT deterministic:\n" + first + "\n" + second);
+    }
+    
+    /**
+     * @return a digest of the end of the simulation
+     */
+    private static String simulate(int flights, int drones, int stops, long latency, long jitter, double failureRate) {
+        final SimulationClock clock = new SimulationClock();
+        final Random random = new Random(7);
+        final LatencyHistogram missionTimes = new LatencyHistogram();
+        final int[] counts = new int[2];
+        final long[] landing = new long[2];
+        final List<CompletableFuture<Void>> done = new ArrayList<>(drones);
+        List<CompletableFuture<?>> ready = new ArrayList<>(drones);
+        List<Pilot> pilots = new ArrayList<>(drones);
+        for (int i = 0; i < drones; i++) {
+            Coordinates base = new Coordinates(45.46 + random.nextDouble() * 0.02, 9.18 + random.nextDouble() * 0.02, random.nextInt(2000));
+            SimulatedDrone drone = new SimulatedDrone(clock, Fixtures.droneData(random), base, i);
+            drone.setLatency(latency, jitter);
+            drone.setFaults(failureRate, 0);
+            VaporController controller = new VaporController(drone.getDrone());
+            controller.setPlanningMode(PlanningMode.COMPILED);
+            ready.add(controller.whenReady());
+            pilots.add(new Pilot(clock, drone, controller, base, flights / drones + (i < flights % drones ? 1 : 0), stops, i));
+        }
+        clock.run(CompletableFuture.allOf(ready.toArray(new CompletableFuture<?>[ready.size()])));
+        
+        long start = System.nanoTime();
+        long startedAt = clock.now();
+        for (Pilot pilot : pilots) {
+            done.add(pilot.start(missionTimes, counts, landing));
+        }
+        long reached = clock.run(CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[done.size()])));
+        long elapsed = System.nanoTime() - start;
+        long simulated = reached - startedAt;
+        System.err.println(counts[0] + " flights (" + counts[1] + " failed) of " + drones + " drones in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms: " 
+                + (long) (counts[0] / (elapsed / 1e9)) + " flights/sec, " + clock.getProcessedEvents() + " events, " + TimeUnit.MILLISECONDS.toMinutes(simulated) + " simulated minutes (" 
+                + (long) (simulated / (elapsed / 1e6)) + "x real time); mission p50 " + missionTimes.getPercentile(50) / 1000 + " s, p99 " + missionTimes.getPercentile(99) / 1000 
+                + " s, max " + missionTimes.getMax() / 1000 + " s; landed within " + landing[0] + " cm of the base, " + landing[1] / Math.max(1, counts[0] - counts[1]) + " cm on average");
+        return counts[0] + "/" + counts[1] + "/" + reached + "/" + missionTimes.getTotal() + "/" + landing[0] + "/" + landing[1];
+    }
+    
+    /**
+     * Flies the missions of a drone one after the other, all on the clock
+     */
+    private static final class Pilot {
+        
+        private final SimulationClock clock;
+        private final SimulatedDrone drone;
+        private final VaporController controller;
+        private final Coordinates base;
+        private final int stops;
+        private final Random random;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private int missions;
+        
+        private Pilot(SimulationClock clock, SimulatedDrone drone, VaporController controller, Coordinates base, int missions, int stops, long seed) {
+            this.clock = clock;
+            this.drone = drone;
+            this.controller = controller;
+            this.base = base;
+            this.missions = missions;
+            this.stops = stops;
+            this.random = new Random(seed);
+        }
+        
+        private CompletableFuture<Void> start(LatencyHistogram missionTimes, int[] counts, long[] landing) {
+            clock.schedule(random.nextInt((int) TURNAROUND), () -> next(missionTimes, counts, landing));
+            return done;
+        }
+        
+        private void next(LatencyHistogram missionTimes, int[] counts, long[] landing) {
+            if (missions-- == 0) {
+                done.complete(null);
+                return;
+            }
+            Itinerary round = round();
+            drone.setPayload(round.getWeight());
+            final long takeOff = clock.now();
+            CompletableFuture<Void> flight;
+            try {
+                controller.setDroneCommands(controller.compile(round));
+                flight = controller.fly();
+            }
+            catch (RuntimeException e) {
+                flight = new CompletableFuture<>();
+                flight.completeExceptionally(e);
+            }
+            flight.whenComplete((v, e) -> {
+                counts[0]++;
+                missionTimes.record(clock.now() - takeOff);
+                if (e != null) {
+                    counts[1]++;
+                }
+                else {
+                    Coordinates position = drone.getPosition();
+                    double horizontal = GeoPoints.distance(position.getLatitude(), position.getLongitude(), base.getLatitude(), base.getLongitude());
+                    long error = (long) Math.hypot(horizontal, position.getHeight() - base.getHeight());
+                    landing[0] = Math.max(landing[0], error);
+                    landing[1] += error;
+                }
+                drone.place(base);
+                drone.recharge();
+                clock.schedule(TURNAROUND, () -> next(missionTimes, counts, landing));
+            });
+        }
+        
+        private Itinerary round() {
+            List<Coordinates> waypoints = new ArrayList<>(stops);
+            for (int j = 0; j < stops; j++) {
+                waypoints.add(new Coordinates(base.getLatitude() - 0.005 + random.nextDouble() * 0.01, base.getLongitude() - 0.005 + random.nextDouble() * 0.01, random.nextInt(2000)));
+            }
+            return new Itinerary(base, waypoints, false, base, 12000, 1 + random.nextInt((int) drone.getDroneData().getMaxWeightCapability()));
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import co.watly.vapor.data.AirspaceZone;
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.util.Helper;
+
+/**
+ * In-memory spatial index of the {@link AirspaceZone}s, built once and then read concurrently.
+ * Zones are bucketed in a uniform latitude/longitude grid: a leg only tests the zones of the cells it crosses,
+ * so lookups stay well below a millisecond even with tens of thousands of zones.
+ * A zone spanning more than {@value #MAX_ZONE_CELLS} cells is not bucketed, it is kept in a short list
+ * tested by bounding box on every lookup, so that a region-wide zone cannot exhaust the memory.
+ * Geometry is planar on latitude/longitude, which is accurate enough at zone scale.
+ * Zones are indexed as they are when the airspace is built: changing them later does not change the airspace
+ * @author Marco Vasapollo
+ *
+ */
+public class Airspace {
+    
+    // About 1.1 km of latitude
+    private static final double DEFAULT_CELL_SIZE = 0.01;
+    
+    // About 30 x 30 km at the default cell size
+    static final int MAX_ZONE_CELLS = 1 << 10;
+    
+    private final AirspaceZone[] zones;
+    // Copies of the zone vertexes, the zones stay mutable
+    private final double[][][] polygons;
+    private final double[] minLatitudes;
+    private final double[] maxLatitudes;
+    private final double[] minLongitudes;
+    private final double[] maxLongitudes;
+    private final long[] ceilings;
+    private final double cellSize;
+    private final Map<Long, int[]> cells;
+    // The zones too large to be bucketed
+    private final int[] largeZones;
+    
+    public Airspace(Collection<AirspaceZone> zones) {
+        this(zones, DEFAULT_CELL_SIZE);
+    }
+    
+    /**
+     * @param zones the zones to index
+     * @param cellSize the grid cell side, in degrees
+     * @throws IllegalArgumentException if a zone has less than 3 vertexes, a vertex without coordinates or no ceiling
+     */
+    public Airspace(Collection<AirspaceZone> zones, double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Airspace cell size must be positive, got " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.zones = zones.toArray(new AirspaceZone[zones.size()]);
+        polygons = new double[this.zones.length][][];
+        minLatitudes = new double[this.zones.length];
+        maxLatitudes = new double[this.zones.length];
+        minLongitudes = new double[this.zones.length];
+        maxLongitudes = new double[this.zones.length];
+        ceilings = new long[this.zones.length];
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        List<Integer> large = new ArrayList<>();
+        for (int z = 0; z < this.zones.length; z++) {
+            double[][] polygon = this.zones[z].getPolygon();
+            if (polygon == null || polygon.length < 3) {
+                throw new IllegalArgumentException("Airspace zone " + this.zones[z].getName() + " needs at least 3 vertexes");
+            }
+            polygons[z] = new double[polygon.length][];
+            for (int v = 0; v < polygon.length; v++) {
+                if (polygon[v] == null || polygon[v].length < 2) {
+                    throw new IllegalArgumentException("Airspace zone " + this.zones[z].getName() + " has a vertex without latitude and longitude");
+                }
+                polygons[z][v] = new double[] { polygon[v][0], polygon[v][1] };
+            }
+            if (!this.zones[z].hasCeiling()) {
+                throw new IllegalArgumentException("Airspace zone " + this.zones[z].getName() + " has no ceiling, use 0 for a no-fly zone");
+            }
+            ceilings[z] = this.zones[z].getCeiling();
+            minLatitudes[z] = minLongitudes[z] = Double.POSITIVE_INFINITY;
+            maxLatitudes[z] = maxLongitudes[z] = Double.NEGATIVE_INFINITY;
+            for (double[] vertex : polygons[z]) {
+                minLatitudes[z] = Math.min(minLatitudes[z], vertex[0]);
+                maxLatitudes[z] = Math.max(maxLatitudes[z], vertex[0]);
+                minLongitudes[z] = Math.min(minLongitudes[z], vertex[1]);
+                maxLongitudes[z] = Math.max(maxLongitudes[z], vertex[1]);
+            }
+            if ((double) (cell(maxLatitudes[z]) - cell(minLatitudes[z]) + 1) * (cell(maxLongitudes[z]) - cell(minLongitudes[z]) + 1) > MAX_ZONE_CELLS) {
+                large.add(z);
+                continue;
+            }
+            for (long row = cell(minLatitudes[z]); row <= cell(maxLatitudes[z]); row++) {
+                for (long column = cell(minLongitudes[z]); column <= cell(maxLongitudes[z]); column++) {
+                    buckets.computeIfAbsent(key(row, column), k -> new ArrayList<>()).add(z);
+                }
+            }
+        }
+        Map<Long, int[]> frozen = new HashMap<>(buckets.size() * 2);
+        for (Map.Entry<Long, List<Integer>> bucket : buckets.entrySet()) {
+            int[] ids = new int[bucket.getValue().size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = bucket.getValue().get(i);
+            }
+            frozen.put(bucket.getKey(), ids);
+        }
+        cells = frozen;
+        largeZones = new int[large.size()];
+        for (int i = 0; i < largeZones.length; i++) {
+            largeZones[i] = large.get(i);
+        }
+    }
+    
+    /**
+     * Loads the zones from a local JSON file, an array of {"name", "ceiling", "polygon": [[lat, lon], ...]}.
+     * The ceiling is required, 0 for a no-fly zone
+     * @throws IllegalArgumentException if a zone has less than 3 vertexes, a vertex without coordinates or no ceiling
+     */
+    public static final Airspace load(String fileName) {
+        AirspaceZone[] zones = Helper.readJSONFile(fileName, AirspaceZone[].class);
+        return new Airspace(zones == null ? Collections.<AirspaceZone> emptyList() : Arrays.asList(zones));
+    }
+    
+    public final int size() {
+        return zones.length;
+    }
+    
+    /**
+     * @param route the points flown in sequence, taking off from the first and landing on the last
+     * @param flightHeight the cruise height, from the sea level
+     * @return the first zone the route trespasses, null if the route is clear
+     */
+    public final AirspaceZone findViolation(List<Coordinates> route, long flightHeight) {
+        for (int leg = 1; leg < route.size(); leg++) {
+            Coordinates from = route.get(leg - 1);
+            Coordinates to = route.get(leg);
+            AirspaceZone zone = findViolation(from.getLatitude(), from.getLongitude(), to.getLatitude(), to.getLongitude(), flightHeight);
+            if (zone != null) {
+                return zone;
+            }
+        }
+        if (route.size() == 1) {
+            return findViolation(route.get(0).getLatitude(), route.get(0).getLongitude(), route.get(0).getLatitude(), route.get(0).getLongitude(), flightHeight);
+        }
+        return null;
+    }
+    
+    /**
+     * @return the first zone trespassed flying the given leg at the given height, null if the leg is clear
+     */
+    public final AirspaceZone findViolation(double fromLatitude, double fromLongitude, double toLatitude, double toLongitude, long flightHeight) {
+        final double legMinLatitude = Math.min(fromLatitude, toLatitude);
+        final double legMaxLatitude = Math.max(fromLatitude, toLatitude);
+        final double legMinLongitude = Math.min(fromLongitude, toLongitude);
+        final double legMaxLongitude = Math.max(fromLongitude, toLongitude);
+        
+        for (int z : largeZones) {
+            if (trespasses(z, fromLatitude, fromLongitude, toLatitude, toLongitude, legMinLatitude, legMaxLatitude, legMinLongitude, legMaxLongitude, flightHeight)) {
+                return zones[z];
+            }
+        }
+        
+        // Walks the grid cells crossed by the leg (Amanatides-Woo traversal)
+        long row = cell(fromLatitude);
+        long column = cell(fromLongitude);
+        final long lastRow = cell(toLatitude);
+        final long lastColumn = cell(toLongitude);
+        final double deltaLatitude = toLatitude - fromLatitude;
+        final double deltaLongitude = toLongitude - fromLongitude;
+        final int rowStep = deltaLatitude > 0 ? 1 : -1;
+        final int columnStep = deltaLongitude > 0 ? 1 : -1;
+        final double rowDelta = deltaLatitude == 0 ? Double.POSITIVE_INFINITY : cellSize / Math.abs(deltaLatitude);
+        final double columnDelta = deltaLongitude == 0 ? Double.POSITIVE_INFINITY : cellSize / Math.abs(deltaLongitude);
+        double nextRow = deltaLatitude == 0 ? Double.POSITIVE_INFINITY : ((deltaLatitude > 0 ? row + 1 : row) * cellSize - fromLatitude) / deltaLatitude;
+        double nextColumn = deltaLongitude == 0 ? Double.POSITIVE_INFINITY : ((deltaLongitude > 0 ? column + 1 : column) * cellSize - fromLongitude) / deltaLongitude;
+        final long maxSteps = Math.abs(lastRow - row) + Math.abs(lastColumn - column) + 1;
+        for (long step = 0; step < maxSteps; step++) {
+            int[] candidates = cells.get(key(row, column));
+            if (candidates != null) {
+                for (int z : candidates) {
+                    if (trespasses(z, fromLatitude, fromLongitude, toLatitude, toLongitude, legMinLatitude, legMaxLatitude, legMinLongitude, legMaxLongitude, flightHeight)) {
+                        return zones[z];
+                    }
+                }
+            }
+            if (row == lastRow && column == lastColumn) {
+                break;
+            }
+            if (nextRow < nextColumn) {
+                row += rowStep;
+                nextRow += rowDelta;
+            }
+            else {
+                column += columnStep;
+                nextColumn += columnDelta;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @return true if the leg, within the given bounding box, enters the given zone above its ceiling
+     */
+    private boolean trespasses(int z, double fromLatitude, double fromLongitude, double toLatitude, double toLongitude, double legMinLatitude, double legMaxLatitude, double legMinLongitude, double legMaxLongitude, long flightHeight) {
+        return flightHeight > ceilings[z] && maxLatitudes[z] >= legMinLatitude && minLatitudes[z] <= legMaxLatitude && maxLongitudes[z] >= legMinLongitude && minLongitudes[z] <= legMaxLongitude && crosses(polygons[z], fromLatitude, fromLongitude, toLatitude, toLongitude);
+    }
+    
+    /**
+     * @return true if the leg has a point inside the polygon
+     */
+    private static boolean crosses(double[][] polygon, double fromLatitude, double fromLongitude, double toLatitude, double toLongitude) {
+        if (contains(polygon, fromLatitude, fromLongitude) || contains(polygon, toLatitude, toLongitude)) {
+            return true;
+        }
+        for (int i = 0, j = polygon.length - 1; i < polygon.length; j = i++) {
+            if (intersects(fromLatitude, fromLongitude, toLatitude, toLongitude, polygon[j][0], polygon[j][1], polygon[i][0], polygon[i][1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Ray casting point in polygon test
+     */
+    private static boolean contains(double[][] polygon, double latitude, double longitude) {
+        boolean inside = false;
+        for (int i = 0, j = polygon.length - 1; i < polygon.length; j = i++) {
+            if ((polygon[i][0] > latitude) != (polygon[j][0] > latitude) && longitude < (polygon[j][1] - polygon[i][1]) * (latitude - polygon[i][0]) / (polygon[j][0] - polygon[i][0]) + polygon[i][1]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+    
+    private static boolean intersects(double ay, double ax, double by, double bx, double cy, double cx, double dy, double dx) {
+        double d1 = orientation(cx, cy, dx, dy, ax, ay);
+        double d2 = orientation(cx, cy, dx, dy, bx, by);
+        double d3 = orientation(ax, ay, bx, by, cx, cy);
+        double d4 = orientation(ax, ay, bx, by, dx, dy);
+        return ((d1 > 0) != (d2 > 0) || d1 == 0 || d2 == 0) && ((d3 > 0) != (d4 > 0) || d3 == 0 || d4 == 0) && Math.max(ax, bx) >= Math.min(cx, dx) && Math.max(cx, dx) >= Math.min(ax, bx) && Math.max(ay, by) >= Math.min(cy, dy) && Math.max(cy, dy) >= Math.min(ay, by);
+    }
+    
+    private static double orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+    
+    private long cell(double degrees) {
+        return (long) Math.floor(degrees / cellSize);
+    }
+    
+    private static long key(long row, long column) {
+        return (row << 32) ^ (column & 0xFFFFFFFFL);
+    }
+}
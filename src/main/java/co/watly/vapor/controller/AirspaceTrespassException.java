@@ -0,0 +1,35 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import co.watly.vapor.data.AirspaceZone;
+import co.watly.vapor.util.Helper;
+
+/**
+ * Thrown if a leg of the itinerary crosses a no-fly zone or a zone whose ceiling is below the flight height
+ * @author Marco Vasapollo
+ *
+ */
+public class AirspaceTrespassException extends RuntimeException {
+    
+    private static final long serialVersionUID = 3164937150262405882L;
+    
+    private final transient AirspaceZone zone;
+    
+    public AirspaceTrespassException(AirspaceZone zone, long flightHeight) {
+        super(zone.isNoFly() ? Helper.stringFormat("The itinerary crosses the no-fly zone {0}", zone.getName()) : Helper.stringFormat("The flight height of {0} cm exceedes the ceiling of {1} cm of the zone {2}", flightHeight, zone.getCeiling(), zone.getName()));
+        this.zone = zone;
+    }
+    
+    public AirspaceZone getZone() {
+        return zone;
+    }
+}
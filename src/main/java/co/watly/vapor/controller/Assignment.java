@@ -0,0 +1,110 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Which drone flies which itinerary of a wave, as computed by the {@link AssignmentSolver}.
+ * Itineraries and drones are referred by their index in the {@link FeasibilityMatrix};
+ * when the wave is dispatched by a {@link FleetController}, the drone ids and the submitted missions are known too
+ * @author Marco Vasapollo
+ *
+ */
+public final class Assignment {
+    
+    // Drone of each itinerary, -1 if unassigned
+    private final int[] drones;
+    private final long totalFlightTime;
+    private final String[] droneIds;
+    private final List<CompletableFuture<Void>> missions;
+    
+    Assignment(int[] drones, long totalFlightTime) {
+        this(drones, totalFlightTime, null, null);
+    }
+    
+    Assignment(int[] drones, long totalFlightTime, String[] droneIds, List<CompletableFuture<Void>> missions) {
+        this.drones = drones;
+        this.totalFlightTime = totalFlightTime;
+        this.droneIds = droneIds;
+        this.missions = missions;
+    }
+    
+    public final int getItineraryCount() {
+        return drones.length;
+    }
+    
+    /**
+     * @return the index of the drone that flies the given itinerary, -1 if no drone could take it
+     */
+    public final int getDrone(int itinerary) {
+        return drones[itinerary];
+    }
+    
+    /**
+     * @return the fleet id of the drone that flies the given itinerary, null if unassigned or not dispatched by a fleet
+     */
+    public final String getDroneId(int itinerary) {
+        return droneIds == null || drones[itinerary] < 0 ? null : droneIds[drones[itinerary]];
+    }
+    
+    /**
+     * @return the mission submitted for the given itinerary, see {@link FleetController#submit(String, co.watly.vapor.data.Itinerary)},
+     * null if unassigned or not dispatched by a fleet
+     */
+    public final CompletableFuture<Void> getMission(int itinerary) {
+        return missions == null ? null : missions.get(itinerary);
+    }
+    
+    /**
+     * @return the number of itineraries with a drone
+     */
+    public final int getAssignedCount() {
+        int count = 0;
+        for (int drone : drones) {
+            if (drone >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * @return the indexes of the itineraries no drone could take, to be planned in a later wave
+     */
+    public final int[] getUnassigned() {
+        int[] unassigned = new int[drones.length - getAssignedCount()];
+        for (int i = 0, u = 0; i < drones.length; i++) {
+            if (drones[i] < 0) {
+                unassigned[u++] = i;
+            }
+        }
+        return unassigned;
+    }
+    
+    /**
+     * @return the sum of the flight times of the assigned itineraries, in milliseconds
+     */
+    public final long getTotalFlightTime() {
+        return totalFlightTime;
+    }
+    
+    final int[] drones() {
+        return drones;
+    }
+    
+    @Override
+    public String toString() {
+        return "Assignment [itineraries=" + drones.length + ", assigned=" + getAssignedCount() + ", totalFlightTime=" + totalFlightTime + " ms" + (drones.length <= 32 ? ", drones=" + Arrays.toString(drones) : "") + "]";
+    }
+}
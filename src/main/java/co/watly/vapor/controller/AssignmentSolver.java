@@ -0,0 +1,263 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.Arrays;
+
+/**
+ * Assigns the itineraries of a wave to the drones of a fleet, at most one itinerary per drone, 
+ * so that as many itineraries as possible fly and the total flight time is near the minimum.
+ * Itineraries are first taken greedily, those with fewer or more different options first (regret order), by their fastest free drone;
+ * then augmenting paths move assigned itineraries to free drones to make room for the left out ones;
+ * finally moves to faster free drones, replacements by faster left out itineraries and pairwise swaps lower the total flight time.
+ * Only feasible pairs of the {@link FeasibilityMatrix} are used, so weight and autonomy are never exceeded
+ * @author Marco Vasapollo
+ *
+ */
+public final class AssignmentSolver {
+    
+    // Bounds the improvement passes, each one is quadratic in the number of assigned itineraries
+    private static final int MAX_IMPROVEMENT_PASSES = 20;
+    
+    private static final int NONE = -1;
+    
+    private AssignmentSolver() {
+    }
+    
+    /**
+     * @return the assignment of the itineraries of the matrix to its drones
+     */
+    public static final Assignment solve(FeasibilityMatrix matrix) {
+        final int itineraries = matrix.getItineraryCount();
+        final int drones = matrix.getDroneCount();
+        final int[] droneOf = new int[itineraries];
+        final int[] itineraryOf = new int[drones];
+        Arrays.fill(droneOf, NONE);
+        Arrays.fill(itineraryOf, NONE);
+        
+        int free = drones;
+        for (int itinerary : regretOrder(matrix)) {
+            if (free == 0) {
+                break;
+            }
+            int drone = fastestFree(matrix, itinerary, itineraryOf);
+            if (drone != NONE) {
+                droneOf[itinerary] = drone;
+                itineraryOf[drone] = itinerary;
+                free--;
+            }
+        }
+        free -= augment(matrix, droneOf, itineraryOf, free);
+        improve(matrix, droneOf, itineraryOf);
+        
+        long totalFlightTime = 0;
+        for (int itinerary = 0; itinerary < itineraries; itinerary++) {
+            if (droneOf[itinerary] != NONE) {
+                totalFlightTime += matrix.flightTime(itinerary * drones + droneOf[itinerary]);
+            }
+        }
+        return new Assignment(droneOf, totalFlightTime);
+    }
+    
+    /**
+     * @return the feasible itineraries, those with a single option or the largest gap between their two fastest drones first
+     */
+    private static int[] regretOrder(FeasibilityMatrix matrix) {
+        final int drones = matrix.getDroneCount();
+        long[] keys = new long[matrix.getItineraryCount()];
+        int count = 0;
+        for (int itinerary = 0; itinerary < keys.length; itinerary++) {
+            int best = Integer.MAX_VALUE;
+            int second = Integer.MAX_VALUE;
+            for (int index = itinerary * drones, end = index + drones; index < end; index++) {
+                int time = matrix.flightTime(index);
+                if (time == NONE) {
+                    continue;
+                }
+                if (time < best) {
+                    second = best;
+                    best = time;
+                }
+                else if (time < second) {
+                    second = time;
+                }
+            }
+            if (best == Integer.MAX_VALUE) {
+                continue;
+            }
+            long regret = second == Integer.MAX_VALUE ? Integer.MAX_VALUE : second - best;
+            // Largest regret first, then by index
+            keys[count++] = (Integer.MAX_VALUE - regret) << 32 | itinerary;
+        }
+        Arrays.sort(keys, 0, count);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+    
+    private static int fastestFree(FeasibilityMatrix matrix, int itinerary, int[] itineraryOf) {
+        final int drones = matrix.getDroneCount();
+        final int row = itinerary * drones;
+        int fastest = NONE;
+        int fastestTime = Integer.MAX_VALUE;
+        for (int drone = 0; drone < drones; drone++) {
+            int time = matrix.flightTime(row + drone);
+            if (time != NONE && time < fastestTime && itineraryOf[drone] == NONE) {
+                fastest = drone;
+                fastestTime = time;
+            }
+        }
+        return fastest;
+    }
+    
+    /**
+     * Assigns the left out itineraries through alternating paths: an itinerary takes a busy drone, 
+     * whose itinerary moves to another drone, and so on until a free drone is reached
+     * @return the number of assigned itineraries
+     */
+    private static int augment(FeasibilityMatrix matrix, int[] droneOf, int[] itineraryOf, int free) {
+        final int drones = matrix.getDroneCount();
+        // Drones already explored by failed searches cannot lead to a free drone, until an augmentation changes the assignment
+        final boolean[] visited = new boolean[drones];
+        final int[] reachedFrom = new int[drones];
+        final int[] queue = new int[droneOf.length];
+        int assigned = 0;
+        for (int start = 0; start < droneOf.length && assigned < free; start++) {
+            if (droneOf[start] != NONE) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            int reached = NONE;
+            while (head < tail && reached == NONE) {
+                int itinerary = queue[head++];
+                for (int drone = 0, row = itinerary * drones; drone < drones; drone++) {
+                    if (visited[drone] || matrix.flightTime(row + drone) == NONE) {
+                        continue;
+                    }
+                    visited[drone] = true;
+                    reachedFrom[drone] = itinerary;
+                    if (itineraryOf[drone] == NONE) {
+                        reached = drone;
+                        break;
+                    }
+                    queue[tail++] = itineraryOf[drone];
+                }
+            }
+            if (reached == NONE) {
+                continue;
+            }
+            // Shift every itinerary of the path to the drone it reached
+            for (int drone = reached; drone != NONE;) {
+                int itinerary = reachedFrom[drone];
+                int previous = droneOf[itinerary];
+                droneOf[itinerary] = drone;
+                itineraryOf[drone] = itinerary;
+                drone = previous;
+            }
+            assigned++;
+            Arrays.fill(visited, false);
+        }
+        return assigned;
+    }
+    
+    /**
+     * Moves itineraries to faster free drones, gives drones to left out itineraries they fly faster 
+     * and swaps the drones of pairs of itineraries while the total flight time decreases
+     */
+    private static void improve(FeasibilityMatrix matrix, int[] droneOf, int[] itineraryOf) {
+        final int drones = matrix.getDroneCount();
+        int[] assigned = new int[droneOf.length];
+        int[] leftOut = new int[droneOf.length];
+        int count = 0;
+        int leftOutCount = 0;
+        for (int itinerary = 0; itinerary < droneOf.length; itinerary++) {
+            if (droneOf[itinerary] != NONE) {
+                assigned[count++] = itinerary;
+            }
+            else {
+                leftOut[leftOutCount++] = itinerary;
+            }
+        }
+        boolean improved = true;
+        for (int pass = 0; pass < MAX_IMPROVEMENT_PASSES && improved; pass++) {
+            improved = false;
+            for (int i = 0; i < leftOutCount; i++) {
+                int itinerary = leftOut[i];
+                int row = itinerary * drones;
+                int best = NONE;
+                long bestSaving = 0;
+                for (int drone = 0; drone < drones; drone++) {
+                    int time = matrix.flightTime(row + drone);
+                    // A feasible free drone cannot be left after the augmenting paths
+                    if (time == NONE || itineraryOf[drone] == NONE) {
+                        continue;
+                    }
+                    long saving = (long) matrix.flightTime(itineraryOf[drone] * drones + drone) - time;
+                    if (saving > bestSaving) {
+                        best = drone;
+                        bestSaving = saving;
+                    }
+                }
+                if (best != NONE) {
+                    // The replaced itinerary is left out in its place, the assigned count does not change
+                    int replaced = itineraryOf[best];
+                    droneOf[replaced] = NONE;
+                    droneOf[itinerary] = best;
+                    itineraryOf[best] = itinerary;
+                    leftOut[i] = replaced;
+                    for (int j = 0; j < count; j++) {
+                        if (assigned[j] == replaced) {
+                            assigned[j] = itinerary;
+                            break;
+                        }
+                    }
+                    improved = true;
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                int itinerary = assigned[i];
+                int drone = fastestFree(matrix, itinerary, itineraryOf);
+                if (drone != NONE && matrix.flightTime(itinerary * drones + drone) < matrix.flightTime(itinerary * drones + droneOf[itinerary])) {
+                    itineraryOf[droneOf[itinerary]] = NONE;
+                    droneOf[itinerary] = drone;
+                    itineraryOf[drone] = itinerary;
+                    improved = true;
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                int first = assigned[i];
+                int firstRow = first * drones;
+                for (int j = i + 1; j < count; j++) {
+                    int second = assigned[j];
+                    int secondRow = second * drones;
+                    int firstDrone = droneOf[first];
+                    int secondDrone = droneOf[second];
+                    int firstSwapped = matrix.flightTime(firstRow + secondDrone);
+                    int secondSwapped = matrix.flightTime(secondRow + firstDrone);
+                    if (firstSwapped == NONE || secondSwapped == NONE) {
+                        continue;
+                    }
+                    if ((long) firstSwapped + secondSwapped < (long) matrix.flightTime(firstRow + firstDrone) + matrix.flightTime(secondRow + secondDrone)) {
+                        droneOf[first] = secondDrone;
+                        droneOf[second] = firstDrone;
+                        itineraryOf[secondDrone] = first;
+                        itineraryOf[firstDrone] = second;
+                        improved = true;
+                    }
+                }
+            }
+        }
+    }
+}
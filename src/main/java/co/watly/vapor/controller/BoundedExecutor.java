@@ -0,0 +1,190 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.watly.vapor.telemetry.Event;
+import co.watly.vapor.telemetry.Measure;
+import co.watly.vapor.telemetry.Telemetry;
+import co.watly.vapor.util.Helper;
+
+/**
+ * A fixed pool of daemon threads in front of a bounded queue.
+ * When all the threads are busy and the queue is full the task is handled by the {@link RejectionPolicy}, 
+ * and counted as saturated. The queue size, its peak and the saturations can be polled at any time,
+ * the time spent by the tasks in the queue is measured by the telemetry, see {@link #setTelemetry(Telemetry, Measure)}
+ * @author Marco Vasapollo
+ *
+ */
+public final class BoundedExecutor implements Executor, AutoCloseable {
+    
+    private final String name;
+    private final int queueDepth;
+    private final RejectionPolicy rejectionPolicy;
+    private final ThreadPoolExecutor pool;
+    private final AtomicInteger peakQueueSize = new AtomicInteger();
+    private final AtomicLong saturated = new AtomicLong();
+    private volatile Telemetry telemetry = Telemetry.NONE;
+    private volatile Measure queueWait;
+    
+    /**
+     * @param name the name of the pool, given to its threads too
+     * @param threads how many tasks run at the same time
+     * @param queueDepth how many tasks may wait for a thread, 0 to hand each task straight to an idle thread
+     * @param rejectionPolicy what happens to the tasks that find the pool saturated
+     */
+    public BoundedExecutor(String name, int threads, int queueDepth, RejectionPolicy rejectionPolicy) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A pool needs at least 1 thread, got " + threads);
+        }
+        if (queueDepth < 0) {
+            throw new IllegalArgumentException("The queue depth cannot be negative, got " + queueDepth);
+        }
+        this.name = name;
+        this.queueDepth = queueDepth;
+        this.rejectionPolicy = rejectionPolicy;
+        final BlockingQueue<Runnable> queue = queueDepth == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueDepth);
+        final AtomicInteger threadCounter = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+    
+    public final String getName() {
+        return name;
+    }
+    
+    public final int getThreads() {
+        return pool.getMaximumPoolSize();
+    }
+    
+    public final int getQueueDepth() {
+        return queueDepth;
+    }
+    
+    public final RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+    
+    /**
+     * Sets where the time spent by the tasks in the queue is measured, in microseconds,
+     * and where the saturations are counted as {@link Event#EXECUTOR_SATURATED}
+     * @param telemetry the telemetry, {@link Telemetry#NONE} to measure nothing
+     * @param queueWait the measure of the queue waits, e.g. {@link Measure#PLANNING_QUEUE_WAIT}
+     */
+    public final void setTelemetry(Telemetry telemetry, Measure queueWait) {
+        this.queueWait = queueWait;
+        this.telemetry = telemetry;
+    }
+    
+    /**
+     * @return the tasks waiting for a thread
+     */
+    public final int getQueueSize() {
+        return pool.getQueue().size();
+    }
+    
+    /**
+     * @return the most tasks seen waiting for a thread at the same time
+     */
+    public final int getPeakQueueSize() {
+        return peakQueueSize.get();
+    }
+    
+    /**
+     * @return the threads running a task
+     */
+    public final int getActiveCount() {
+        return pool.getActiveCount();
+    }
+    
+    /**
+     * @return the tasks completed by the threads of the pool, the ones run by the submitters excluded
+     */
+    public final long getCompletedTaskCount() {
+        return pool.getCompletedTaskCount();
+    }
+    
+    /**
+     * @return the tasks that found the pool saturated: refused or run by the submitter, depending on the {@link RejectionPolicy}
+     */
+    public final long getSaturatedCount() {
+        return saturated.get();
+    }
+    
+    /**
+     * @throws RejectedExecutionException if the pool is saturated and the policy is {@link RejectionPolicy#ABORT}, or if the pool is closed
+     */
+    @Override
+    public final void execute(Runnable task) {
+        final Telemetry telemetry = this.telemetry;
+        final Measure queueWait = this.queueWait;
+        Runnable queued = task;
+        if (telemetry.isEnabled() && queueWait != null) {
+            final long queuedAt = System.nanoTime();
+            queued = () -> {
+                telemetry.measure(queueWait, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - queuedAt));
+                task.run();
+            };
+        }
+        try {
+            pool.execute(queued);
+        }
+        catch (RejectedExecutionException e) {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException(name + " is closed");
+            }
+            saturated.incrementAndGet();
+            if (telemetry.isTracing()) {
+                telemetry.trace(Event.EXECUTOR_SATURATED, name, pool.getActiveCount(), pool.getQueue().size(), rejectionPolicy);
+            }
+            else {
+                telemetry.count(Event.EXECUTOR_SATURATED);
+            }
+            if (rejectionPolicy == RejectionPolicy.ABORT) {
+                throw new RejectedExecutionException(Helper.stringFormat("{0} is saturated: {1} threads busy and {2} tasks queued", name, pool.getActiveCount(), queueDepth));
+            }
+            task.run();
+            return;
+        }
+        if (queueDepth > 0) {
+            int queueSize = pool.getQueue().size();
+            int peak = peakQueueSize.get();
+            while (queueSize > peak && !peakQueueSize.compareAndSet(peak, queueSize)) {
+                peak = peakQueueSize.get();
+            }
+        }
+    }
+    
+    /**
+     * Stops taking tasks, the queued ones still run
+     */
+    @Override
+    public final void close() {
+        pool.shutdown();
+    }
+    
+    @Override
+    public String toString() {
+        return "BoundedExecutor [name=" + name + ", threads=" + getThreads() + ", queueDepth=" + queueDepth + ", rejectionPolicy=" + rejectionPolicy + ", queueSize=" + getQueueSize() + ", peakQueueSize=" + getPeakQueueSize() + ", saturated=" + getSaturatedCount() + "]";
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import co.watly.vapor.data.DroneCommand;
+
+/**
+ * Writes the maneuvers straight into Drone Commands, skipping the DSL text and the Vapor Generator.
+ * The commands carry the same values the Vapor Generator would produce from the DSL instance
+ * @author Marco Vasapollo
+ *
+ */
+final class CommandPlanWriter implements PlanWriter<DroneCommand[]> {
+    
+    private final List<DroneCommand> droneCommands = new ArrayList<>(8);
+    
+    @Override
+    public void begin(String modelName) {
+        droneCommands.clear();
+    }
+    
+    @Override
+    public void move(String direction, long speed, long duration) {
+        droneCommands.add(new DroneCommand(direction, speed, duration));
+    }
+    
+    @Override
+    public void rotate(long speed, double degrees) {
+        droneCommands.add(new DroneCommand(ROTATE, speed, degrees));
+    }
+    
+    @Override
+    public DroneCommand[] finish() {
+        return droneCommands.toArray(new DroneCommand[droneCommands.size()]);
+    }
+}
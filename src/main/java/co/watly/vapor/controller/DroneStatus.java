@@ -0,0 +1,54 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+/**
+ * Status of a drone of the fleet
+ * @author Marco Vasapollo
+ *
+ */
+public enum DroneStatus {
+    
+    /**
+     * No mission assigned yet
+     */
+    IDLE,
+    
+    /**
+     * The itinerary is being converted into Drone Commands
+     */
+    PLANNING,
+    
+    /**
+     * The Drone Commands are being executed
+     */
+    FLYING,
+    
+    /**
+     * The last mission has been completed
+     */
+    LANDED,
+    
+    /**
+     * The last mission failed
+     */
+    FAILED,
+    
+    /**
+     * The last mission has been cancelled before the drone took off
+     */
+    CANCELLED,
+    
+    /**
+     * The last mission has been aborted in flight, the drone made an emergency landing
+     */
+    ABORTED
+}
@@ -0,0 +1,70 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+import co.watly.vapor.util.Helper;
+import co.watly.vapor.util.Template;
+
+/**
+ * Writes the maneuvers as a DSL instance, to be processed by the Vapor Generator
+ * @author Marco Vasapollo
+ *
+ */
+final class DslPlanWriter implements PlanWriter<String> {
+    
+    // Thread-safe, since itineraries can be converted in parallel
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+    
+    private static final Template MOVE = Template.compile("{0} at {1} cm/sec for {2} milliseconds");
+    
+    private static final Template ROTATE = Template.compile("rotate at {0} cm/sec {1} degrees");
+    
+    private final StringBuilder dslBuilder = new StringBuilder();
+    private boolean firstCommand = true;
+    
+    @Override
+    public void begin(String modelName) {
+        // DSL Header
+        dslBuilder.append("scheduled vapor flight {").append("\n\t")
+                // Mockup data
+                .append(Helper.stringFormat("date: {0},", DATE_FORMAT.format(LocalDateTime.now().plus(10000000, ChronoUnit.MILLIS)))).append("\n\t").append(Helper.stringFormat("model: \"{0}\",", modelName)).append("\n\t")
+                // Mockup data
+                .append(Helper.stringFormat("cost: {0} drops,", 100)).append("\n\t").append("commands: [");
+    }
+    
+    @Override
+    public void move(String direction, long speed, long duration) {
+        MOVE.appendTo(nextCommand(), direction, speed, duration);
+    }
+    
+    @Override
+    public void rotate(long speed, double degrees) {
+        ROTATE.appendTo(nextCommand(), speed, degrees);
+    }
+    
+    @Override
+    public String finish() {
+        // Finalize the DSL instance and return it
+        return dslBuilder.append("\n\t").append("]").append("\n").append("}").toString();
+    }
+    
+    private StringBuilder nextCommand() {
+        if (!firstCommand) {
+            dslBuilder.append(",");
+        }
+        firstCommand = false;
+        return dslBuilder.append("\n\t\t");
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import co.watly.vapor.model.IDroneData;
+
+/**
+ * Prices the maneuvers of a plan in journey: the total journey of a drone is taken as the distance it covers cruising unloaded,
+ * every maneuver consumes its distance weighted by its kind, by the carried payload and by the speed it is flown at.
+ * The factor of a maneuver is kind * (1 + payload * weight / max weight) * (1 + drag * (speed / max reachable speed)^2).
+ * {@link #DISTANCE} prices every maneuver at its distance, as the planning always did
+ * @author Marco Vasapollo
+ *
+ */
+public final class EnergyModel {
+    
+    /**
+     * Every maneuver consumes its distance, whatever the payload and the speed
+     */
+    public static final EnergyModel DISTANCE = new EnergyModel(1, 1, 1, 1, 0, 0);
+    
+    private final double climb;
+    private final double descent;
+    private final double cruise;
+    private final double rotation;
+    private final double payload;
+    private final double drag;
+    
+    /**
+     * @param climb the journey consumed per cm climbed
+     * @param descent the journey consumed per cm descended
+     * @param cruise the journey consumed per cm flown forward
+     * @param rotation the journey consumed per cm of rotation, see the radial distance of the planning
+     * @param payload the extra consumption at full payload, e.g. 0.4 is 40% more
+     * @param drag the extra consumption at the max reachable speed, growing with the square of the speed
+     */
+    public EnergyModel(double climb, double descent, double cruise, double rotation, double payload, double drag) {
+        if (!(climb >= 0 && descent >= 0 && cruise >= 0 && rotation >= 0 && payload >= 0 && drag >= 0)) {
+            throw new IllegalArgumentException("Energy factors must be non negative");
+        }
+        this.climb = climb;
+        this.descent = descent;
+        this.cruise = cruise;
+        this.rotation = rotation;
+        this.payload = payload;
+        this.drag = drag;
+    }
+    
+    /**
+     * @param maneuver the maneuver name (up, down, forward, rotate...), unknown ones are priced as cruise
+     * @param speed the speed of the maneuver, in cm/sec
+     * @param distance the distance covered by the maneuver, in cm
+     * @param weight the carried weight, in hg
+     * @param droneData the drone flying the maneuver
+     * @return the journey consumed by the maneuver, in cm
+     */
+    public final long cost(String maneuver, long speed, long distance, long weight, IDroneData droneData) {
+        return cost(kind(maneuver), speed, distance, weight, droneData.getMaxWeightCapability(), droneData.getMaxReachableSpeed());
+    }
+    
+    final long cost(double kind, long speed, long distance, long weight, long maxWeight, long maxSpeed) {
+        double factor = kind;
+        if (payload > 0 && maxWeight > 0) {
+            factor *= 1 + payload * weight / maxWeight;
+        }
+        if (drag > 0 && maxSpeed > 0) {
+            double relativeSpeed = (double) speed / maxSpeed;
+            factor *= 1 + drag * relativeSpeed * relativeSpeed;
+        }
+        // The distance itself when nothing weighs it, as it always was
+        return factor == 1 ? distance : (long) Math.ceil(distance * factor);
+    }
+    
+    final double kind(String maneuver) {
+        if (PlanWriter.UP.equals(maneuver)) {
+            return climb;
+        }
+        if (PlanWriter.DOWN.equals(maneuver)) {
+            return descent;
+        }
+        if (PlanWriter.ROTATE.equals(maneuver)) {
+            return rotation;
+        }
+        return cruise;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EnergyModel)) {
+            return false;
+        }
+        EnergyModel other = (EnergyModel) o;
+        return Double.compare(climb, other.climb) == 0 && Double.compare(descent, other.descent) == 0 && Double.compare(cruise, other.cruise) == 0 
+                && Double.compare(rotation, other.rotation) == 0 && Double.compare(payload, other.payload) == 0 && Double.compare(drag, other.drag) == 0;
+    }
+    
+    @Override
+    public int hashCode() {
+        int hash = Double.hashCode(climb);
+        hash = 31 * hash + Double.hashCode(descent);
+        hash = 31 * hash + Double.hashCode(cruise);
+        hash = 31 * hash + Double.hashCode(rotation);
+        hash = 31 * hash + Double.hashCode(payload);
+        return 31 * hash + Double.hashCode(drag);
+    }
+    
+    @Override
+    public String toString() {
+        return "EnergyModel [climb=" + climb + ", descent=" + descent + ", cruise=" + cruise + ", rotation=" + rotation + ", payload=" + payload + ", drag=" + drag + "]";
+    }
+}
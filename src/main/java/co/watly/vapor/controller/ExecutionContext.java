@@ -0,0 +1,115 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import co.watly.vapor.telemetry.Measure;
+import co.watly.vapor.telemetry.Telemetry;
+
+/**
+ * Where the asynchronous work of the {@link VaporController}s runs: the CPU bound planning 
+ * (conversion to DSL, compilation, optimization) on one executor, the drone side work on another one.
+ * The drone executor handles the drone data, resumes the flights whose commands waited for the running ones 
+ * and runs the aborts of the commands timed out. The first commands of a flight are issued on the thread that starts it, 
+ * and a command overlapping the running ones on the thread that issued the previous one.
+ * Sharing a context between many controllers bounds the threads and the queues of the whole service,
+ * and keeping the two executors apart lets a burst of planning never delay the flights already under way
+ * @author Marco Vasapollo
+ *
+ */
+public final class ExecutionContext implements AutoCloseable {
+    
+    /**
+     * Planning on the common pool, drone side work on the threads completing the previous drone calls: 
+     * the context of the controllers built without one
+     */
+    public static final ExecutionContext COMMON = new ExecutionContext(ForkJoinPool.commonPool(), null);
+    
+    private static final AtomicInteger CONTEXT_COUNTER = new AtomicInteger();
+    
+    private final Executor planningExecutor;
+    private final Executor droneExecutor;
+    
+    /**
+     * @param planningExecutor runs the planning
+     * @param droneExecutor handles the drone data and issues the commands that waited for the running ones, null to do it on the threads completing the previous drone calls
+     */
+    public ExecutionContext(Executor planningExecutor, Executor droneExecutor) {
+        if (planningExecutor == null) {
+            throw new IllegalArgumentException("The planning executor is mandatory");
+        }
+        this.planningExecutor = planningExecutor;
+        this.droneExecutor = droneExecutor;
+    }
+    
+    /**
+     * Creates a context with its own {@link BoundedExecutor}s: the planning one refuses the tasks when saturated 
+     * ({@link RejectionPolicy#ABORT}), so that the planning fails fast, the drone one runs them on the caller 
+     * ({@link RejectionPolicy#CALLER_RUNS}), so that no flight is ever left waiting
+     * @param planningThreads the threads of the planning, usually one per core
+     * @param planningQueueDepth how many planning tasks may wait for a thread
+     * @param droneThreads the threads of the drone side work
+     * @param droneQueueDepth how many drone tasks may wait for a thread
+     */
+    public ExecutionContext(int planningThreads, int planningQueueDepth, int droneThreads, int droneQueueDepth) {
+        this(planningThreads, planningQueueDepth, droneThreads, droneQueueDepth, CONTEXT_COUNTER.incrementAndGet());
+    }
+    
+    private ExecutionContext(int planningThreads, int planningQueueDepth, int droneThreads, int droneQueueDepth, int context) {
+        this(new BoundedExecutor("vapor-context-" + context + "-planning", planningThreads, planningQueueDepth, RejectionPolicy.ABORT), 
+                new BoundedExecutor("vapor-context-" + context + "-drone", droneThreads, droneQueueDepth, RejectionPolicy.CALLER_RUNS));
+    }
+    
+    public final Executor getPlanningExecutor() {
+        return planningExecutor;
+    }
+    
+    /**
+     * @return the executor of the drone side work, null if it runs on the threads completing the previous drone calls
+     */
+    public final Executor getDroneExecutor() {
+        return droneExecutor;
+    }
+    
+    /**
+     * Measures the queue waits of the {@link BoundedExecutor}s of the context 
+     * as {@link Measure#PLANNING_QUEUE_WAIT} and {@link Measure#DRONE_QUEUE_WAIT}, and counts their saturations
+     */
+    public final void setTelemetry(Telemetry telemetry) {
+        if (planningExecutor instanceof BoundedExecutor) {
+            ((BoundedExecutor) planningExecutor).setTelemetry(telemetry, Measure.PLANNING_QUEUE_WAIT);
+        }
+        if (droneExecutor instanceof BoundedExecutor) {
+            ((BoundedExecutor) droneExecutor).setTelemetry(telemetry, Measure.DRONE_QUEUE_WAIT);
+        }
+    }
+    
+    /**
+     * Closes the {@link BoundedExecutor}s of the context, any other executor is left to its owner
+     */
+    @Override
+    public final void close() {
+        if (planningExecutor instanceof BoundedExecutor) {
+            ((BoundedExecutor) planningExecutor).close();
+        }
+        if (droneExecutor instanceof BoundedExecutor) {
+            ((BoundedExecutor) droneExecutor).close();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "ExecutionContext [planningExecutor=" + planningExecutor + ", droneExecutor=" + droneExecutor + "]";
+    }
+}
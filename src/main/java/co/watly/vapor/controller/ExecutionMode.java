@@ -0,0 +1,33 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+/**
+ * How the {@link VaporController} runs setup and fly, chosen at construction time.
+ * Both modes expose the same asynchronous API
+ * @author Marco Vasapollo
+ *
+ */
+public enum ExecutionMode {
+    
+    /**
+     * setup and fly are asynchronous methods rewritten by ea-async, planning runs on the planning executor of the {@link ExecutionContext}.
+     * Needs the ea-async instrumentation (javaagent or Async.init())
+     */
+    ASYNC,
+    
+    /**
+     * setup and fly run as plain blocking code, each one on its own virtual thread, 
+     * which waits for the planning run on the planning executor of the {@link ExecutionContext}.
+     * Needs Java 21 or later, no bytecode instrumentation is involved
+     */
+    VIRTUAL_THREADS
+}
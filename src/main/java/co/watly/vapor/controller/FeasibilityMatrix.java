@@ -0,0 +1,142 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.Arrays;
+
+/**
+ * The journey each itinerary of a wave consumes on each drone of a fleet, and how long the drone takes to fly it, as computed by the {@link FeasibilityScreen}.
+ * A pair is infeasible if the drone cannot carry the weight, has not enough autonomy, or the itinerary itself cannot be flown
+ * (see {@link #getError(int)}). Energies and flight times are kept as ints: up to 21474 km of journey and 24 days of flight, beyond any drone autonomy
+ * @author Marco Vasapollo
+ *
+ */
+public final class FeasibilityMatrix {
+    
+    static final int INFEASIBLE = -1;
+    
+    private final int itineraryCount;
+    private final int droneCount;
+    // Row major: itinerary * droneCount + drone
+    private final int[] energies;
+    private final int[] flightTimes;
+    private final long[] autonomies;
+    private final RuntimeException[] errors;
+    
+    FeasibilityMatrix(int itineraryCount, long[] autonomies) {
+        this.itineraryCount = itineraryCount;
+        this.droneCount = autonomies.length;
+        this.energies = new int[Math.multiplyExact(itineraryCount, droneCount)];
+        this.flightTimes = new int[energies.length];
+        this.autonomies = autonomies;
+        this.errors = new RuntimeException[itineraryCount];
+        Arrays.fill(energies, INFEASIBLE);
+    }
+    
+    public final int getItineraryCount() {
+        return itineraryCount;
+    }
+    
+    public final int getDroneCount() {
+        return droneCount;
+    }
+    
+    /**
+     * @return true if the drone can fly the itinerary
+     */
+    public final boolean isFeasible(int itinerary, int drone) {
+        return energies[index(itinerary, drone)] != INFEASIBLE;
+    }
+    
+    /**
+     * @return the journey the itinerary consumes on the drone in cm, -1 if the pair is infeasible
+     */
+    public final long getEnergy(int itinerary, int drone) {
+        return energies[index(itinerary, drone)];
+    }
+    
+    /**
+     * @return how long the drone takes to fly the itinerary in milliseconds, -1 if the pair is infeasible
+     */
+    public final long getFlightTime(int itinerary, int drone) {
+        int index = index(itinerary, drone);
+        return energies[index] == INFEASIBLE ? -1 : flightTimes[index];
+    }
+    
+    /**
+     * @return the autonomy left to the drone after the itinerary in cm, -1 if the pair is infeasible
+     */
+    public final long getMargin(int itinerary, int drone) {
+        int energy = energies[index(itinerary, drone)];
+        return energy == INFEASIBLE ? -1 : autonomies[drone] - energy;
+    }
+    
+    /**
+     * @return why no drone can fly the itinerary (e.g. a {@link FlightZoneLimitTrespassException}), null if it depends on the drones
+     */
+    public final RuntimeException getError(int itinerary) {
+        return errors[itinerary];
+    }
+    
+    /**
+     * @return the number of drones that can fly the itinerary
+     */
+    public final int countFeasible(int itinerary) {
+        int count = 0;
+        for (int i = itinerary * droneCount, end = i + droneCount; i < end; i++) {
+            if (energies[i] != INFEASIBLE) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * @return the number of feasible pairs of the whole matrix
+     */
+    public final long countFeasible() {
+        long count = 0;
+        for (int energy : energies) {
+            if (energy != INFEASIBLE) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    final void set(int itinerary, int drone, long energy, long flightTime) {
+        energies[itinerary * droneCount + drone] = (int) Math.min(energy, Integer.MAX_VALUE);
+        flightTimes[itinerary * droneCount + drone] = (int) Math.min(flightTime, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * @return the flight time of the pair at the given row major index, -1 if the pair is infeasible
+     */
+    final int flightTime(int index) {
+        return energies[index] == INFEASIBLE ? INFEASIBLE : flightTimes[index];
+    }
+    
+    final void setError(int itinerary, RuntimeException error) {
+        errors[itinerary] = error;
+    }
+    
+    private int index(int itinerary, int drone) {
+        if (itinerary < 0 || itinerary >= itineraryCount || drone < 0 || drone >= droneCount) {
+            throw new IndexOutOfBoundsException("Pair " + itinerary + "x" + drone + " of " + itineraryCount + "x" + droneCount);
+        }
+        return itinerary * droneCount + drone;
+    }
+    
+    @Override
+    public String toString() {
+        return "FeasibilityMatrix [itineraries=" + itineraryCount + ", drones=" + droneCount + ", feasible=" + countFeasible() + "]";
+    }
+}
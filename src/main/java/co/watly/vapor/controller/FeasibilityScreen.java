@@ -0,0 +1,173 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDroneData;
+
+/**
+ * Tells which drones can fly which itineraries of a wave, before any DSL or plan is built.
+ * The route of each itinerary is computed once, then priced for every drone with the same accounting of the planning:
+ * a pair is feasible exactly when the planning would not throw {@link WeightExcessException} or {@link InsufficientAutonomyException}
+ * @author Marco Vasapollo
+ *
+ */
+public final class FeasibilityScreen {
+    
+    private final EnergyModel energyModel;
+    private final Airspace airspace;
+    
+    public FeasibilityScreen() {
+        this(EnergyModel.DISTANCE, null);
+    }
+    
+    /**
+     * @param energyModel how the maneuvers consume the autonomy, the same of the controllers
+     * @param airspace the restricted zones, null if none
+     */
+    public FeasibilityScreen(EnergyModel energyModel, Airspace airspace) {
+        this.energyModel = energyModel == null ? EnergyModel.DISTANCE : energyModel;
+        this.airspace = airspace;
+    }
+    
+    /**
+     * Screens every itinerary against every drone. Itineraries are screened by maxParallelism lanes at the same time
+     * 
+     * @param itineraries the itineraries of the wave
+     * @param drones the data of the drones of the fleet
+     * @param executor the executor that runs the lanes
+     * @param maxParallelism max number of itineraries screened at the same time
+     * @return the matrix of the pairs, itineraries and drones in the given order
+     */
+    public final CompletableFuture<FeasibilityMatrix> screen(List<Itinerary> itineraries, List<? extends IDroneData> drones, Executor executor, int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("Max parallelism must be at least 1, got " + maxParallelism);
+        }
+        final Itinerary[] wave = itineraries.toArray(new Itinerary[itineraries.size()]);
+        final Drone[] fleet = snapshot(drones);
+        final FeasibilityMatrix matrix = new FeasibilityMatrix(wave.length, autonomies(fleet));
+        final AtomicInteger cursor = new AtomicInteger();
+        final CompletableFuture<?>[] lanes = new CompletableFuture<?>[Math.min(maxParallelism, wave.length)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = CompletableFuture.runAsync(() -> {
+                for (int index = cursor.getAndIncrement(); index < wave.length; index = cursor.getAndIncrement()) {
+                    screen(wave[index], index, fleet, matrix);
+                }
+            }, executor);
+        }
+        return CompletableFuture.allOf(lanes).thenApply(v -> matrix);
+    }
+    
+    /**
+     * Screens a single itinerary against every drone
+     * @return the journey the itinerary consumes on each drone in cm, -1 if the drone cannot fly it
+     */
+    public final long[] screen(Itinerary itinerary, List<? extends IDroneData> drones) {
+        final Drone[] fleet = snapshot(drones);
+        FeasibilityMatrix matrix = new FeasibilityMatrix(1, autonomies(fleet));
+        screen(itinerary, 0, fleet, matrix);
+        long[] energies = new long[fleet.length];
+        for (int i = 0; i < energies.length; i++) {
+            energies[i] = matrix.getEnergy(0, i);
+        }
+        return energies;
+    }
+    
+    private void screen(Itinerary itinerary, int index, Drone[] fleet, FeasibilityMatrix matrix) {
+        final RouteProfile profile;
+        try {
+            profile = RouteProfile.of(itinerary, airspace);
+        }
+        catch (FlightZoneLimitTrespassException | AirspaceTrespassException e) {
+            matrix.setError(index, e);
+            return;
+        }
+        final long weight = itinerary.getWeight();
+        for (int i = 0; i < fleet.length; i++) {
+            Drone drone = fleet[i];
+            if (weight > drone.maxWeightCapability) {
+                continue;
+            }
+            long[] speeds = VaporController.calculateSpeeds(weight, drone);
+            long energy = profile.energy(energyModel, speeds, weight, drone.maxWeightCapability, drone.maxReachableSpeed);
+            if (energy <= drone.totalJourney) {
+                matrix.set(index, i, energy, profile.duration(speeds));
+            }
+        }
+    }
+    
+    // Snapshots, so that every pair reads plain fields
+    private static Drone[] snapshot(List<? extends IDroneData> drones) {
+        Drone[] fleet = new Drone[drones.size()];
+        for (int i = 0; i < fleet.length; i++) {
+            fleet[i] = new Drone(drones.get(i));
+        }
+        return fleet;
+    }
+    
+    private static long[] autonomies(Drone[] fleet) {
+        long[] autonomies = new long[fleet.length];
+        for (int i = 0; i < fleet.length; i++) {
+            autonomies[i] = fleet[i].totalJourney;
+        }
+        return autonomies;
+    }
+    
+    /**
+     * Snapshot of the data of a drone
+     */
+    private static final class Drone implements IDroneData {
+        
+        private final String modelName;
+        private final long totalJourney;
+        private final long maxWeightCapability;
+        private final long maxReachableSpeed;
+        private final double speedDecreasingFactor;
+        
+        private Drone(IDroneData droneData) {
+            modelName = droneData.getModelName();
+            totalJourney = droneData.getTotalJourney();
+            maxWeightCapability = droneData.getMaxWeightCapability();
+            maxReachableSpeed = droneData.getMaxReachableSpeed();
+            speedDecreasingFactor = droneData.getSpeedDecreasingFactor();
+        }
+        
+        @Override
+        public String getModelName() {
+            return modelName;
+        }
+        
+        @Override
+        public long getTotalJourney() {
+            return totalJourney;
+        }
+        
+        @Override
+        public long getMaxWeightCapability() {
+            return maxWeightCapability;
+        }
+        
+        @Override
+        public long getMaxReachableSpeed() {
+            return maxReachableSpeed;
+        }
+        
+        @Override
+        public double getSpeedDecreasingFactor() {
+            return speedDecreasingFactor;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDrone;
+import co.watly.vapor.model.IDroneData;
+import co.watly.vapor.util.Futures;
+
+/**
+ * Controls a whole fleet of drones, each one with its own {@link VaporController}.
+ * Drones are sharded across a fixed set of single-threaded lanes: all the work of a drone 
+ * (planning, state changes, flight start) runs on its own lane, so its missions stay ordered
+ * and its controller is never touched by two threads at the same time, without any lock.
+ * Different drones are spread over all the lanes, so planning scales across all the cores.
+ * Given an {@link ExecutionContext}, the planning runs on its planning executor instead, and the flights resume on its drone executor
+ * after waiting for their running commands, while the state changes and the flight starts, with their first commands, stay on the lanes
+ * @author Marco Vasapollo
+ *
+ */
+public class FleetController implements AutoCloseable {
+    
+    private static final AtomicInteger FLEET_COUNTER = new AtomicInteger();
+    
+    private final ExecutorService[] lanes;
+    private final ExecutionContext executionContext;
+    private final ConcurrentMap<String, FleetMember> members = new ConcurrentHashMap<>();
+    
+    /**
+     * Creates a fleet controller with a lane per available core
+     */
+    public FleetController() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    public FleetController(int laneCount) {
+        this(laneCount, null);
+    }
+    
+    /**
+     * @param executionContext where the controllers of the fleet plan and call the drones, null to plan on the lanes
+     */
+    public FleetController(int laneCount, ExecutionContext executionContext) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("A fleet needs at least 1 lane, got " + laneCount);
+        }
+        this.executionContext = executionContext;
+        int fleet = FLEET_COUNTER.incrementAndGet();
+        lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            final String name = "vapor-fleet-" + fleet + "-lane-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+    
+    /**
+     * Adds a drone to the fleet
+     * @param droneId the unique id of the drone inside the fleet
+     * @return the controller of the drone
+     */
+    public final VaporController register(String droneId, IDrone drone) {
+        ExecutorService lane = lanes[Math.floorMod(droneId.hashCode(), lanes.length)];
+        FleetMember member = executionContext == null ? new FleetMember(new VaporController(drone), lane, lane) 
+                : new FleetMember(new VaporController(drone, ExecutionMode.ASYNC, executionContext), lane, executionContext.getPlanningExecutor());
+        if (members.putIfAbsent(droneId, member) != null) {
+            throw new IllegalArgumentException("Drone " + droneId + " is already part of the fleet");
+        }
+        return member.controller;
+    }
+    
+    /**
+     * Removes a drone from the fleet, cancelling its missions that are not flying yet
+     */
+    public final void unregister(String droneId) {
+        cancel(droneId);
+        members.remove(droneId);
+    }
+    
+    /**
+     * @return the controller of the given drone, null if it is not part of the fleet
+     */
+    public final VaporController getController(String droneId) {
+        FleetMember member = members.get(droneId);
+        return member == null ? null : member.controller;
+    }
+    
+    /**
+     * Queues a mission for the given drone: the itinerary is planned and then flown.
+     * Missions of the same drone are executed in submission order
+     * @return a future completed when the drone landed, or failed with the planning or flight error
+     */
+    public final CompletableFuture<Void> submit(String droneId, Itinerary itinerary) {
+        final FleetMember member = member(droneId);
+        member.queued.incrementAndGet();
+        return enqueue(member, itinerary);
+    }
+    
+    /**
+     * Queues a mission whose place in {@link FleetMember#queued} is already taken
+     */
+    private static CompletableFuture<Void> enqueue(final FleetMember member, Itinerary itinerary) {
+        final Mission mission = new Mission(itinerary);
+        member.lane.execute(() -> {
+            member.missions.add(mission);
+            if (member.missions.size() == 1) {
+                member.startNext();
+            }
+        });
+        return mission.result;
+    }
+    
+    /**
+     * Assigns the itineraries of a wave to the available drones of the fleet (idle or landed, with no mission queued and their data arrived) and submits them.
+     * Available drones are reserved for the wave until it is assigned, so concurrent waves never pick the same drone;
+     * missions submitted meanwhile are queued as usual.
+     * Every itinerary x drone pair is screened first, on the given executor and over as many lanes as the fleet has, 
+     * then the {@link AssignmentSolver} picks the drones that fly as many itineraries as possible in the least total flight time.
+     * The screen should price the maneuvers as the controllers do: same {@link EnergyModel} and {@link Airspace}
+     * @param itineraries the itineraries of the wave
+     * @param screen the screen of the pairs
+     * @param executor the executor that runs the screening
+     * @return the assignment, with the drone id and the mission of each assigned itinerary
+     */
+    public final CompletableFuture<Assignment> dispatch(List<Itinerary> itineraries, FeasibilityScreen screen, Executor executor) {
+        final List<String> ids = new ArrayList<>(members.size());
+        final List<IDroneData> drones = new ArrayList<>(members.size());
+        final List<FleetMember> available = new ArrayList<>(members.size());
+        for (Map.Entry<String, FleetMember> entry : members.entrySet()) {
+            FleetMember member = entry.getValue();
+            IDroneData droneData = member.controller.getDroneData();
+            if ((member.status == DroneStatus.IDLE || member.status == DroneStatus.LANDED) && droneData != null && member.queued.compareAndSet(0, 1)) {
+                ids.add(entry.getKey());
+                drones.add(droneData);
+                available.add(member);
+            }
+        }
+        final String[] droneIds = ids.toArray(new String[ids.size()]);
+        final FleetMember[] reserved = available.toArray(new FleetMember[available.size()]);
+        // Reservations turned into missions, written before the assignment completes
+        final boolean[] assigned = new boolean[reserved.length];
+        final List<Itinerary> wave = new ArrayList<>(itineraries);
+        CompletableFuture<FeasibilityMatrix> screened;
+        try {
+            screened = screen.screen(wave, drones, executor, lanes.length);
+        }
+        catch (RuntimeException e) {
+            screened = Futures.failed(e);
+        }
+        return screened.thenApply(matrix -> {
+            Assignment assignment = AssignmentSolver.solve(matrix);
+            List<CompletableFuture<Void>> missions = new ArrayList<>(wave.size());
+            for (int i = 0; i < wave.size(); i++) {
+                int drone = assignment.getDrone(i);
+                if (drone < 0) {
+                    missions.add(null);
+                }
+                else if (!assigned[drone]) {
+                    assigned[drone] = true;
+                    missions.add(enqueue(reserved[drone], wave.get(i)));
+                }
+                else {
+                    missions.add(submit(droneIds[drone], wave.get(i)));
+                }
+            }
+            return new Assignment(assignment.drones(), assignment.getTotalFlightTime(), droneIds, Collections.unmodifiableList(missions));
+        }).whenComplete((assignment, error) -> {
+            // The drones left without an itinerary, or the whole fleet reserved if the wave failed, are available again
+            for (int drone = 0; drone < reserved.length; drone++) {
+                if (!assigned[drone]) {
+                    reserved[drone].queued.decrementAndGet();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Cancels all the missions of the given drone that did not take off yet.
+     * The mission already flying, if any, is not affected
+     * @return a future with the number of cancelled missions
+     */
+    public final CompletableFuture<Integer> cancel(String droneId) {
+        final FleetMember member = member(droneId);
+        return CompletableFuture.supplyAsync(member::cancelPending, member.lane);
+    }
+    
+    /**
+     * Cancels the missions that did not take off yet, for every drone of the fleet
+     * @return a future with the number of cancelled missions
+     */
+    public final CompletableFuture<Integer> cancelAll() {
+        CompletableFuture<Integer> total = CompletableFuture.completedFuture(0);
+        for (String droneId : members.keySet()) {
+            total = total.thenCombine(cancel(droneId), Integer::sum);
+        }
+        return total;
+    }
+    
+    /**
+     * Emergency abort of the given drone: its flight is aborted at once from the calling thread, 
+     * landing the drone, and all its other missions are cancelled
+     * @return a future completed when the drone landed
+     */
+    public final CompletableFuture<Void> abort(String droneId) {
+        FleetMember member = member(droneId);
+        return CompletableFuture.allOf(member.controller.abort(), member.abortOnLane());
+    }
+    
+    /**
+     * Emergency abort of the whole fleet, e.g. when a storm cell rolls in: every flight is aborted at once 
+     * from the calling thread, landing the drones, and every other mission is cancelled.
+     * Landings are sent one drone after the other without waiting for any lane or any running maneuver,
+     * and only then flights are failed and the lanes asked to cancel the other missions, 
+     * so the last drone is reached after a few microseconds per drone
+     * @return a future completed when all the drones landed, or failed if any landing failed
+     */
+    public final CompletableFuture<Void> abortAll() {
+        List<FleetMember> fleet = new ArrayList<>(members.values());
+        List<FlightExecution> flights = new ArrayList<>(fleet.size());
+        List<CompletableFuture<Void>> landings = new ArrayList<>(fleet.size() * 2);
+        for (FleetMember member : fleet) {
+            FlightExecution flight = member.controller.getCurrentFlight();
+            if (flight != null) {
+                landings.add(flight.emergencyLanding(null));
+                flights.add(flight);
+            }
+        }
+        // Completion callbacks hop to the lanes, they would slow down the landings still to send
+        for (FlightExecution flight : flights) {
+            flight.signalAborted();
+        }
+        for (FleetMember member : fleet) {
+            landings.add(member.abortOnLane());
+        }
+        return CompletableFuture.allOf(landings.toArray(new CompletableFuture<?>[landings.size()]));
+    }
+    
+    /**
+     * @return the current status of the given drone
+     */
+    public final DroneStatus getStatus(String droneId) {
+        return member(droneId).status;
+    }
+    
+    /**
+     * @return a snapshot of the status of every drone of the fleet
+     */
+    public final Map<String, DroneStatus> getStatuses() {
+        Map<String, DroneStatus> statuses = new HashMap<>();
+        for (Map.Entry<String, FleetMember> entry : members.entrySet()) {
+            statuses.put(entry.getKey(), entry.getValue().status);
+        }
+        return statuses;
+    }
+    
+    /**
+     * @return the number of drones of the fleet
+     */
+    public final int size() {
+        return members.size();
+    }
+    
+    /**
+     * Stops all the lanes: queued work is dropped, flying drones complete their current maneuvers.
+     * The {@link ExecutionContext}, if any, is left open since it may be shared
+     */
+    @Override
+    public void close() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+    
+    private final FleetMember member(String droneId) {
+        FleetMember member = members.get(droneId);
+        if (member == null) {
+            throw new IllegalArgumentException("Drone " + droneId + " is not part of the fleet");
+        }
+        return member;
+    }
+    
+    /**
+     * A mission queued for a drone
+     */
+    private static final class Mission {
+        
+        private final Itinerary itinerary;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        
+        private Mission(Itinerary itinerary) {
+            this.itinerary = itinerary;
+        }
+    }
+    
+    /**
+     * A drone of the fleet. Everything but the status and the queued count is only touched by its lane
+     */
+    private static final class FleetMember {
+        
+        private final VaporController controller;
+        private final ExecutorService lane;
+        private final Executor planner;
+        private final Queue<Mission> missions = new ArrayDeque<>();
+        // Missions submitted and not over yet, plus the reservation of a dispatch wave, if any
+        private final AtomicInteger queued = new AtomicInteger();
+        private volatile DroneStatus status = DroneStatus.IDLE;
+        
+        private FleetMember(VaporController controller, ExecutorService lane, Executor planner) {
+            this.controller = controller;
+            this.lane = lane;
+            this.planner = planner;
+        }
+        
+        /**
+         * Runs the mission at the head of the queue, skipping the cancelled ones
+         */
+        private void startNext() {
+            Mission mission = missions.peek();
+            while (mission != null && mission.result.isDone()) {
+                missions.poll();
+                queued.decrementAndGet();
+                mission = missions.peek();
+            }
+            if (mission == null) {
+                return;
+            }
+            final Mission current = mission;
+            status = DroneStatus.PLANNING;
+            CompletableFuture<Void> flight;
+            try {
+                flight = controller.plan(current.itinerary, planner).thenComposeAsync(droneCommands -> {
+                    if (current.result.isDone()) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    controller.setDroneCommands(droneCommands);
+                    status = DroneStatus.FLYING;
+                    return controller.fly();
+                }, lane);
+            }
+            catch (RuntimeException e) {
+                flight = Futures.failed(e);
+            }
+            flight.whenCompleteAsync((v, e) -> {
+                // The drone is available again as soon as the mission result is out
+                missions.poll();
+                queued.decrementAndGet();
+                if (current.result.isCancelled()) {
+                    status = DroneStatus.CANCELLED;
+                }
+                else if (e instanceof FlightAbortedException || (e instanceof CompletionException && e.getCause() instanceof FlightAbortedException)) {
+                    status = DroneStatus.ABORTED;
+                    current.result.completeExceptionally(e);
+                }
+                else if (e == null) {
+                    status = DroneStatus.LANDED;
+                    current.result.complete(null);
+                }
+                else {
+                    status = DroneStatus.FAILED;
+                    current.result.completeExceptionally(e);
+                }
+                startNext();
+            }, lane);
+        }
+        
+        /**
+         * Cancels the missions not flying yet on the lane, once the flight has been aborted.
+         * A flight started on the lane in the meantime is aborted there too
+         * @return a future completed when that flight, if any, landed
+         */
+        private CompletableFuture<Void> abortOnLane() {
+            return CompletableFuture.supplyAsync(() -> {
+                cancelPending();
+                return status == DroneStatus.FLYING ? controller.abort() : CompletableFuture.<Void> completedFuture(null);
+            }, lane).thenCompose(landing -> landing);
+        }
+        
+        /**
+         * Cancels the queued missions and the one being planned, if any
+         */
+        private int cancelPending() {
+            int cancelled = 0;
+            for (Mission mission : missions) {
+                if (status != DroneStatus.FLYING || mission != missions.peek()) {
+                    if (mission.result.cancel(false)) {
+                        cancelled++;
+                    }
+                }
+            }
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import co.watly.vapor.util.Helper;
+
+/**
+ * Thrown if a flight has been aborted and the drone sent down in emergency.
+ * It carries no stack trace, as it would only show who called the abort: a fleet-wide abort creates one per drone
+ * @author Marco Vasapollo
+ *
+ */
+public class FlightAbortedException extends RuntimeException {
+    
+    private static final long serialVersionUID = -3907260187214718650L;
+    
+    public FlightAbortedException(long altitude, Throwable cause) {
+        super(Helper.stringFormat("Flight aborted, emergency landing from {0} cm", altitude), cause, true, false);
+    }
+}
@@ -0,0 +1,481 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.journal.FlightJournal;
+import co.watly.vapor.model.IDrone;
+import co.watly.vapor.telemetry.Phase;
+import co.watly.vapor.telemetry.Telemetry;
+import co.watly.vapor.util.DroneCommandMapper;
+import co.watly.vapor.util.Futures;
+import co.watly.vapor.util.Helper;
+
+/**
+ * Pipelined execution of a flight plan.
+ * While a maneuver runs, the next command is already decoded, validated and its argument converted.
+ * Commands allowed by the {@link OverlapPolicy} are issued without waiting for the running ones,
+ * any other command waits for all the running ones to complete.
+ * The completion future fails as soon as a command fails, and no more commands are issued after that.
+ * The commands waiting for the running ones are issued on the drone executor, if any, 
+ * otherwise on the thread that completed the last running one.
+ * A flight can be aborted at any time from any thread, see {@link #abort()}.
+ * The drone is never called holding the lock of the flight: a slow drone call never delays an abort
+ * @author Marco Vasapollo
+ *
+ */
+public final class FlightExecution {
+    
+    private final IDrone drone;
+    private final Iterator<DroneCommand> droneCommands;
+    private final OverlapPolicy overlapPolicy;
+    private final Telemetry telemetry;
+    private final FlightJournal journal;
+    private final long flightId;
+    private final long commandTimeout;
+    private final Executor droneExecutor;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    
+    // Only touched by the thread that is advancing the plan, one at a time
+    private final List<CompletableFuture<Void>> running = new ArrayList<>();
+    private DroneCommand lastIssued;
+    private DroneCommand next;
+    private Function<IDrone, CompletableFuture<Void>> preparedNext;
+    private RuntimeException prefetchError;
+    
+    // Issue to completion time of each step, in nanoseconds, and whether the drone completed it
+    private long[] stepLatencies = new long[8];
+    private boolean[] stepSucceeded = new boolean[8];
+    private int issuedSteps;
+    
+    // Guarded by this: the height reached by the issued climbs and descents in cm/sec * ms, the speed to land at
+    private long altitude;
+    private long landingSpeed;
+    private CompletableFuture<Void> landing;
+    private FlightAbortedException abortError;
+    // A command is being sent: the landing, if requested meanwhile, is sent right after it, never before it
+    private boolean sending;
+    private boolean landingPending;
+    
+    /**
+     * @param journal records every issued command and its result, null to record nothing
+     * @param commandTimeout how long a command may run before the flight is aborted, in milliseconds, 0 for no limit.
+     * The abort runs on the drone executor if any, on the common pool otherwise, never on the timer thread
+     * @param droneExecutor issues the commands that waited for the running ones, null to issue them on the thread that completed the last one
+     */
+    FlightExecution(IDrone drone, Iterator<DroneCommand> droneCommands, OverlapPolicy overlapPolicy, Telemetry telemetry, FlightJournal journal, long commandTimeout, Executor droneExecutor) {
+        this.drone = drone;
+        this.droneCommands = droneCommands;
+        this.overlapPolicy = overlapPolicy;
+        this.telemetry = telemetry;
+        this.journal = journal;
+        this.flightId = journal == null ? -1 : journal.nextFlightId();
+        this.commandTimeout = commandTimeout;
+        this.droneExecutor = droneExecutor;
+    }
+    
+    /**
+     * Starts issuing the commands, without blocking the calling thread
+     * @return this execution
+     */
+    FlightExecution start() {
+        prefetch();
+        advance();
+        return this;
+    }
+    
+    /**
+     * @return a future completed when all the commands are completed, or failed with the first error
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+    
+    /**
+     * Emergency abort: no more commands are issued and the drone is sent down at once, 
+     * without waiting for the running maneuvers. The landing lasts as long as needed to undo
+     * the climbs and descents issued so far, at the speed of the first climb.
+     * The completion fails with a {@link FlightAbortedException}.
+     * Nothing happens if the flight is already over
+     * @return a future completed when the landing maneuver completed
+     */
+    public CompletableFuture<Void> abort() {
+        return abort(null);
+    }
+    
+    /**
+     * @param cause why the flight is aborted, null if requested from outside
+     */
+    private CompletableFuture<Void> abort(Throwable cause) {
+        CompletableFuture<Void> landed = emergencyLanding(cause);
+        signalAborted();
+        return landed;
+    }
+    
+    /**
+     * First half of {@link #abort()}: stops issuing commands and sends the drone down, 
+     * without running any callback of the completion. Lets a fleet reach all its drones before anything else.
+     * If a command is being sent meanwhile, the landing is left to the thread sending it, right after it, 
+     * so that it never overtakes the command and this call never waits for the drone
+     * @param cause why the flight is aborted, null if requested from outside
+     * @return a future completed when the landing maneuver completed
+     */
+    CompletableFuture<Void> emergencyLanding(Throwable cause) {
+        synchronized (this) {
+            if (landing != null) {
+                return landing;
+            }
+            if (completion.isDone()) {
+                landing = CompletableFuture.completedFuture(null);
+                return landing;
+            }
+            abortError = new FlightAbortedException(altitude / 1000, cause);
+            landing = new CompletableFuture<>();
+            if (sending) {
+                landingPending = true;
+                return landing;
+            }
+        }
+        land();
+        return landing;
+    }
+    
+    /**
+     * Second half of {@link #abort()}: fails the completion, once the drone has been sent down
+     */
+    void signalAborted() {
+        FlightAbortedException error;
+        synchronized (this) {
+            error = abortError;
+        }
+        if (error != null) {
+            completion.completeExceptionally(error);
+        }
+    }
+    
+    /**
+     * @return true once the flight has been aborted
+     */
+    public synchronized boolean isAborted() {
+        return abortError != null;
+    }
+    
+    /**
+     * @return the identifier of this flight in the {@link FlightJournal}, -1 if it is not journaled
+     */
+    public long getFlightId() {
+        return flightId;
+    }
+    
+    /**
+     * @return the number of commands issued so far
+     */
+    public synchronized int getIssuedSteps() {
+        return issuedSteps;
+    }
+    
+    /**
+     * @return the number of leading commands the drone completed successfully so far, e.g. the progress to re-plan from, 
+     * see {@link VaporController#progress(co.watly.vapor.data.Itinerary, DroneCommand[], int)}. A failed command is not completed
+     */
+    public synchronized int getCompletedSteps() {
+        int step = 0;
+        while (step < issuedSteps && stepSucceeded[step]) {
+            step++;
+        }
+        return step;
+    }
+    
+    /**
+     * @return the issue to completion latency of each issued command in nanoseconds, -1 if it is still running
+     */
+    public synchronized long[] getStepLatencies() {
+        return Arrays.copyOf(stepLatencies, issuedSteps);
+    }
+    
+    /**
+     * Decodes, validates and prepares the next command, so that it is ready when the running ones complete
+     */
+    private void prefetch() {
+        try {
+            if (droneCommands.hasNext()) {
+                next = droneCommands.next();
+                preparedNext = DroneCommandMapper.prepare(next);
+            }
+            else {
+                next = null;
+                preparedNext = null;
+            }
+        }
+        catch (RuntimeException e) {
+            prefetchError = e;
+        }
+    }
+    
+    /**
+     * Issues commands until one has to wait for the running ones.
+     * Loops instead of recursing, so that drones completing synchronously do not grow the stack
+     */
+    private void advance() {
+        while (!completion.isDone()) {
+            if (atBarrier() && !running.isEmpty()) {
+                CompletableFuture<Void> allRunning = allRunning();
+                if (!allRunning.isDone()) {
+                    allRunning.whenComplete((v, e) -> {
+                        if (e == null) {
+                            resume();
+                        }
+                    });
+                    return;
+                }
+                if (allRunning.isCompletedExceptionally()) {
+                    // The failure has already been reported by the step itself
+                    return;
+                }
+            }
+            if (!issueNext()) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Goes on advancing once the running commands completed, on the drone executor if any.
+     * A flight whose next command cannot be issued is aborted, rather than left waiting forever
+     */
+    private void resume() {
+        if (droneExecutor == null) {
+            advance();
+            return;
+        }
+        try {
+            droneExecutor.execute(this::advance);
+        }
+        catch (RejectedExecutionException e) {
+            abort(e);
+        }
+    }
+    
+    /**
+     * Issues all the commands from the calling thread, blocking while the running ones complete.
+     * Meant to be run on a virtual thread
+     * @return this execution, already completed
+     */
+    FlightExecution run() {
+        prefetch();
+        while (!completion.isDone()) {
+            if (atBarrier() && !running.isEmpty()) {
+                try {
+                    // An abort does not wait for the running maneuvers
+                    CompletableFuture.anyOf(allRunning(), completion).join();
+                }
+                catch (CompletionException e) {
+                    // The failure has already been reported by the step itself
+                    return this;
+                }
+            }
+            if (!issueNext()) {
+                return this;
+            }
+        }
+        return this;
+    }
+    
+    /**
+     * @return true if the running commands must complete before going on
+     */
+    private boolean atBarrier() {
+        return next == null || prefetchError != null || (lastIssued != null && !overlapPolicy.canOverlap(lastIssued, next));
+    }
+    
+    private CompletableFuture<Void> allRunning() {
+        CompletableFuture<Void> allRunning = CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[running.size()]));
+        running.clear();
+        return allRunning;
+    }
+    
+    /**
+     * Issues the prefetched command and prefetches the following one
+     * @return false if the flight is over, successfully or not
+     */
+    private boolean issueNext() {
+        if (prefetchError != null) {
+            completion.completeExceptionally(prefetchError);
+            return false;
+        }
+        if (next == null) {
+            completion.complete(null);
+            return false;
+        }
+        synchronized (this) {
+            if (landing != null) {
+                return false;
+            }
+            sending = true;
+        }
+        boolean land;
+        try {
+            issue();
+        }
+        finally {
+            synchronized (this) {
+                sending = false;
+                land = landingPending;
+                landingPending = false;
+            }
+        }
+        if (land) {
+            // Aborted while the command was being sent
+            land();
+            return false;
+        }
+        prefetch();
+        return true;
+    }
+    
+    private void issue() {
+        final DroneCommand droneCommand = next;
+        CompletableFuture<Void> maneuver = send(droneCommand, preparedNext);
+        lastIssued = droneCommand;
+        running.add(maneuver);
+        maneuver.whenComplete((v, e) -> {
+            if (e instanceof TimeoutException) {
+                abort(e);
+            }
+            else if (e != null) {
+                completion.completeExceptionally(e);
+            }
+        });
+    }
+    
+    /**
+     * Sends the given command to the drone, keeping track of its latency and of the altitude
+     * @return the running maneuver, completed once its step is accounted for, failed if the drone refused it or did not complete it in time
+     */
+    private CompletableFuture<Void> send(final DroneCommand droneCommand, Function<IDrone, CompletableFuture<Void>> prepared) {
+        final int step = startStep();
+        final long issuedAt = System.nanoTime();
+        if (journal != null) {
+            journal.issued(flightId, step, droneCommand, issuedAt);
+        }
+        CompletableFuture<Void> maneuver;
+        try {
+            maneuver = prepared.apply(drone);
+            if (maneuver == null) {
+                throw new IllegalStateException("Drone returned no result for " + droneCommand);
+            }
+        }
+        catch (RuntimeException e) {
+            long failedAt = System.nanoTime();
+            endStep(step, failedAt - issuedAt, false);
+            telemetry.record(Phase.EXECUTE, failedAt - issuedAt);
+            journalResult(step, droneCommand, false);
+            return Futures.failed(e);
+        }
+        trackAltitude(droneCommand);
+        if (commandTimeout > 0) {
+            maneuver = Futures.within(maneuver, commandTimeout, TimeUnit.MILLISECONDS, () -> new TimeoutException(Helper.stringFormat("Drone did not complete {0} within {1} ms", droneCommand, commandTimeout)), droneExecutor == null ? ForkJoinPool.commonPool() : droneExecutor);
+        }
+        // Whoever waits for the maneuver, e.g. the completion of the flight, finds its step already accounted for, and the error as it is
+        final CompletableFuture<Void> accounted = new CompletableFuture<>();
+        maneuver.whenComplete((v, e) -> {
+            long completedAt = System.nanoTime();
+            endStep(step, completedAt - issuedAt, e == null);
+            telemetry.record(Phase.EXECUTE, completedAt - issuedAt);
+            if (journal != null) {
+                journal.completed(flightId, step, droneCommand, e == null, completedAt);
+            }
+            if (e == null) {
+                accounted.complete(null);
+            }
+            else {
+                accounted.completeExceptionally(e);
+            }
+        });
+        return accounted;
+    }
+    
+    private synchronized void trackAltitude(DroneCommand droneCommand) {
+        if (PlanWriter.UP.equals(droneCommand.getName())) {
+            altitude += droneCommand.getSpeed() * droneCommand.getArgAsLong();
+            if (landingSpeed == 0) {
+                landingSpeed = droneCommand.getSpeed();
+            }
+        }
+        else if (PlanWriter.DOWN.equals(droneCommand.getName())) {
+            altitude -= droneCommand.getSpeed() * droneCommand.getArgAsLong();
+        }
+    }
+    
+    /**
+     * Sends the drone down from the current altitude, completing the landing once down
+     */
+    private void land() {
+        final CompletableFuture<Void> landed;
+        final DroneCommand down;
+        synchronized (this) {
+            landed = landing;
+            down = altitude <= 0 || landingSpeed <= 0 ? null : new DroneCommand(PlanWriter.DOWN, landingSpeed, (altitude + landingSpeed - 1) / landingSpeed);
+        }
+        if (down == null) {
+            landed.complete(null);
+            return;
+        }
+        CompletableFuture<Void> maneuver;
+        try {
+            maneuver = send(down, DroneCommandMapper.prepare(down));
+        }
+        catch (RuntimeException e) {
+            maneuver = Futures.failed(e);
+        }
+        maneuver.whenComplete((v, e) -> {
+            if (e == null) {
+                landed.complete(null);
+            }
+            else {
+                landed.completeExceptionally(e);
+            }
+        });
+    }
+    
+    private void journalResult(int step, DroneCommand droneCommand, boolean successful) {
+        if (journal != null) {
+            journal.completed(flightId, step, droneCommand, successful, System.nanoTime());
+        }
+    }
+    
+    private synchronized int startStep() {
+        if (issuedSteps == stepLatencies.length) {
+            stepLatencies = Arrays.copyOf(stepLatencies, issuedSteps * 2);
+            stepSucceeded = Arrays.copyOf(stepSucceeded, issuedSteps * 2);
+        }
+        stepLatencies[issuedSteps] = -1;
+        return issuedSteps++;
+    }
+    
+    private synchronized void endStep(int step, long latency, boolean successful) {
+        stepLatencies[step] = latency;
+        stepSucceeded[step] = successful;
+    }
+}
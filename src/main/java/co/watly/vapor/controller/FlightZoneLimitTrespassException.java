@@ -13,7 +13,7 @@ package co.watly.vapor.controller;
 import co.watly.vapor.util.Helper;
 
 /**
- * Thrown if Start or End point elevation terspass the Flight Zone
+ * Thrown if Start, End or a Waypoint elevation terspass the Flight Zone
  * @author Marco Vasapollo
  *
  */
@@ -24,4 +24,8 @@ public class FlightZoneLimitTrespassException extends RuntimeException {
     public FlightZoneLimitTrespassException(long height, boolean start, long maxHeight) {
         super(Helper.stringFormat("The {0} point elevation of {1} cm exceedes the flight zone limit of {2} cm", start ? "Start" : "End", height, maxHeight));
     }
+    
+    public FlightZoneLimitTrespassException(long height, int waypoint, long maxHeight) {
+        super(Helper.stringFormat("The waypoint {0} elevation of {1} cm exceedes the flight zone limit of {2} cm", waypoint, height, maxHeight));
+    }
 }
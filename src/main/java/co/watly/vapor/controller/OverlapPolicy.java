@@ -0,0 +1,35 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import co.watly.vapor.data.DroneCommand;
+
+/**
+ * Tells whether a Drone Command can be issued while the previous one is still running.
+ * It depends on the drone model: e.g. some drones can rotate while climbing
+ * @author Marco Vasapollo
+ *
+ */
+@FunctionalInterface
+public interface OverlapPolicy {
+    
+    /**
+     * Every command waits for the previous one to complete
+     */
+    OverlapPolicy SEQUENTIAL = (running, next) -> false;
+    
+    /**
+     * @param running the last issued command, still running
+     * @param next the command to be issued
+     * @return true if next can be issued without waiting for running to complete
+     */
+    boolean canOverlap(DroneCommand running, DroneCommand next);
+}
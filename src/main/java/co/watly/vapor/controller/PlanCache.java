@@ -0,0 +1,313 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDroneData;
+import co.watly.vapor.util.Futures;
+
+/**
+ * Bounded cache of compiled plans, shareable by many controllers.
+ * The key is the normalized itinerary (coordinates quantized, weight rounded up to its bucket), 
+ * the Drone data fields that shape the plan, the {@link EnergyModel} and the {@link PlanningMode}. Plans are computed from the normalized itinerary,
+ * so every itinerary falling in the same key gets exactly the plan computed for that key.
+ * The total journey is not part of the key, as it drains while the drone flies: 
+ * every request checks it against the journey the cached plan consumes, and fails with an {@link InsufficientAutonomyException} if it is short.
+ * Concurrent misses for the same key share a single planning. 
+ * Entries are evicted when the cache is full (least recently used first) or when they expire, a ttl after their plan was computed.
+ * A plan still being computed is never evicted: while many are, the cache may briefly hold more than its max size
+ * @author Marco Vasapollo
+ *
+ */
+public class PlanCache {
+    
+    // 0.00001 degrees are about 1.1 meters
+    private static final double DEFAULT_COORDINATE_QUANTUM = 0.00001;
+    
+    private static final long DEFAULT_WEIGHT_BUCKET = 1;
+    
+    private final int maxSize;
+    private final long ttlNanos;
+    private final double coordinateQuantum;
+    private final long weightBucket;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    // Access ordered, guarded by itself
+    private final LinkedHashMap<PlanKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    
+    public PlanCache(int maxSize, long ttl, TimeUnit unit) {
+        this(maxSize, ttl, unit, DEFAULT_COORDINATE_QUANTUM, DEFAULT_WEIGHT_BUCKET);
+    }
+    
+    /**
+     * @param maxSize max number of cached plans
+     * @param ttl how long a plan stays valid
+     * @param unit the ttl unit
+     * @param coordinateQuantum latitudes and longitudes are rounded to multiples of it, in degrees
+     * @param weightBucket weights are rounded up to multiples of it, in hg
+     */
+    public PlanCache(int maxSize, long ttl, TimeUnit unit, double coordinateQuantum, long weightBucket) {
+        if (maxSize < 1 || ttl <= 0 || coordinateQuantum <= 0 || weightBucket < 1) {
+            throw new IllegalArgumentException("Plan cache size, ttl, coordinate quantum and weight bucket must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.coordinateQuantum = coordinateQuantum;
+        this.weightBucket = weightBucket;
+    }
+    
+    /**
+     * Returns the cached plan for the given itinerary and drone, planned as {@link PlanningMode#DSL} with the {@link EnergyModel#DISTANCE},
+     * or computes it through the planner. See {@link #get(Itinerary, IDroneData, EnergyModel, PlanningMode, Function)}
+     */
+    public final CompletableFuture<DroneCommand[]> get(Itinerary itinerary, IDroneData droneData, Function<Itinerary, CompletableFuture<DroneCommand[]>> planner) {
+        return get(itinerary, droneData, EnergyModel.DISTANCE, PlanningMode.DSL, planner);
+    }
+    
+    /**
+     * Returns the cached plan for the given itinerary and drone, or computes it through the planner
+     * @param itinerary the itinerary to plan
+     * @param droneData the data of the drone that will fly
+     * @param energyModel how the planner prices the maneuvers
+     * @param planningMode how the planner computes the plan
+     * @param planner plans the normalized itinerary on a miss
+     * @return a copy of the cached plan array, callers are free to change it. Commands are immutable and shared
+     */
+    public final CompletableFuture<DroneCommand[]> get(Itinerary itinerary, IDroneData droneData, EnergyModel energyModel, PlanningMode planningMode, 
+            Function<Itinerary, CompletableFuture<DroneCommand[]>> planner) {
+        final Itinerary normalized = normalize(itinerary, droneData);
+        final PlanKey key = new PlanKey(normalized, droneData, energyModel, planningMode);
+        final long now = System.nanoTime();
+        final Entry entry;
+        boolean miss = false;
+        synchronized (entries) {
+            Entry cached = entries.get(key);
+            if (cached != null && cached.isExpired(now, ttlNanos)) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+                cached = null;
+            }
+            if (cached == null) {
+                cached = new Entry();
+                entries.put(key, cached);
+                evictOverflow();
+                miss = true;
+            }
+            entry = cached;
+        }
+        if (miss) {
+            misses.incrementAndGet();
+            CompletableFuture<DroneCommand[]> planned;
+            try {
+                planned = planner.apply(normalized);
+            }
+            catch (RuntimeException e) {
+                planned = Futures.failed(e);
+            }
+            planned.whenComplete((droneCommands, error) -> {
+                if (error == null) {
+                    // The planner found the plan feasible with the current journey, whatever the accounting of the commands says
+                    entry.complete(droneCommands, Math.min(PlanOptimizer.journey(droneCommands, energyModel, normalized.getWeight(), droneData), droneData.getTotalJourney()));
+                    // Overflow kept while the plan was computed
+                    synchronized (entries) {
+                        evictOverflow();
+                    }
+                }
+                else {
+                    // Failures are not cached
+                    synchronized (entries) {
+                        entries.remove(key, entry);
+                    }
+                    entry.plan.completeExceptionally(error);
+                }
+            });
+        }
+        else {
+            hits.incrementAndGet();
+        }
+        return entry.plan.thenApply(droneCommands -> {
+            // The drone may have flown since the plan was cached
+            if (entry.journey > droneData.getTotalJourney()) {
+                throw new InsufficientAutonomyException(droneData.getTotalJourney(), entry.journey);
+            }
+            return droneCommands.clone();
+        });
+    }
+    
+    /**
+     * Drops every cached plan
+     */
+    public final void clear() {
+        synchronized (entries) {
+            evictions.addAndGet(entries.size());
+            entries.clear();
+        }
+    }
+    
+    /**
+     * Drops the expired plans, without waiting for them to be requested again
+     * @return the number of dropped plans
+     */
+    public final int evictExpired() {
+        final long now = System.nanoTime();
+        int evicted = 0;
+        synchronized (entries) {
+            for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+                if (iterator.next().isExpired(now, ttlNanos)) {
+                    iterator.remove();
+                    evicted++;
+                }
+            }
+        }
+        evictions.addAndGet(evicted);
+        return evicted;
+    }
+    
+    public final int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    public final long getHits() {
+        return hits.get();
+    }
+    
+    public final long getMisses() {
+        return misses.get();
+    }
+    
+    public final long getEvictions() {
+        return evictions.get();
+    }
+    
+    /**
+     * @return the itinerary the cached plan is computed from: quantized coordinates and weight rounded up to its bucket
+     */
+    final Itinerary normalize(Itinerary itinerary, IDroneData droneData) {
+        long weight = (itinerary.getWeight() + weightBucket - 1) / weightBucket * weightBucket;
+        // Rounding up must not turn a carriable weight into an excessive one
+        if (itinerary.getWeight() <= droneData.getMaxWeightCapability()) {
+            weight = Math.min(weight, droneData.getMaxWeightCapability());
+        }
+        List<Coordinates> waypoints = new ArrayList<>(itinerary.getWaypoints().size());
+        for (Coordinates waypoint : itinerary.getWaypoints()) {
+            waypoints.add(quantize(waypoint));
+        }
+        return new Itinerary(quantize(itinerary.getStart()), waypoints, itinerary.isOrderedWaypoints(), quantize(itinerary.getEnd()), itinerary.getMaxHeight(), weight);
+    }
+    
+    private Coordinates quantize(Coordinates coordinates) {
+        return new Coordinates(Math.round(coordinates.getLatitude() / coordinateQuantum) * coordinateQuantum, Math.round(coordinates.getLongitude() / coordinateQuantum) * coordinateQuantum, coordinates.getHeight());
+    }
+    
+    // Must be called holding the entries lock, skips the plans still being computed
+    private void evictOverflow() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxSize && eldest.hasNext()) {
+            if (eldest.next().plan.isDone()) {
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * A cached plan, possibly still being computed
+     */
+    private static final class Entry {
+        
+        // Written before the plan is completed
+        private volatile long completedAt;
+        private volatile long journey;
+        private final CompletableFuture<DroneCommand[]> plan = new CompletableFuture<>();
+        
+        /**
+         * @param journey the journey the plan consumes, in cm
+         */
+        private void complete(DroneCommand[] droneCommands, long journey) {
+            completedAt = System.nanoTime();
+            this.journey = journey;
+            plan.complete(droneCommands);
+        }
+        
+        /**
+         * @return true if the plan was computed more than the given ttl ago, never while it is being computed
+         */
+        private boolean isExpired(long now, long ttlNanos) {
+            return plan.isDone() && now - completedAt > ttlNanos;
+        }
+    }
+    
+    /**
+     * Normalized itinerary plus the Drone data fields, energy model and planning mode the plan depends on
+     */
+    private static final class PlanKey {
+        
+        // Immutable, held as it is
+        private final Itinerary itinerary;
+        private final String modelName;
+        private final long maxWeightCapability;
+        private final long maxReachableSpeed;
+        private final long speedDecreasingFactor;
+        private final EnergyModel energyModel;
+        private final PlanningMode planningMode;
+        private final int hash;
+        
+        private PlanKey(Itinerary itinerary, IDroneData droneData, EnergyModel energyModel, PlanningMode planningMode) {
+            this.itinerary = itinerary;
+            modelName = droneData.getModelName();
+            maxWeightCapability = droneData.getMaxWeightCapability();
+            maxReachableSpeed = droneData.getMaxReachableSpeed();
+            speedDecreasingFactor = Double.doubleToLongBits(droneData.getSpeedDecreasingFactor());
+            this.energyModel = energyModel;
+            this.planningMode = planningMode;
+            long h = itinerary.hashCode();
+            h = 31 * h + (modelName == null ? 0 : modelName.hashCode());
+            h = 31 * h + maxWeightCapability;
+            h = 31 * h + maxReachableSpeed;
+            h = 31 * h + speedDecreasingFactor;
+            h = 31 * h + energyModel.hashCode();
+            h = 31 * h + planningMode.hashCode();
+            hash = (int) (h ^ (h >>> 32));
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PlanKey)) {
+                return false;
+            }
+            PlanKey other = (PlanKey) obj;
+            return hash == other.hash && planningMode == other.planningMode && maxWeightCapability == other.maxWeightCapability && maxReachableSpeed == other.maxReachableSpeed && speedDecreasingFactor == other.speedDecreasingFactor && (modelName == null ? other.modelName == null : modelName.equals(other.modelName)) && energyModel.equals(other.energyModel) && itinerary.equals(other.itinerary);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.model.IDroneData;
+
+/**
+ * Optimization pass over a flight plan, compiled or generated, run before flying it:
+ * <ul>
+ * <li>consecutive rotations at the same speed become one, modulo 360 degrees, and no-op ones (below a millidegree) are dropped.
+ * Rotations stay in [0, 360) degrees, as the planning emits them, unless the drones can counter-rotate: 
+ * then they turn the shortest way, in (-180, 180] degrees</li>
+ * <li>consecutive moves the same way at the same speed become one, moves of no duration are dropped</li>
+ * <li>where the {@link OverlapPolicy} lets a forward run while the drone is climbing, the rotation between them is done before the climb,
+ * so that the climb is folded into the first leg</li>
+ * </ul>
+ * The drone reaches the same points at the same heights, with the same heading, never in more time nor with more journey.
+ * The policy should be the one of the controllers flying the plans
+ * @author Marco Vasapollo
+ *
+ */
+public final class PlanOptimizer {
+    
+    // Rotations below are no-op, e.g. between aligned legs, where the angles differ only by rounding
+    private static final double NO_OP_DEGREES = 0.001;
+    
+    private final OverlapPolicy overlapPolicy;
+    private final boolean counterRotation;
+    
+    /**
+     * Creates an optimizer for drones that only rotate by positive angles
+     */
+    public PlanOptimizer(OverlapPolicy overlapPolicy) {
+        this(overlapPolicy, false);
+    }
+    
+    /**
+     * @param counterRotation true if the drones flying the plans accept negative rotations, so that rotations can turn the shortest way
+     */
+    public PlanOptimizer(OverlapPolicy overlapPolicy, boolean counterRotation) {
+        this.overlapPolicy = overlapPolicy;
+        this.counterRotation = counterRotation;
+    }
+    
+    public final OverlapPolicy getOverlapPolicy() {
+        return overlapPolicy;
+    }
+    
+    public final boolean isCounterRotation() {
+        return counterRotation;
+    }
+    
+    /**
+     * @return the optimized plan, the given one if nothing could be improved
+     */
+    public final DroneCommand[] optimize(DroneCommand[] droneCommands) {
+        List<DroneCommand> optimized = new ArrayList<>(droneCommands.length);
+        boolean changed = false;
+        for (DroneCommand droneCommand : droneCommands) {
+            DroneCommand last = optimized.isEmpty() ? null : optimized.get(optimized.size() - 1);
+            if (PlanWriter.ROTATE.equals(droneCommand.getName())) {
+                double degrees = droneCommand.getArgAsDouble();
+                if (last != null && PlanWriter.ROTATE.equals(last.getName()) && last.getSpeed() == droneCommand.getSpeed()) {
+                    optimized.remove(optimized.size() - 1);
+                    degrees += last.getArgAsDouble();
+                }
+                double normalized = counterRotation ? shortest(degrees) : positive(degrees);
+                if (Math.abs(normalized) >= NO_OP_DEGREES && 360 - Math.abs(normalized) >= NO_OP_DEGREES) {
+                    optimized.add(normalized == droneCommand.getArgAsDouble() ? droneCommand : new DroneCommand(PlanWriter.ROTATE, droneCommand.getSpeed(), normalized));
+                }
+                changed |= normalized != droneCommand.getArgAsDouble() || degrees != droneCommand.getArgAsDouble();
+            }
+            else if (isMove(droneCommand)) {
+                if (droneCommand.getArgAsLong() == 0) {
+                    changed = true;
+                }
+                else if (last != null && last.getName().equals(droneCommand.getName()) && last.getSpeed() == droneCommand.getSpeed()) {
+                    optimized.set(optimized.size() - 1, new DroneCommand(droneCommand.getName(), droneCommand.getSpeed(), last.getArgAsLong() + droneCommand.getArgAsLong()));
+                    changed = true;
+                }
+                else {
+                    optimized.add(droneCommand);
+                }
+            }
+            else {
+                optimized.add(droneCommand);
+            }
+        }
+        changed |= foldClimbs(optimized);
+        return changed ? optimized.toArray(new DroneCommand[optimized.size()]) : droneCommands;
+    }
+    
+    /**
+     * Moves the rotation between a climb and a forward before the climb, when the forward can then overlap the climb and the plan gets shorter.
+     * The climb must wait for the rotation, or the forward could start before the drone is aligned
+     * @return true if any climb was folded
+     */
+    private boolean foldClimbs(List<DroneCommand> droneCommands) {
+        boolean folded = false;
+        for (int i = 0; i + 2 < droneCommands.size(); i++) {
+            DroneCommand climb = droneCommands.get(i);
+            DroneCommand rotation = droneCommands.get(i + 1);
+            DroneCommand forward = droneCommands.get(i + 2);
+            if (!PlanWriter.UP.equals(climb.getName()) || !PlanWriter.ROTATE.equals(rotation.getName()) || !PlanWriter.FORWARD.equals(forward.getName()) 
+                    || !overlapPolicy.canOverlap(climb, forward) || overlapPolicy.canOverlap(rotation, climb)) {
+                continue;
+            }
+            DroneCommand previous = i > 0 ? droneCommands.get(i - 1) : null;
+            DroneCommand next = i + 3 < droneCommands.size() ? droneCommands.get(i + 3) : null;
+            if (windowTime(previous, rotation, climb, forward, next) < windowTime(previous, climb, rotation, forward, next)) {
+                droneCommands.set(i, rotation);
+                droneCommands.set(i + 1, climb);
+                folded = true;
+            }
+        }
+        return folded;
+    }
+    
+    /**
+     * @return the flight time of the given commands in a row, null ones are skipped
+     */
+    private long windowTime(DroneCommand... droneCommands) {
+        List<DroneCommand> window = new ArrayList<>(droneCommands.length);
+        for (DroneCommand droneCommand : droneCommands) {
+            if (droneCommand != null) {
+                window.add(droneCommand);
+            }
+        }
+        return flightTime(window.toArray(new DroneCommand[window.size()]));
+    }
+    
+    /**
+     * Estimates the flight time of the given plan as a {@link FlightExecution} runs it: 
+     * a command the policy lets overlap the last issued one starts with it, any other waits for all the running ones
+     * @return the flight time, in milliseconds
+     */
+    public final long flightTime(DroneCommand[] droneCommands) {
+        long start = 0;
+        long end = 0;
+        DroneCommand last = null;
+        for (DroneCommand droneCommand : droneCommands) {
+            if (last != null && !overlapPolicy.canOverlap(last, droneCommand)) {
+                start = end;
+            }
+            end = Math.max(end, start + duration(droneCommand));
+            last = droneCommand;
+        }
+        return end;
+    }
+    
+    /**
+     * @return the journey consumed by the given plan, in cm, with the same accounting of the planning
+     */
+    public static final long journey(DroneCommand[] droneCommands, EnergyModel energyModel, long weight, IDroneData droneData) {
+        long journey = 0;
+        for (DroneCommand droneCommand : droneCommands) {
+            long distance = PlanWriter.ROTATE.equals(droneCommand.getName()) 
+                    ? VaporController.calculateRadialDistance(droneCommand.getSpeed(), droneCommand.getArgAsDouble()) 
+                    : droneCommand.getSpeed() * droneCommand.getArgAsLong() / 1000;
+            journey += energyModel.cost(droneCommand.getName(), droneCommand.getSpeed(), distance, weight, droneData);
+        }
+        return journey;
+    }
+    
+    /**
+     * @return how long the given command lasts, in milliseconds: rotations a millisecond per degree as the planning accounts them, anything else its argument
+     */
+    static long duration(DroneCommand droneCommand) {
+        return Math.abs(droneCommand.isDecimal() ? (long) droneCommand.getArgAsDouble() : droneCommand.getArgAsLong());
+    }
+    
+    /**
+     * @return the same rotation, by a positive angle: in [0, 360) degrees
+     */
+    static double positive(double degrees) {
+        double positive = degrees % 360;
+        if (positive < 0) {
+            positive += 360;
+        }
+        // A tiny negative rotation would wrap to 360 itself
+        return positive < 360 ? positive : 0;
+    }
+    
+    /**
+     * @return the same rotation, turning the shortest way: in (-180, 180] degrees
+     */
+    static double shortest(double degrees) {
+        double shortest = degrees % 360;
+        if (shortest > 180) {
+            shortest -= 360;
+        }
+        else if (shortest <= -180) {
+            shortest += 360;
+        }
+        return shortest;
+    }
+    
+    private static boolean isMove(DroneCommand droneCommand) {
+        return !droneCommand.isDecimal() && (PlanWriter.UP.equals(droneCommand.getName()) || PlanWriter.DOWN.equals(droneCommand.getName()) || PlanWriter.FORWARD.equals(droneCommand.getName()));
+    }
+}
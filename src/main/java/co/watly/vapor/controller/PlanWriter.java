@@ -0,0 +1,51 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+/**
+ * Receives the maneuvers computed from an {@link co.watly.vapor.data.Itinerary} and turns them into a flight plan.
+ * The same maneuvers can be written as DSL sentences or directly as Drone Commands
+ * @author Marco Vasapollo
+ *
+ * @param <T> the type of the written flight plan
+ */
+interface PlanWriter<T> {
+    
+    String UP = "up";
+    String DOWN = "down";
+    String FORWARD = "forward";
+    String ROTATE = "rotate";
+    
+    /**
+     * Starts a new flight plan for the given drone model
+     */
+    void begin(String modelName);
+    
+    /**
+     * Writes a linear maneuver (up, down, forward...)
+     * @param direction the maneuver name
+     * @param speed expressed in cm/sec
+     * @param duration expressed in milliseconds
+     */
+    void move(String direction, long speed, long duration);
+    
+    /**
+     * Writes a rotation maneuver
+     * @param speed expressed in cm/sec
+     * @param degrees the rotation angle
+     */
+    void rotate(long speed, double degrees);
+    
+    /**
+     * @return the completed flight plan
+     */
+    T finish();
+}
@@ -0,0 +1,30 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+/**
+ * How the {@link VaporController} turns an itinerary into Drone Commands
+ * @author Marco Vasapollo
+ *
+ */
+public enum PlanningMode {
+    
+    /**
+     * The itinerary is converted into a DSL instance, then the Vapor Generator extracts the commands from it.
+     * The DSL text can be audited
+     */
+    DSL,
+    
+    /**
+     * The itinerary is compiled straight into Drone Commands in process, skipping the DSL text round trip
+     */
+    COMPILED
+}
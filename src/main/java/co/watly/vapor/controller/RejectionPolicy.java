@@ -0,0 +1,32 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+/**
+ * What a {@link BoundedExecutor} does with a task when all its threads are busy and its queue is full.
+ * Tasks are never dropped silently, since a dropped task would leave its future pending forever
+ * @author Marco Vasapollo
+ *
+ */
+public enum RejectionPolicy {
+    
+    /**
+     * The task is refused with a {@link java.util.concurrent.RejectedExecutionException}, 
+     * the future that needed it fails at once. Sheds load, e.g. planning bursts
+     */
+    ABORT,
+    
+    /**
+     * The task runs on the submitting thread, slowing the submitter down to the pace of the pool.
+     * Nothing is ever refused, e.g. the issuing of commands to drones already flying
+     */
+    CALLER_RUNS
+}
@@ -0,0 +1,132 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.util.GeoPoints;
+
+/**
+ * Orders the waypoints of an itinerary. Unordered waypoints are sorted by nearest neighbor
+ * and then improved with 2-opt, keeping start and end fixed.
+ * Distances are computed once in a matrix through {@link GeoPoints}, so a few hundred stops are ordered in milliseconds
+ * @author Marco Vasapollo
+ *
+ */
+final class RoutePlanner {
+    
+    // Bounds the 2-opt passes, each one is quadratic in the number of stops
+    private static final int MAX_IMPROVEMENT_PASSES = 100;
+    
+    // Shorter improvements are rounding noise, in cm
+    private static final double MIN_IMPROVEMENT = 0.001;
+    
+    private RoutePlanner() {
+    }
+    
+    /**
+     * @return start, waypoints in flight order, end
+     */
+    static List<Coordinates> route(Itinerary itinerary) {
+        List<Coordinates> waypoints = itinerary.getWaypoints();
+        List<Coordinates> route = new ArrayList<>(waypoints.size() + 2);
+        route.add(itinerary.getStart());
+        if (itinerary.isOrderedWaypoints() || waypoints.size() < 2) {
+            route.addAll(waypoints);
+        }
+        else {
+            for (int stop : optimize(itinerary.getStart(), waypoints, itinerary.getEnd())) {
+                route.add(waypoints.get(stop));
+            }
+        }
+        route.add(itinerary.getEnd());
+        return route;
+    }
+    
+    /**
+     * @return the indexes of the stops, in the order that makes the route from start to end shorter
+     */
+    static int[] optimize(Coordinates start, List<Coordinates> stops, Coordinates end) {
+        final int n = stops.size();
+        // 0 is the start, 1..n the stops, n + 1 the end
+        List<Coordinates> points = new ArrayList<>(n + 2);
+        points.add(start);
+        points.addAll(stops);
+        points.add(end);
+        GeoPoints geoPoints = GeoPoints.of(points);
+        double[][] distances = new double[n + 2][n + 2];
+        for (int i = 0; i < distances.length; i++) {
+            geoPoints.distances(i, distances[i]);
+        }
+        
+        int[] tour = nearestNeighbor(distances, n);
+        improve(tour, distances);
+        
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = tour[i + 1] - 1;
+        }
+        return order;
+    }
+    
+    /**
+     * @return start, the stops taking each time the nearest not visited one, end
+     */
+    private static int[] nearestNeighbor(double[][] distances, int n) {
+        int[] tour = new int[n + 2];
+        boolean[] visited = new boolean[n + 2];
+        tour[n + 1] = n + 1;
+        int current = 0;
+        for (int position = 1; position <= n; position++) {
+            int nearest = -1;
+            for (int candidate = 1; candidate <= n; candidate++) {
+                if (!visited[candidate] && (nearest < 0 || distances[current][candidate] < distances[current][nearest])) {
+                    nearest = candidate;
+                }
+            }
+            visited[nearest] = true;
+            tour[position] = nearest;
+            current = nearest;
+        }
+        return tour;
+    }
+    
+    /**
+     * 2-opt: reverses the stretches of the tour that shorten it, until none does. Start and end never move
+     */
+    private static void improve(int[] tour, double[][] distances) {
+        final int last = tour.length - 2;
+        boolean improved = true;
+        for (int pass = 0; improved && pass < MAX_IMPROVEMENT_PASSES; pass++) {
+            improved = false;
+            for (int i = 1; i < last; i++) {
+                for (int j = i + 1; j <= last; j++) {
+                    double delta = distances[tour[i - 1]][tour[j]] + distances[tour[i]][tour[j + 1]] - distances[tour[i - 1]][tour[i]] - distances[tour[j]][tour[j + 1]];
+                    if (delta < -MIN_IMPROVEMENT) {
+                        reverse(tour, i, j);
+                        improved = true;
+                    }
+                }
+            }
+        }
+    }
+    
+    private static void reverse(int[] tour, int from, int to) {
+        while (from < to) {
+            int swap = tour[from];
+            tour[from++] = tour[to];
+            tour[to--] = swap;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import java.util.List;
+
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDroneData;
+
+/**
+ * The geometry of a route, whatever drone flies it: the climb, the rotation and length of every leg, the re-alignment and the descent.
+ * The planning writes it as maneuvers, the {@link FeasibilityScreen} prices it for many drones: both use the same accounting
+ * @author Marco Vasapollo
+ *
+ */
+final class RouteProfile {
+    
+    // Already flying: the climb is written only if there is something to climb
+    private final boolean airborne;
+    private final long climb;
+    // Rotation before each leg, 0 if none
+    private final double[] rotations;
+    private final long[] legs;
+    // Rotation back to north, 0 if none
+    private final double realignment;
+    private final long descent;
+    
+    /**
+     * @param route the route, starting from the current position of the drone
+     * @param heading the current heading of the drone
+     * @param climb the climb before the first leg, in cm
+     * @param airborne true if the drone is already flying
+     * @param flightHeight the cruise height
+     * @param endHeight the elevation from the sea level of the Arrive Point
+     */
+    RouteProfile(List<Coordinates> route, double heading, long climb, boolean airborne, long flightHeight, long endHeight) {
+        this.airborne = airborne;
+        this.climb = climb;
+        this.rotations = new double[route.size() - 1];
+        this.legs = new long[route.size() - 1];
+        for (int leg = 1; leg < route.size(); leg++) {
+            Coordinates from = route.get(leg - 1);
+            Coordinates to = route.get(leg);
+            
+            // Rotate to align - calculate the angle
+            double angle = VaporController.calculateAngle(from.getLatitude(), to.getLatitude(), from.getLongitude(), to.getLongitude());
+            double rotation = angle - heading;
+            if (rotation < 0) {
+                rotation += 360;
+            }
+            if (rotation > 0) {
+                rotations[leg - 1] = rotation;
+                heading = angle;
+            }
+            legs[leg - 1] = VaporController.calculateDistance(from.getLatitude(), to.getLatitude(), from.getLongitude(), to.getLongitude());
+        }
+        this.realignment = heading > 0 ? 360 - heading : 0;
+        this.descent = flightHeight - endHeight;
+    }
+    
+    /**
+     * @return the profile of the whole itinerary, from the take-off to the landing
+     * @throws FlightZoneLimitTrespassException if the itinerary goes beyond its flight zone
+     * @throws AirspaceTrespassException if the route crosses a restricted zone of the airspace
+     */
+    static RouteProfile of(Itinerary itinerary, Airspace airspace) {
+        long flightHeight = VaporController.calculateFlightHeight(itinerary);
+        List<Coordinates> route = RoutePlanner.route(itinerary);
+        VaporController.checkAirspace(airspace, route, flightHeight);
+        return new RouteProfile(route, 0, flightHeight - itinerary.getStart().getHeight(), false, flightHeight, itinerary.getEnd().getHeight());
+    }
+    
+    /**
+     * Writes the maneuvers of the route
+     * @param speeds min and max drone speed
+     */
+    void write(PlanWriter<?> planWriter, long[] speeds) {
+        if (!airborne || climb > 0) {
+            planWriter.move(PlanWriter.UP, speeds[0], VaporController.calculateDuration(speeds[0], climb));
+        }
+        for (int leg = 0; leg < legs.length; leg++) {
+            if (rotations[leg] > 0) {
+                planWriter.rotate(speeds[0], rotations[leg]);
+            }
+            // Go - at max speed, for as long as the leg takes at that speed
+            planWriter.move(PlanWriter.FORWARD, speeds[1], VaporController.calculateDuration(speeds[1], legs[leg]));
+        }
+        if (realignment > 0) {
+            planWriter.rotate(speeds[0], realignment);
+        }
+        planWriter.move(PlanWriter.DOWN, speeds[0], VaporController.calculateDuration(speeds[0], descent));
+    }
+    
+    /**
+     * @param speeds min and max drone speed
+     * @return the flight time of the route, the sum of the durations of its maneuvers in milliseconds
+     */
+    long duration(long[] speeds) {
+        long duration = VaporController.calculateDuration(speeds[0], climb);
+        for (int leg = 0; leg < legs.length; leg++) {
+            if (rotations[leg] > 0) {
+                duration += VaporController.calculateDuration(speeds[0], VaporController.calculateRadialDistance(speeds[0], rotations[leg]));
+            }
+            duration += VaporController.calculateDuration(speeds[1], legs[leg]);
+        }
+        if (realignment > 0) {
+            duration += VaporController.calculateDuration(speeds[0], VaporController.calculateRadialDistance(speeds[0], realignment));
+        }
+        return duration + VaporController.calculateDuration(speeds[0], descent);
+    }
+    
+    /**
+     * @param speeds min and max drone speed
+     * @param weight the carried weight, in hg
+     * @return the journey consumed by the maneuvers of the route, in cm
+     */
+    long energy(EnergyModel energyModel, long[] speeds, long weight, IDroneData droneData) {
+        return energy(energyModel, speeds, weight, droneData.getMaxWeightCapability(), droneData.getMaxReachableSpeed());
+    }
+    
+    long energy(EnergyModel energyModel, long[] speeds, long weight, long maxWeight, long maxSpeed) {
+        final double rotation = energyModel.kind(PlanWriter.ROTATE);
+        final double cruise = energyModel.kind(PlanWriter.FORWARD);
+        long energy = energyModel.cost(energyModel.kind(PlanWriter.UP), speeds[0], climb, weight, maxWeight, maxSpeed);
+        for (int leg = 0; leg < legs.length; leg++) {
+            if (rotations[leg] > 0) {
+                energy += energyModel.cost(rotation, speeds[0], VaporController.calculateRadialDistance(speeds[0], rotations[leg]), weight, maxWeight, maxSpeed);
+            }
+            energy += energyModel.cost(cruise, speeds[1], legs[leg], weight, maxWeight, maxSpeed);
+        }
+        if (realignment > 0) {
+            energy += energyModel.cost(rotation, speeds[0], VaporController.calculateRadialDistance(speeds[0], realignment), weight, maxWeight, maxSpeed);
+        }
+        return energy + energyModel.cost(energyModel.kind(PlanWriter.DOWN), speeds[0], descent, weight, maxWeight, maxSpeed);
+    }
+}
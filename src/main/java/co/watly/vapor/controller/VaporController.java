@@ -13,19 +13,41 @@ package co.watly.vapor.controller;
 import static com.ea.async.Async.await;
 import static java.util.concurrent.CompletableFuture.completedFuture;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import co.watly.Vapor;
+import co.watly.vapor.data.AirspaceZone;
+import co.watly.vapor.data.Coordinates;
 import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.FlightState;
 import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.data.PlanResult;
+import co.watly.vapor.journal.FlightJournal;
 import co.watly.vapor.model.IDrone;
 import co.watly.vapor.model.IDroneData;
-import co.watly.vapor.util.DroneCommandMapper;
+import co.watly.vapor.telemetry.Event;
+import co.watly.vapor.telemetry.Measure;
+import co.watly.vapor.telemetry.Phase;
+import co.watly.vapor.telemetry.Telemetry;
+import co.watly.vapor.util.Futures;
 import co.watly.vapor.util.Helper;
+import co.watly.vapor.util.JSON;
+import co.watly.vapor.util.JsonArrayStream;
+import co.watly.vapor.util.VirtualThreads;
 
 /**
  * The Main Vapor Controller
@@ -38,8 +60,6 @@ import co.watly.vapor.util.Helper;
  */
 public class VaporController {
     
-    private static final DateFormat DATE_FORMAT = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-    
     // The minimum speed percentage the Drone can reach with its load
     private static final double DEFAULT_MIN_DRONE_SPEED_PERCENTAGE = 0.3;
     
@@ -49,47 +69,428 @@ public class VaporController {
     // Percentage to raise the drone from the ground to carry out the maneuvers useful at the start
     private static final double FLIGHT_HEIGHT_DECRISING_PERCENTAGE = 0.3;
     
+    // How long setup and fly wait for Drone data, in milliseconds
+    private static final long DEFAULT_READINESS_TIMEOUT = 30000;
+    
     private final IDrone drone;
-    private IDroneData droneData;
+    private final ExecutionMode executionMode;
+    private final ExecutionContext executionContext;
+    private volatile IDroneData droneData;
+    // Replaced by a new one when a refresh fails before any data arrived, guarded by refreshLock as the sequences
+    private volatile CompletableFuture<IDroneData> droneDataReady = new CompletableFuture<>();
+    private final Object refreshLock = new Object();
+    private long requestedRefresh;
+    private long appliedRefresh;
+    private volatile long readinessTimeout = DEFAULT_READINESS_TIMEOUT;
+    private long commandTimeout;
     private DroneCommand[] droneCommands;
+    private PlanningMode planningMode = PlanningMode.DSL;
+    private OverlapPolicy overlapPolicy = OverlapPolicy.SEQUENTIAL;
+    private PlanOptimizer planOptimizer;
+    private PlanCache planCache;
+    private Airspace airspace;
+    private EnergyModel energyModel = EnergyModel.DISTANCE;
+    private Telemetry telemetry = Telemetry.NONE;
+    private FlightJournal journal;
+    private volatile FlightExecution currentFlight;
     
     //First thing the Controller does in constructor is to retrieve Drone data used for computation
     public VaporController(IDrone drone) {
-        (this.drone = drone).getData().thenAcceptAsync(this::setDroneData);
+        this(drone, ExecutionMode.ASYNC);
+    }
+    
+    /**
+     * @param executionMode how setup and fly are run, {@link ExecutionMode#VIRTUAL_THREADS} needs Java 21+
+     */
+    public VaporController(IDrone drone, ExecutionMode executionMode) {
+        this(drone, executionMode, ExecutionContext.COMMON);
+    }
+    
+    /**
+     * @param executionMode how setup and fly are run, {@link ExecutionMode#VIRTUAL_THREADS} needs Java 21+
+     * @param executionContext where the planning and the drone side work run, usually shared by all the controllers of the service
+     */
+    public VaporController(IDrone drone, ExecutionMode executionMode, ExecutionContext executionContext) {
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            // Fail fast on older JVMs
+            VirtualThreads.executor();
+        }
+        this.executionMode = executionMode;
+        this.executionContext = executionContext;
+        this.drone = drone;
+        refreshDroneData();
     }
     
     public final IDrone getDrone() {
         return drone;
     }
     
+    public final ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+    
+    public final ExecutionContext getExecutionContext() {
+        return executionContext;
+    }
+    
     public final IDroneData getDroneData() {
         return droneData;
     }
     
-    private final void setDroneData(IDroneData droneData) {
-        this.droneData = droneData;
+    /**
+     * @return true once the Drone data arrived
+     */
+    public final boolean isReady() {
+        return droneData != null;
+    }
+    
+    /**
+     * @return a future completed with the first Drone data, as soon as it arrives.
+     * It fails if a refresh fails before any data arrived, a later call then returns a new future, completed by the next successful refresh
+     */
+    public final CompletableFuture<IDroneData> whenReady() {
+        return droneDataReady;
+    }
+    
+    /**
+     * Asks the drone for fresh data (e.g. the journey left with the current battery charge).
+     * The current data keeps being used until the new one arrives, so a long-lived controller never needs to be rebuilt.
+     * The new data is handled on the drone executor of the {@link ExecutionContext}, if any, 
+     * so that whatever waits for it does not run on the threads of the drone.
+     * Data arriving after the data of a later refresh is not used
+     * @return a future completed with the new Drone data
+     */
+    public final CompletableFuture<IDroneData> refreshDroneData() {
+        final long refresh;
+        synchronized (refreshLock) {
+            refresh = ++requestedRefresh;
+        }
+        final Executor droneExecutor = executionContext.getDroneExecutor();
+        CompletableFuture<IDroneData> refreshed = droneExecutor == null ? drone.getData().thenApply(data -> refreshed(data, refresh)) 
+                : drone.getData().thenApplyAsync(data -> refreshed(data, refresh), droneExecutor);
+        refreshed.whenComplete((data, error) -> {
+            if (error != null) {
+                refreshFailed(error instanceof CompletionException ? error.getCause() : error);
+            }
+        });
+        return refreshed;
+    }
+    
+    private final IDroneData refreshed(IDroneData data, long refresh) {
+        final CompletableFuture<IDroneData> ready;
+        synchronized (refreshLock) {
+            if (refresh <= appliedRefresh) {
+                return data;
+            }
+            appliedRefresh = refresh;
+            droneData = data;
+            ready = droneDataReady;
+        }
+        // Once the data is set the future is never replaced, its dependents run out of the lock
+        ready.complete(data);
+        return data;
+    }
+    
+    /**
+     * Fails whoever waits for the first Drone data, and lets the next refresh make the controller ready
+     */
+    private final void refreshFailed(Throwable error) {
+        final CompletableFuture<IDroneData> failed;
+        synchronized (refreshLock) {
+            if (droneData != null) {
+                return;
+            }
+            failed = droneDataReady;
+            droneDataReady = new CompletableFuture<>();
+        }
+        failed.completeExceptionally(error);
+    }
+    
+    public final long getReadinessTimeout() {
+        return readinessTimeout;
+    }
+    
+    /**
+     * Sets how long setup, plan and fly wait for the Drone data before failing, 30 seconds by default
+     */
+    public final void setReadinessTimeout(long timeout, TimeUnit unit) {
+        this.readinessTimeout = unit.toMillis(timeout);
+    }
+    
+    /**
+     * @return the Drone data, as soon as it arrives or fails with a {@link TimeoutException} after the readiness timeout
+     */
+    private final CompletableFuture<IDroneData> ready() {
+        return Futures.within(droneDataReady, readinessTimeout, TimeUnit.MILLISECONDS, () -> new TimeoutException(Helper.stringFormat("Drone data did not arrive within {0} ms", readinessTimeout)));
+    }
+    
+    public final long getCommandTimeout() {
+        return commandTimeout;
+    }
+    
+    /**
+     * Sets how long each command may run before the flight is aborted and the drone landed, 0 (the default) for no limit
+     */
+    public final void setCommandTimeout(long timeout, TimeUnit unit) {
+        this.commandTimeout = unit.toMillis(timeout);
+    }
+    
+    public final DroneCommand[] getDroneCommands() {
+        return droneCommands;
+    }
+    
+    /**
+     * Sets the flight plan computed elsewhere, e.g. through {@link #plan(Itinerary, Executor)}
+     */
+    public final void setDroneCommands(DroneCommand[] droneCommands) {
+        this.droneCommands = droneCommands;
+    }
+    
+    public final PlanningMode getPlanningMode() {
+        return planningMode;
+    }
+    
+    public final void setPlanningMode(PlanningMode planningMode) {
+        this.planningMode = planningMode;
+    }
+    
+    public final PlanCache getPlanCache() {
+        return planCache;
     }
+    
+    /**
+     * Sets the cache of compiled plans, possibly shared with other controllers. null disables caching
+     */
+    public final void setPlanCache(PlanCache planCache) {
+        this.planCache = planCache;
+    }
+    
+    public final Airspace getAirspace() {
+        return airspace;
+    }
+    
+    /**
+     * Sets the airspace every planned leg is checked against, null disables the check.
+     * Plans already cached are not checked again, so a cache should not be shared across different airspaces
+     */
+    public final void setAirspace(Airspace airspace) {
+        this.airspace = airspace;
+    }
+    
     /**
-     * The fly command. Can be called once drone data and commands are set
+     * Checks a whole planning wave against the flight zone limits and the {@link Airspace}, in parallel, 
+     * without building any plan
+     * @param wave the itineraries to check
+     * @return for each itinerary, in the same order, the error its planning would raise or null if it is clear
+     */
+    public final List<RuntimeException> validateAirspace(List<Itinerary> wave) {
+        final Airspace space = airspace;
+        return wave.parallelStream().map(itinerary -> {
+            try {
+                checkAirspace(space, RoutePlanner.route(itinerary), calculateFlightHeight(itinerary));
+                return null;
+            }
+            catch (FlightZoneLimitTrespassException | AirspaceTrespassException e) {
+                return e;
+            }
+        }).collect(Collectors.toList());
+    }
+    
+    static final void checkAirspace(Airspace airspace, List<Coordinates> route, long flightHeight) {
+        if (airspace != null) {
+            AirspaceZone zone = airspace.findViolation(route, flightHeight);
+            if (zone != null) {
+                throw new AirspaceTrespassException(zone, flightHeight);
+            }
+        }
+    }
+    
+    public final EnergyModel getEnergyModel() {
+        return energyModel;
+    }
+    
+    /**
+     * Sets how the maneuvers consume the autonomy of the drone, {@link EnergyModel#DISTANCE} by default
+     */
+    public final void setEnergyModel(EnergyModel energyModel) {
+        this.energyModel = energyModel == null ? EnergyModel.DISTANCE : energyModel;
+    }
+    
+    public final Telemetry getTelemetry() {
+        return telemetry;
+    }
+    
+    /**
+     * Sets where timings, counters and trace events go, {@link Telemetry#NONE} by default.
+     * Use a {@link co.watly.vapor.telemetry.ConsoleTelemetry} to print the planning steps as earlier versions did
+     */
+    public final void setTelemetry(Telemetry telemetry) {
+        this.telemetry = telemetry == null ? Telemetry.NONE : telemetry;
+    }
+    
+    public final FlightJournal getJournal() {
+        return journal;
+    }
+    
+    /**
+     * Sets the journal recording every command sent to the drone, possibly shared with other controllers. 
+     * null records nothing
+     */
+    public final void setJournal(FlightJournal journal) {
+        this.journal = journal;
+    }
+    
+    public final OverlapPolicy getOverlapPolicy() {
+        return overlapPolicy;
+    }
+    
+    /**
+     * Sets which commands the drone model can execute in overlap, {@link OverlapPolicy#SEQUENTIAL} by default
+     */
+    public final void setOverlapPolicy(OverlapPolicy overlapPolicy) {
+        this.overlapPolicy = overlapPolicy;
+    }
+    
+    public final PlanOptimizer getPlanOptimizer() {
+        return planOptimizer;
+    }
+    
+    /**
+     * Sets the optimization pass run on every compiled, generated or re-planned plan, null to fly the plans as planned.
+     * Plans are cached once optimized, so controllers sharing a {@link PlanCache} should share the optimizer too
+     */
+    public final void setPlanOptimizer(PlanOptimizer planOptimizer) {
+        this.planOptimizer = planOptimizer;
+    }
+    
+    /**
+     * The fly command. Can be called once drone data and commands are set.
+     * Commands are pipelined through a {@link FlightExecution}, see {@link #getCurrentFlight()}.
+     * Cancelling the returned future aborts the flight, see {@link FlightExecution#abort()}
+     * @return a future completed when the drone landed, or failed with the first command error
      */
     public final CompletableFuture<Void> fly() {
         if (droneData == null) {
-            throw new RuntimeException("Please, wait for Drone data to arrive");
+            return flyWhenReady(this::fly);
         }
         if (droneCommands == null || droneCommands.length == 0) {
             throw new RuntimeException("Please, set itinerary before to start flight");
         }
-        System.out.println("Fly command fired, executing drone commands:\n\t" + Arrays.toString(droneCommands) + "\n");
-        try {
-            for (DroneCommand droneCommand : droneCommands) {
-                await(DroneCommandMapper.invoke(droneCommand.getName(), droneCommand.getSpeed(), droneCommand.getArg(), drone));
+        event(Event.FLIGHT_STARTED, droneCommands);
+        return fly(Arrays.asList(droneCommands).iterator());
+    }
+    
+    /**
+     * The fly command for plans streamed by the Vapor Generator or read from storage.
+     * Each command is decoded while the previous one is running, 
+     * so the first maneuver starts before the rest of the plan has been decoded.
+     * The given reader is closed at the end of the flight. Cancelling the returned future aborts the flight
+     * @param plan a JSON array of Drone Commands
+     * @return a future completed when the drone landed, or failed with the first command error
+     */
+    public final CompletableFuture<Void> fly(Reader plan) {
+        if (droneData == null) {
+            return flyWhenReady(() -> fly(plan));
+        }
+        event(Event.STREAMED_FLIGHT_STARTED);
+        JsonArrayStream<DroneCommand> streamedCommands = JSON.stream(plan, DroneCommand.class);
+        CompletableFuture<Void> result = fly(streamedCommands);
+        result.whenComplete((v, e) -> {
+            try {
+                streamedCommands.close();
+            }
+            catch (IOException closeError) {
+                // The plan has already been consumed
             }
-            System.out.println("All commands executed successfully! Drone landed to the end destination");
+        });
+        return result;
+    }
+    
+    /**
+     * Starts the given flight as soon as the Drone data arrives, unless the returned future is cancelled before
+     */
+    private final CompletableFuture<Void> flyWhenReady(Supplier<CompletableFuture<Void>> flight) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        ready().whenComplete((data, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (result.isDone()) {
+                return;
+            }
+            final CompletableFuture<Void> flying;
+            try {
+                flying = flight.get();
+            }
+            catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            flying.whenComplete((v, e) -> {
+                if (e == null) {
+                    result.complete(null);
+                }
+                else {
+                    result.completeExceptionally(e);
+                }
+            });
+            result.whenComplete((v, e) -> {
+                if (result.isCancelled()) {
+                    flying.cancel(false);
+                }
+            });
+        });
+        return result;
+    }
+    
+    private final CompletableFuture<Void> fly(Iterator<DroneCommand> commands) {
+        final Telemetry telemetry = this.telemetry;
+        final long startedAt = telemetry.isEnabled() ? System.nanoTime() : 0;
+        FlightExecution flight = new FlightExecution(drone, commands, overlapPolicy, telemetry, journal, commandTimeout, executionContext.getDroneExecutor());
+        currentFlight = flight;
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            VirtualThreads.executor().execute(flight::run);
         }
-        catch (Exception e) {
-            e.printStackTrace();
+        else {
+            flight.start();
         }
-        return completedFuture(null);
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        flight.getCompletion().whenComplete((v, error) -> {
+            if (telemetry.isEnabled()) {
+                telemetry.record(Phase.FLIGHT, System.nanoTime() - startedAt);
+            }
+            if (error == null) {
+                event(Event.FLIGHT_COMPLETED);
+                result.complete(null);
+            }
+            else {
+                event(error instanceof FlightAbortedException ? Event.FLIGHT_ABORTED : Event.FLIGHT_FAILED, error);
+                result.completeExceptionally(error);
+            }
+        });
+        result.whenComplete((v, error) -> {
+            if (result.isCancelled()) {
+                flight.abort();
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Aborts the current flight, if any, landing the drone at once. See {@link FlightExecution#abort()}
+     * @return a future completed when the landing maneuver completed
+     */
+    public final CompletableFuture<Void> abort() {
+        FlightExecution flight = currentFlight;
+        return flight == null ? completedFuture(null) : flight.abort();
+    }
+    
+    /**
+     * @return the last started flight, useful to inspect its progress and per-step latencies
+     */
+    public final FlightExecution getCurrentFlight() {
+        return currentFlight;
     }
     
     /**
@@ -98,15 +499,219 @@ public class VaporController {
      * @param itinerary Contains coordinates of Start and End and other properties useful for calculations
      */
     public final CompletableFuture<Void> setup(Itinerary itinerary) {
-        System.out.println("New Itinerary to elaborate:\n\t" + itinerary + "\n");
-        String dsl = await(CompletableFuture.supplyAsync(() -> convert(itinerary)));
-        System.out.println("DSL generated from Itinerary:\n\t" + dsl + "\n");
-        String dslOutput = await(Vapor.generate(dsl));
-        System.out.println("Drone Commands generated from the DSL:\n\t" + dslOutput + "\n");
-        droneCommands = DroneCommand.fromJSON(dslOutput);
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            return CompletableFuture.runAsync(() -> setupBlocking(itinerary), VirtualThreads.executor());
+        }
+        await(ready());
+        event(Event.ITINERARY_RECEIVED, itinerary);
+        if (planCache != null) {
+            droneCommands = await(plan(itinerary, executionContext.getPlanningExecutor()));
+            return completedFuture(null);
+        }
+        droneCommands = await(planUncached(itinerary, executionContext.getPlanningExecutor()));
         return completedFuture(null);
     }
     
+    /**
+     * Blocking version of {@link #setup(Itinerary)}, run on a virtual thread.
+     * The planning itself still runs on the planning executor of the {@link ExecutionContext}, within its bounds
+     */
+    private final void setupBlocking(Itinerary itinerary) {
+        ready().join();
+        event(Event.ITINERARY_RECEIVED, itinerary);
+        droneCommands = plan(itinerary, executionContext.getPlanningExecutor()).join();
+    }
+    
+    /**
+     * Extract the maneuver commands sequence for the drone from the given itinerary, on the planning executor 
+     * of the {@link ExecutionContext}, without setting them as the current flight plan. See {@link #plan(Itinerary, Executor)}
+     * @param itinerary Contains coordinates of Start and End and other properties useful for calculations
+     * @return the drone commands generated from the itinerary
+     */
+    public final CompletableFuture<DroneCommand[]> plan(Itinerary itinerary) {
+        return plan(itinerary, executionContext.getPlanningExecutor());
+    }
+    
+    /**
+     * Extract the maneuver commands sequence for the drone from the given itinerary,
+     * without setting them as the current flight plan.
+     * If a {@link PlanCache} is set, the plan is taken from it when possible
+     * @param itinerary Contains coordinates of Start and End and other properties useful for calculations
+     * @param executor the executor that runs the DSL conversion
+     * @return the drone commands generated from the itinerary
+     */
+    public final CompletableFuture<DroneCommand[]> plan(Itinerary itinerary, Executor executor) {
+        if (droneData == null) {
+            return ready().thenCompose(data -> plan(itinerary, executor));
+        }
+        PlanCache cache = planCache;
+        if (cache != null) {
+            return cache.get(itinerary, droneData, energyModel, planningMode, normalized -> planUncached(normalized, executor));
+        }
+        return planUncached(itinerary, executor);
+    }
+    
+    private final CompletableFuture<DroneCommand[]> planUncached(Itinerary itinerary, Executor executor) {
+        CompletableFuture<DroneCommand[]> planned;
+        try {
+            if (planningMode == PlanningMode.COMPILED) {
+                planned = CompletableFuture.supplyAsync(() -> compile(itinerary), executor);
+            }
+            else {
+                planned = CompletableFuture.supplyAsync(() -> convert(itinerary), executor).thenCompose(this::generate).thenApply(dslOutput -> optimize(decode(dslOutput), itinerary.getWeight()));
+            }
+        }
+        catch (RejectedExecutionException e) {
+            // A saturated executor fails the planning instead of the caller
+            planned = Futures.failed(e);
+        }
+        return planned.whenComplete((droneCommands, error) -> {
+            if (error != null) {
+                event(Event.PLAN_FAILED, error instanceof CompletionException ? error.getCause() : error);
+            }
+        });
+    }
+    
+    /**
+     * Generates the Drone Commands of the given DSL through the Vapor Generator, timing it
+     */
+    private final CompletableFuture<String> generate(String dsl) {
+        final Telemetry telemetry = this.telemetry;
+        if (!telemetry.isEnabled()) {
+            return Vapor.generate(dsl);
+        }
+        final long start = System.nanoTime();
+        return Vapor.generate(dsl).whenComplete((dslOutput, error) -> telemetry.record(Phase.GENERATE, System.nanoTime() - start));
+    }
+    
+    /**
+     * Decodes the Drone Commands generated from the DSL, timing it
+     */
+    private final DroneCommand[] decode(String dslOutput) {
+        final Telemetry telemetry = this.telemetry;
+        final long start = telemetry.isEnabled() ? System.nanoTime() : 0;
+        DroneCommand[] decoded = DroneCommand.fromJSON(dslOutput);
+        if (telemetry.isEnabled()) {
+            telemetry.record(Phase.DECODE, System.nanoTime() - start);
+        }
+        event(Event.COMMANDS_GENERATED, dslOutput);
+        return decoded;
+    }
+    
+    /**
+     * Runs the plan optimizer, if any, measuring the flight time, journey and commands it saved
+     * @param weight the carried weight, in hg
+     */
+    private final DroneCommand[] optimize(DroneCommand[] droneCommands, long weight) {
+        final PlanOptimizer planOptimizer = this.planOptimizer;
+        if (planOptimizer == null) {
+            return droneCommands;
+        }
+        final Telemetry telemetry = this.telemetry;
+        if (!telemetry.isEnabled() && !telemetry.isTracing()) {
+            return planOptimizer.optimize(droneCommands);
+        }
+        final long start = System.nanoTime();
+        DroneCommand[] optimized = planOptimizer.optimize(droneCommands);
+        final long elapsed = System.nanoTime() - start;
+        long flightTimeSaved = planOptimizer.flightTime(droneCommands) - planOptimizer.flightTime(optimized);
+        long journeySaved = PlanOptimizer.journey(droneCommands, energyModel, weight, droneData) - PlanOptimizer.journey(optimized, energyModel, weight, droneData);
+        if (telemetry.isEnabled()) {
+            telemetry.record(Phase.OPTIMIZE, elapsed);
+            telemetry.measure(Measure.FLIGHT_TIME_SAVED, flightTimeSaved);
+            telemetry.measure(Measure.JOURNEY_SAVED, journeySaved);
+            telemetry.measure(Measure.COMMANDS_SAVED, droneCommands.length - optimized.length);
+        }
+        if (telemetry.isTracing()) {
+            telemetry.trace(Event.PLAN_OPTIMIZED, droneCommands.length, optimized.length, flightTimeSaved, journeySaved);
+        }
+        else {
+            telemetry.count(Event.PLAN_OPTIMIZED);
+        }
+        return optimized;
+    }
+    
+    /**
+     * Counts the given event, tracing it if the telemetry is tracing
+     */
+    private final void event(Event event) {
+        final Telemetry telemetry = this.telemetry;
+        if (telemetry.isTracing()) {
+            telemetry.trace(event);
+        }
+        else {
+            telemetry.count(event);
+        }
+    }
+    
+    /**
+     * Counts the given event, passing its detail only to tracing telemetries
+     */
+    private final void event(Event event, Object detail) {
+        final Telemetry telemetry = this.telemetry;
+        if (telemetry.isTracing()) {
+            telemetry.trace(event, detail);
+        }
+        else {
+            telemetry.count(event);
+        }
+    }
+    
+    /**
+     * Plans a whole wave of itineraries, one {@link PlanResult} per itinerary, in the same order.
+     * At most maxParallelism itineraries are converted and generated at the same time:
+     * a new one is started only when a previous one is completed.
+     * A failing itinerary does not fail the whole batch, its error is kept in its own result
+     * 
+     * @param itineraries the itineraries to plan
+     * @param executor the executor that runs DSL conversions
+     * @param maxParallelism max number of itineraries planned at the same time
+     * @return the plan results, in the same order of the given itineraries
+     */
+    public final CompletableFuture<List<PlanResult>> plan(Collection<Itinerary> itineraries, Executor executor, int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("Max parallelism must be at least 1, got " + maxParallelism);
+        }
+        final Itinerary[] wave = itineraries.toArray(new Itinerary[itineraries.size()]);
+        final PlanResult[] results = new PlanResult[wave.length];
+        final AtomicInteger cursor = new AtomicInteger();
+        final CompletableFuture<?>[] lanes = new CompletableFuture<?>[Math.min(maxParallelism, wave.length)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = planNext(wave, results, cursor, executor);
+        }
+        return CompletableFuture.allOf(lanes).thenApply(v -> Arrays.asList(results));
+    }
+    
+    /**
+     * Plans the next itineraries of the wave not yet taken by any lane, one after the other.
+     * The lane goes on from the thread completing each planning, never through the executor: 
+     * a saturated executor fails the plannings it refuses, each in its own result, not the lane
+     */
+    private final CompletableFuture<Void> planNext(Itinerary[] wave, PlanResult[] results, AtomicInteger cursor, Executor executor) {
+        while (true) {
+            final int index = cursor.getAndIncrement();
+            if (index >= wave.length) {
+                return completedFuture(null);
+            }
+            final Itinerary itinerary = wave[index];
+            CompletableFuture<DroneCommand[]> planned;
+            try {
+                planned = plan(itinerary, executor);
+            }
+            catch (Exception e) {
+                planned = Futures.failed(e);
+            }
+            CompletableFuture<Void> recorded = planned.handle((commands, error) -> {
+                results[index] = new PlanResult(itinerary, commands, error instanceof CompletionException ? error.getCause() : error);
+                return (Void) null;
+            });
+            // Plannings completed at once (cache hits, refusals) are looped over rather than nested, so the stack stays flat
+            if (!recorded.isDone()) {
+                return recorded.thenCompose(v -> planNext(wave, results, cursor, executor));
+            }
+        }
+    }
+    
     /**
      * Converts the given itinerary into DSL sentences
      * 
@@ -114,79 +719,222 @@ public class VaporController {
      *            the given itineray
      * @return the itinerary, converted into DSL instance
      */
-    private final String convert(Itinerary itinerary) {
-        final StringBuilder dslBuilder = new StringBuilder();
+    public final String convert(Itinerary itinerary) {
+        if (droneData == null) {
+            throw new IllegalStateException("Please, wait for Drone data to arrive, see whenReady()");
+        }
+        final Telemetry telemetry = this.telemetry;
+        final long start = telemetry.isEnabled() ? System.nanoTime() : 0;
+        String dsl = compose(itinerary, droneData, new DslPlanWriter());
+        if (telemetry.isEnabled()) {
+            telemetry.record(Phase.CONVERT, System.nanoTime() - start);
+        }
+        event(Event.DSL_CONVERTED, dsl);
+        return dsl;
+    }
+    
+    /**
+     * Compiles the given itinerary straight into Drone Commands, without passing through the DSL and the Vapor Generator.
+     * The result carries the same values of the DSL path
+     * 
+     * @param itinerary
+     *            the given itineray
+     * @return the Drone Commands of the itinerary
+     */
+    public final DroneCommand[] compile(Itinerary itinerary) {
+        if (droneData == null) {
+            throw new IllegalStateException("Please, wait for Drone data to arrive, see whenReady()");
+        }
+        final Telemetry telemetry = this.telemetry;
+        final long start = telemetry.isEnabled() ? System.nanoTime() : 0;
+        DroneCommand[] droneCommands = compose(itinerary, droneData, new CommandPlanWriter());
+        if (telemetry.isEnabled()) {
+            telemetry.record(Phase.COMPILE, System.nanoTime() - start);
+        }
+        event(Event.COMMANDS_COMPILED, droneCommands);
+        return optimize(droneCommands, itinerary.getWeight());
+    }
+    
+    /**
+     * Derives where the drone is after having completed the first commands of the plan of the given itinerary
+     * 
+     * @param itinerary
+     *            the itinerary the plan was compiled or generated from
+     * @param droneCommands
+     *            the plan of the itinerary
+     * @param completedSteps
+     *            the number of commands completed successfully so far, see {@link FlightExecution#getCompletedSteps()}
+     * @return the state of the flight, at the end of the last completed command
+     * @throws IllegalArgumentException
+     *             if the drone is not airborne or the plan does not belong to the itinerary
+     */
+    public final FlightState progress(Itinerary itinerary, DroneCommand[] droneCommands, int completedSteps) {
+        if (droneData == null) {
+            throw new IllegalStateException("Please, wait for Drone data to arrive, see whenReady()");
+        }
+        if (completedSteps < 1 || completedSteps >= droneCommands.length) {
+            throw new IllegalArgumentException(Helper.stringFormat("The drone is not airborne after {0} of {1} commands", completedSteps, droneCommands.length));
+        }
+        long[] speeds = calculateSpeeds(itinerary.getWeight(), droneData);
+        long flightHeight = calculateFlightHeight(itinerary);
+        List<Coordinates> route = RoutePlanner.route(itinerary);
         
-        // DSL Header
-        dslBuilder.append("scheduled vapor flight {").append("\n\t")
-                // Mockup data
-                .append(Helper.stringFormat("date: {0},", DATE_FORMAT.format(new Date(System.currentTimeMillis() + 10000000)))).append("\n\t").append(Helper.stringFormat("model: \"{0}\",", droneData.getModelName())).append("\n\t")
-                // Mockup data
-                .append(Helper.stringFormat("cost: {0} drops,", 100)).append("\n\t").append("commands: [").append("\n\t\t");
+        // Same accounting of compose, so that the rest of the autonomy matches the one of the plan
+        final EnergyModel energyModel = this.energyModel;
+        long climb = flightHeight - itinerary.getStart().getHeight();
+        long journey = energyModel.cost(PlanWriter.UP, speeds[0], climb, itinerary.getWeight(), droneData);
+        // An optimized plan may rotate before the climb, or have no climb at all if there is nothing to climb
+        boolean climbed = climb == 0;
+        double heading = 0;
+        int leg = 0;
+        for (int step = 0; step < completedSteps; step++) {
+            DroneCommand droneCommand = droneCommands[step];
+            if (PlanWriter.UP.equals(droneCommand.getName()) && leg == 0) {
+                climbed = true;
+            }
+            else if (PlanWriter.ROTATE.equals(droneCommand.getName())) {
+                journey += energyModel.cost(PlanWriter.ROTATE, speeds[0], calculateRadialDistance(speeds[0], droneCommand.getArgAsDouble()), itinerary.getWeight(), droneData);
+                if (leg + 1 < route.size()) {
+                    // Aligned to the next leg, the same angle of compose rather than the sum of the rotations
+                    Coordinates from = route.get(leg);
+                    Coordinates to = route.get(leg + 1);
+                    heading = calculateAngle(from.getLatitude(), to.getLatitude(), from.getLongitude(), to.getLongitude());
+                }
+                else {
+                    // Re-aligned to north
+                    heading = 0;
+                }
+            }
+            else if (PlanWriter.FORWARD.equals(droneCommand.getName()) && leg + 1 < route.size()) {
+                // Once optimized, a forward can cover many aligned legs: it covers the next legs while it still flies at least half of them
+                long covered = droneCommand.getSpeed() * droneCommand.getArgAsLong() / 1000;
+                do {
+                    leg++;
+                    long distance = legDistance(route, leg);
+                    journey += energyModel.cost(PlanWriter.FORWARD, speeds[1], distance, itinerary.getWeight(), droneData);
+                    covered -= distance;
+                }
+                while (leg + 1 < route.size() && covered > legDistance(route, leg + 1) / 2);
+            }
+            else {
+                throw new IllegalArgumentException(Helper.stringFormat("Command {0} ({1}) is not a cruise maneuver of the itinerary", step, droneCommand.getName()));
+            }
+        }
+        if (!climbed) {
+            throw new IllegalArgumentException(Helper.stringFormat("The drone is not airborne after {0} of {1} commands", completedSteps, droneCommands.length));
+        }
+        Coordinates position = route.get(leg);
+        return new FlightState(new Coordinates(position.getLatitude(), position.getLongitude(), flightHeight), heading, journey, itinerary.getMaxHeight(), itinerary.getWeight());
+    }
+    
+    /**
+     * @return the length of the given leg of the route, ending at the given index
+     */
+    private static final long legDistance(List<Coordinates> route, int leg) {
+        Coordinates from = route.get(leg - 1);
+        Coordinates to = route.get(leg);
+        return calculateDistance(from.getLatitude(), to.getLatitude(), from.getLongitude(), to.getLongitude());
+    }
+    
+    /**
+     * Re-plans the rest of a flight from the current state of the drone, e.g. when the destination changes while flying.
+     * The cruise height and the remaining autonomy are kept and only the maneuvers still to do are emitted:
+     * no take-off, a climb only if the new waypoints need it, the new legs and the landing
+     * 
+     * @param flightState
+     *            where the drone is, see {@link #progress(Itinerary, DroneCommand[], int)}
+     * @param waypoints
+     *            the waypoints still to visit, if any
+     * @param orderedWaypoints
+     *            false to visit the waypoints in the order that minimizes the route
+     * @param end
+     *            the new destination
+     * @return the Drone Commands that complete the flight
+     */
+    public final DroneCommand[] replan(FlightState flightState, List<Coordinates> waypoints, boolean orderedWaypoints, Coordinates end) {
+        if (droneData == null) {
+            throw new IllegalStateException("Please, wait for Drone data to arrive, see whenReady()");
+        }
+        final Telemetry telemetry = this.telemetry;
+        final long start = telemetry.isEnabled() ? System.nanoTime() : 0;
+        final IDroneData droneData = this.droneData;
+        Itinerary itinerary = new Itinerary(flightState.getPosition(), waypoints, orderedWaypoints, end, flightState.getMaxHeight(), flightState.getWeight());
         
-        // Useful to determine if the drone has the necessary autonomy to complete the itinerary
-        long totalRoute = 0;
+        PlanWriter<DroneCommand[]> planWriter = new CommandPlanWriter();
+        planWriter.begin(droneData.getModelName());
         
-        // Min and Max drone speed
-        long[] speeds = calculateSpeeds(itinerary.getWeight());
+        long[] speeds = calculateSpeeds(itinerary.getWeight(), droneData);
         
-        // Flight height
-        long flightHeight = calculateFlightHeight(itinerary.getStart().getHeight(), itinerary.getEnd().getHeight(), itinerary.getMaxHeight());
+        long cruiseHeight = flightState.getPosition().getHeight();
+        long flightHeight = calculateFlightHeight(itinerary, cruiseHeight);
         
-        System.out.println(Helper.stringFormat("Drone flight height will be {0} cm from the sea level", flightHeight));
+        List<Coordinates> route = RoutePlanner.route(itinerary);
         
-        long currentStepDistance = flightHeight - itinerary.getStart().getHeight();
+        checkAirspace(airspace, route, flightHeight);
         
-        totalRoute += currentStepDistance;
+        RouteProfile profile = new RouteProfile(route, flightState.getHeading(), flightHeight - cruiseHeight, true, flightHeight, end.getHeight());
+        long totalRoute = profile.energy(energyModel, speeds, itinerary.getWeight(), droneData);
         
-        long currentStepDuration = calculateDuration(speeds[0], currentStepDistance);
+        long autonomy = droneData.getTotalJourney() - flightState.getJourney();
+        if (totalRoute > autonomy) {
+            throw new InsufficientAutonomyException(autonomy, totalRoute);
+        }
         
-        // Get up from the ground
-        dslBuilder.append(Helper.stringFormat("up at {0} cm/sec for {1} milliseconds", speeds[0], currentStepDuration));
+        profile.write(planWriter, speeds);
+        DroneCommand[] droneCommands = planWriter.finish();
+        if (telemetry.isEnabled()) {
+            telemetry.record(Phase.REPLAN, System.nanoTime() - start);
+        }
+        event(Event.COMMANDS_REPLANNED, droneCommands);
+        return optimize(droneCommands, itinerary.getWeight());
+    }
+    
+    /**
+     * Computes the maneuvers of the given itinerary and writes them through the given writer
+     * 
+     * @param itinerary
+     *            the given itineray
+     * @param droneData
+     *            the Drone data snapshot used for the whole computation
+     * @param planWriter
+     *            the writer that receives the maneuvers
+     * @return the flight plan built by the writer
+     */
+    private final <T> T compose(Itinerary itinerary, IDroneData droneData, PlanWriter<T> planWriter) {
+        planWriter.begin(droneData.getModelName());
         
-        // Rotate to align - calculate the angle
-        double angle = calculateAngle(itinerary.getStart().getLatitude(), itinerary.getEnd().getLatitude(), itinerary.getStart().getLongitude(), itinerary.getEnd().getLongitude());
-        if(angle  > 0) {
-            currentStepDistance = calculateRadialDistance(speeds[0], angle);
-            totalRoute += currentStepDistance;
-            
-            dslBuilder.append(",\n\t\t").append(Helper.stringFormat("rotate at {0} cm/sec {1} degrees", speeds[0], angle));
-        }
-        // Go up to the flight space - keeping max flight
+        // Min and Max drone speed
+        long[] speeds = calculateSpeeds(itinerary.getWeight(), droneData);
         
-        // Go - at max speed
-        currentStepDistance = calculateDistance(itinerary.getStart().getLatitude(), itinerary.getEnd().getLatitude(), itinerary.getStart().getLongitude(), itinerary.getEnd().getLongitude());
-        totalRoute += currentStepDistance;
-        currentStepDuration = calculateDuration(speeds[0], currentStepDistance);
-        dslBuilder.append(",\n\t\t").append(Helper.stringFormat("forward at {0} cm/sec for {1} milliseconds", speeds[1], currentStepDuration));
+        // Flight height
+        long flightHeight = calculateFlightHeight(itinerary);
         
-        //Re-Align drone to north.
-        if(angle  > 0) {
-            angle = 360 - angle;
-            currentStepDistance = calculateRadialDistance(speeds[0], angle);
-            totalRoute += currentStepDistance;
-            currentStepDuration = calculateDuration(speeds[0], currentStepDistance);
-            
-            dslBuilder.append(",\n\t\t").append(Helper.stringFormat("rotate at {0} cm/sec {1} degrees", speeds[0], angle));
-        }
-        // Land
-        currentStepDistance = flightHeight - itinerary.getEnd().getHeight();
+        if (telemetry.isTracing()) {
+            telemetry.trace(Event.SPEEDS_CALCULATED, itinerary.getWeight(), speeds[0], speeds[1]);
+            telemetry.trace(Event.FLIGHT_HEIGHT_CALCULATED, flightHeight);
+        }
         
-        totalRoute += currentStepDistance;
+        // Start, optimized waypoints and end
+        List<Coordinates> route = RoutePlanner.route(itinerary);
         
-        currentStepDuration = calculateDuration(speeds[0], currentStepDistance);
+        checkAirspace(airspace, route, flightHeight);
         
-        // Get up from the ground
-        dslBuilder.append(",\n\t\t").append(Helper.stringFormat("down at {0} cm/sec for {1} milliseconds", speeds[0], currentStepDuration));
+        // Get up from the ground, along the route starting from the heading the drone has on the ground, land
+        RouteProfile profile = new RouteProfile(route, 0, flightHeight - itinerary.getStart().getHeight(), false, flightHeight, itinerary.getEnd().getHeight());
         
-        System.out.println(Helper.stringFormat("Total itinerary is {0} cm", totalRoute));
+        // Useful to determine if the drone has the necessary autonomy to complete the itinerary, before writing anything
+        long totalRoute = profile.energy(energyModel, speeds, itinerary.getWeight(), droneData);
+        
+        if (telemetry.isTracing()) {
+            telemetry.trace(Event.ROUTE_CALCULATED, totalRoute);
+        }
         
         if (totalRoute > droneData.getTotalJourney()) {
             throw new InsufficientAutonomyException(droneData.getTotalJourney(), totalRoute);
         }
         
-        // Finalize the DSL instance and return it
-        return dslBuilder.append("\n\t").append("]").append("\n").append("}").toString();
+        profile.write(planWriter, speeds);
+        return planWriter.finish();
     }
     
     /**
@@ -194,11 +942,13 @@ public class VaporController {
      * 
      * @param weight
      *            carried by the Drone (in hg)
+     * @param droneData
+     *            the Drone data snapshot
      * @return position [0]: drone at minimum speed, position [1]: drone at maximum speed
      * @throws WeightExcessException
      *             if the weight loaded exceeds max weight supported by the drone
      */
-    private final long[] calculateSpeeds(long weight) throws WeightExcessException {
+    static final long[] calculateSpeeds(long weight, IDroneData droneData) throws WeightExcessException {
         if (weight > droneData.getMaxWeightCapability()) {
             throw new WeightExcessException(weight, droneData.getMaxWeightCapability());
         }
@@ -219,11 +969,58 @@ public class VaporController {
         
         long maxSpeed = (long) ((double) speed * DEFAULT_MAX_DRONE_SPEED_PERCENTAGE);
         
-        System.out.println(Helper.stringFormat("With a load of {0} hg, drone's min speed can be {1} cm/sec, while max speed can be {2} cm/sec", weight, minSpeed, maxSpeed));
-        
         return new long[] { minSpeed, maxSpeed };
     }
     
+    /**
+     * Calculates flight height of the whole itinerary, keeping above every waypoint
+     * 
+     * @param itinerary the itinerary, with its waypoints if any
+     * @return the flight Height
+     */
+    static final long calculateFlightHeight(Itinerary itinerary) {
+        List<Coordinates> waypoints = itinerary.getWaypoints();
+        for (int i = 0; i < waypoints.size(); i++) {
+            if (waypoints.get(i).getHeight() > itinerary.getMaxHeight()) {
+                throw new FlightZoneLimitTrespassException(waypoints.get(i).getHeight(), i, itinerary.getMaxHeight());
+            }
+        }
+        long flightHeight = calculateFlightHeight(itinerary.getStart().getHeight(), itinerary.getEnd().getHeight(), itinerary.getMaxHeight());
+        for (Coordinates waypoint : waypoints) {
+            if (flightHeight <= waypoint.getHeight()) {
+                return itinerary.getMaxHeight();
+            }
+        }
+        return flightHeight;
+    }
+    
+    /**
+     * Calculates flight height of the rest of an itinerary flown by an airborne drone: the cruise height is kept while it stays above every waypoint
+     * 
+     * @param itinerary the rest of the itinerary, starting from the current position
+     * @param cruiseHeight the current height of the drone from the sea level
+     * @return the flight Height
+     */
+    private static final long calculateFlightHeight(Itinerary itinerary, long cruiseHeight) {
+        List<Coordinates> waypoints = itinerary.getWaypoints();
+        long flightHeight = cruiseHeight;
+        for (int i = 0; i < waypoints.size(); i++) {
+            if (waypoints.get(i).getHeight() > itinerary.getMaxHeight()) {
+                throw new FlightZoneLimitTrespassException(waypoints.get(i).getHeight(), i, itinerary.getMaxHeight());
+            }
+            if (flightHeight <= waypoints.get(i).getHeight()) {
+                flightHeight = itinerary.getMaxHeight();
+            }
+        }
+        if (itinerary.getEnd().getHeight() > itinerary.getMaxHeight()) {
+            throw new FlightZoneLimitTrespassException(itinerary.getEnd().getHeight(), false, itinerary.getMaxHeight());
+        }
+        if (flightHeight <= itinerary.getEnd().getHeight()) {
+            flightHeight = itinerary.getMaxHeight();
+        }
+        return flightHeight;
+    }
+    
     /**
      * Calculates flight height depending of max flight height Default maneuver height is the standard, but if it is too high, the maneuver height will be calculated starting from the max height of the itinerary
      * 
@@ -233,7 +1030,7 @@ public class VaporController {
      * @return the flight Height
      * t
      */
-    private final long calculateFlightHeight(long startHeight, long endHeight, long maxHeight) {
+    private static final long calculateFlightHeight(long startHeight, long endHeight, long maxHeight) {
         if(startHeight > maxHeight) {
             throw new FlightZoneLimitTrespassException(startHeight, true, maxHeight);
         }
@@ -261,7 +1058,7 @@ public class VaporController {
      *            expressed in grades
      * @return the amount of distance traveled at given speed while rotating
      */
-    private final long calculateRadialDistance(long speed, double degrees) {
+    static final long calculateRadialDistance(long speed, double degrees) {
         return (long) Math.ceil((double) speed * Math.abs(degrees) / 1000.0);
     }
     
@@ -274,7 +1071,7 @@ public class VaporController {
      *            expressed in cm
      * @return the duration, expressed in milliseconds
      */
-    private final long calculateDuration(long speed, long distance) {
+    static final long calculateDuration(long speed, long distance) {
         return (long) (Math.abs((double) distance) / (double) speed * 1000.0);
     }
     
@@ -286,7 +1083,7 @@ public class VaporController {
      * @param lon2 End Longitude
      * @return distance between coordinates in cm
      */
-    private static final long calculateDistance(double lat1, double lat2, double lon1, double lon2) {
+    static final long calculateDistance(double lat1, double lat2, double lon1, double lon2) {
         
         final int R = 6371; // Radius of the earth
         
@@ -306,7 +1103,7 @@ public class VaporController {
      * @param lon2 End Longitude
      * @return angle between coordinates in degrees
      */
-    private static final double calculateAngle(double lat1, double lat2, double lon1, double lon2)
+    static final double calculateAngle(double lat1, double lat2, double lon1, double lon2)
     {
         double angle = Math.toDegrees(Math.atan2(lat2 - lat1, lon2 - lon1));
         // Keep angle between 0 and 360
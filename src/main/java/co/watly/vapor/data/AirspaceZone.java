@@ -0,0 +1,83 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.data;
+
+import java.util.Arrays;
+
+/**
+ * A polygonal zone of the airspace with its own ceiling, in cm from the sea level.
+ * A ceiling of 0 (or less) marks a no-fly zone. The ceiling is required: a zone loaded without it
+ * is refused by the {@code Airspace}, rather than silently turned into a no-fly zone
+ * @author Marco Vasapollo
+ *
+ */
+public class AirspaceZone {
+    
+    private String name;
+    // Null if missing from the loaded JSON
+    private Long ceiling;
+    // Vertexes as [latitude, longitude] pairs
+    private double[][] polygon;
+    
+    public AirspaceZone() {
+        super();
+    }
+    
+    public AirspaceZone(String name, long ceiling, double[][] polygon) {
+        super();
+        this.name = name;
+        this.ceiling = ceiling;
+        this.polygon = polygon;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * @throws IllegalStateException if the zone has no ceiling, see {@link #hasCeiling()}
+     */
+    public long getCeiling() {
+        if (ceiling == null) {
+            throw new IllegalStateException("Airspace zone " + name + " has no ceiling");
+        }
+        return ceiling;
+    }
+    
+    public boolean hasCeiling() {
+        return ceiling != null;
+    }
+    
+    public void setCeiling(long ceiling) {
+        this.ceiling = ceiling;
+    }
+    
+    public double[][] getPolygon() {
+        return polygon;
+    }
+    
+    public void setPolygon(double[][] polygon) {
+        this.polygon = polygon;
+    }
+    
+    public boolean isNoFly() {
+        return getCeiling() <= 0;
+    }
+    
+    @Override
+    public String toString() {
+        return "AirspaceZone [name=" + name + ", ceiling=" + ceiling + " cm, polygon=" + Arrays.deepToString(polygon) + "]";
+    }
+}
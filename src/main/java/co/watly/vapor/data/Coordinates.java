@@ -11,16 +11,17 @@
 package co.watly.vapor.data;
 
 /**
- * Latitude, Longitude and Elevation from the Sea Level of a certain Point
+ * Latitude, Longitude and Elevation from the Sea Level of a certain Point.
+ * Coordinates are immutable, so itineraries and routes can share them between threads
  * 
  * @author Marco Vasapollo
  *
  */
-public class Coordinates {
+public final class Coordinates {
     
-    private double latitude;
-    private double longitude;
-    private long height;
+    private final double latitude;
+    private final double longitude;
+    private final long height;
     
     public Coordinates(double latitude, double longitude, long height) {
         super();
@@ -33,26 +34,33 @@ public class Coordinates {
         return latitude;
     }
     
-    public void setLatitude(double latitude) {
-        this.latitude = latitude;
-    }
-    
     public double getLongitude() {
         return longitude;
     }
     
-    public void setLongitude(double longitude) {
-        this.longitude = longitude;
-    }
-    
     public long getHeight() {
         return height;
     }
     
-    public void setHeight(long height) {
-        this.height = height;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Coordinates)) {
+            return false;
+        }
+        Coordinates other = (Coordinates) o;
+        return Double.compare(latitude, other.latitude) == 0 && Double.compare(longitude, other.longitude) == 0 && height == other.height;
     }
-
+    
+    @Override
+    public int hashCode() {
+        int hash = Double.hashCode(latitude);
+        hash = 31 * hash + Double.hashCode(longitude);
+        return 31 * hash + Long.hashCode(height);
+    }
+    
     @Override
     public String toString() {
         return "Coordinates [latitude=" + latitude + ", longitude=" + longitude + ", height=" + height + " cm]";
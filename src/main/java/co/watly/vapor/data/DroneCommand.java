@@ -10,53 +10,136 @@
  */
 package co.watly.vapor.data;
 
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import com.google.gson.annotations.JsonAdapter;
+
+import co.watly.vapor.util.BinaryPlan;
+import co.watly.vapor.util.DroneCommandMapper;
 import co.watly.vapor.util.JSON;
+import co.watly.vapor.util.JsonArrayStream;
 
 /**
- * DSL Generator converts its sentences into these commands
+ * DSL Generator converts its sentences into these commands.
+ * Commands are immutable, so plans can be shared by threads and caches without copying them.
+ * The argument is kept as a primitive: an integral one (e.g. a duration) or a decimal one (e.g. rotation degrees),
+ * and the names of the known maneuvers are shared by all the commands
  * @author Marco Vasapollo
  *
  */
-public class DroneCommand {
+@JsonAdapter(DroneCommandAdapter.class)
+public final class DroneCommand {
     
-    private String name;
-    private long speed;
-    private Number arg;
+    private final String name;
+    private final long speed;
+    // The integral argument or the raw bits of the decimal one
+    private final long arg;
+    private final boolean decimal;
+    
+    public DroneCommand(String name, long speed, long arg) {
+        this(name, speed, arg, false);
+    }
     
-    public DroneCommand() {
+    public DroneCommand(String name, long speed, double arg) {
+        this(name, speed, Double.doubleToRawLongBits(arg), true);
+    }
+    
+    private DroneCommand(String name, long speed, long arg, boolean decimal) {
         super();
+        this.name = name == null ? null : DroneCommandMapper.intern(name);
+        this.speed = speed;
+        this.arg = arg;
+        this.decimal = decimal;
     }
     
     public String getName() {
         return name;
     }
     
-    public void setName(String name) {
-        this.name = name;
-    }
-    
     public long getSpeed() {
         return speed;
     }
     
-    public void setSpeed(long speed) {
-        this.speed = speed;
+    /**
+     * @return the boxed argument, prefer {@link #getArgAsLong()} or {@link #getArgAsDouble()} in hot paths
+     */
+    public Number getArg() {
+        return decimal ? (Number) Double.longBitsToDouble(arg) : (Number) arg;
     }
     
-    public Number getArg() {
-        return arg;
+    /**
+     * @return true if the argument is a decimal one
+     */
+    public boolean isDecimal() {
+        return decimal;
     }
     
-    public void setArg(Number arg) {
-        this.arg = arg;
+    public long getArgAsLong() {
+        return decimal ? (long) Double.longBitsToDouble(arg) : arg;
+    }
+    
+    public double getArgAsDouble() {
+        return decimal ? Double.longBitsToDouble(arg) : (double) arg;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DroneCommand)) {
+            return false;
+        }
+        DroneCommand other = (DroneCommand) o;
+        return speed == other.speed && arg == other.arg && decimal == other.decimal && (name == null ? other.name == null : name.equals(other.name));
+    }
+    
+    @Override
+    public int hashCode() {
+        int hash = name == null ? 0 : name.hashCode();
+        hash = 31 * hash + Long.hashCode(speed);
+        hash = 31 * hash + Long.hashCode(arg);
+        return 31 * hash + (decimal ? 1 : 0);
     }
     
     @Override
     public String toString() {
-        return "DroneCommand [name=" + name + ", speed=" + speed + ", arg=" + arg + "]";
+        return "DroneCommand [name=" + name + ", speed=" + speed + ", arg=" + (decimal ? String.valueOf(Double.longBitsToDouble(arg)) : String.valueOf(arg)) + "]";
     }
     
     public static final DroneCommand[] fromJSON(String json) {
         return JSON.parse(json, DroneCommand[].class);
     }
+    
+    /**
+     * Decodes a JSON array of commands one by one, handing each of them to the consumer as soon as it is read.
+     * The reader is not closed
+     * @return the number of decoded commands
+     */
+    public static final int fromJSON(Reader json, Consumer<? super DroneCommand> consumer) {
+        int count = 0;
+        JsonArrayStream<DroneCommand> droneCommands = JSON.stream(json, DroneCommand.class);
+        while (droneCommands.hasNext()) {
+            consumer.accept(droneCommands.next());
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Decodes a plan in the {@link BinaryPlan} format, starting at the current position of the buffer
+     */
+    public static final DroneCommand[] fromBinary(ByteBuffer plan) {
+        return BinaryPlan.decode(plan);
+    }
+    
+    /**
+     * Encodes the given plan in the {@link BinaryPlan} format
+     * @return a new buffer, ready to be read
+     */
+    public static final ByteBuffer toBinary(DroneCommand[] droneCommands) {
+        return BinaryPlan.encode(droneCommands);
+    }
 }
@@ -0,0 +1,88 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.data;
+
+import java.io.IOException;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads and writes {@link DroneCommand}s field by field, keeping the argument as a primitive.
+ * An argument written with a decimal point or an exponent is a decimal one, otherwise it is integral.
+ * A command without argument, or with a null one, is refused
+ * @author Marco Vasapollo
+ *
+ */
+final class DroneCommandAdapter extends TypeAdapter<DroneCommand> {
+    
+    @Override
+    public void write(JsonWriter out, DroneCommand droneCommand) throws IOException {
+        out.beginObject();
+        out.name("name").value(droneCommand.getName());
+        out.name("speed").value(droneCommand.getSpeed());
+        out.name("arg");
+        if (droneCommand.isDecimal()) {
+            out.value(droneCommand.getArgAsDouble());
+        }
+        else {
+            out.value(droneCommand.getArgAsLong());
+        }
+        out.endObject();
+    }
+    
+    @Override
+    public DroneCommand read(JsonReader in) throws IOException {
+        String name = null;
+        long speed = 0;
+        long integralArg = 0;
+        double decimalArg = 0;
+        boolean decimal = false;
+        boolean hasArg = false;
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.skipValue();
+                continue;
+            }
+            switch (field) {
+                case "name":
+                    name = in.nextString();
+                    break;
+                case "speed":
+                    speed = in.nextLong();
+                    break;
+                case "arg":
+                    String arg = in.nextString();
+                    hasArg = true;
+                    decimal = arg.indexOf('.') >= 0 || arg.indexOf('e') >= 0 || arg.indexOf('E') >= 0;
+                    if (decimal) {
+                        decimalArg = Double.parseDouble(arg);
+                    }
+                    else {
+                        integralArg = Long.parseLong(arg);
+                    }
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        if (!hasArg) {
+            throw new JsonParseException("Missing argument for drone command: " + name);
+        }
+        return decimal ? new DroneCommand(name, speed, decimalArg) : new DroneCommand(name, speed, integralArg);
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.data;
+
+/**
+ * Where an airborne drone is within its flight: the position at cruise height, the heading and the journey already consumed.
+ * It is the starting point of a re-plan, it can be derived from the progress through a plan or built from a reported position
+ * @author Marco Vasapollo
+ *
+ */
+public class FlightState {
+    
+    private final Coordinates position;
+    private final double heading;
+    private final long journey;
+    private final long maxHeight;
+    private final long weight;
+    
+    /**
+     * @param position the current position, its height is the cruise height from the sea level
+     * @param heading the current heading in degrees, 0 is the one the drone has on the ground
+     * @param journey the journey already consumed, in cm
+     * @param maxHeight the elevation from the sea level of the Flight Zone limit
+     * @param weight the weight carried by the drone, in hg
+     */
+    public FlightState(Coordinates position, double heading, long journey, long maxHeight, long weight) {
+        super();
+        this.position = position;
+        this.heading = heading;
+        this.journey = journey;
+        this.maxHeight = maxHeight;
+        this.weight = weight;
+    }
+    
+    public Coordinates getPosition() {
+        return position;
+    }
+    
+    public double getHeading() {
+        return heading;
+    }
+    
+    public long getJourney() {
+        return journey;
+    }
+    
+    public long getMaxHeight() {
+        return maxHeight;
+    }
+    
+    public long getWeight() {
+        return weight;
+    }
+    
+    @Override
+    public String toString() {
+        return "FlightState [position=" + position + ", heading=" + heading + ", journey=" + journey + " cm, maxHeight=" + maxHeight + " cm, weight=" + weight + " hg]";
+    }
+}
@@ -10,60 +10,91 @@
  */
 package co.watly.vapor.data;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
 /**
- * All teh info useful to create DSL Sentences useful to Extract Drone Commands
+ * All teh info useful to create DSL Sentences useful to Extract Drone Commands.
+ * Between start and end, the drone can visit a list of waypoints at cruise height (e.g. the drops of a delivery round):
+ * ordered waypoints are visited as they are, unordered ones in the order that minimizes the whole route.
+ * Itineraries are immutable, so they can be shared by threads and used as cache keys without copying them
  * @author Marco Vaspollo
  *
  */
-public class Itinerary {
+public final class Itinerary {
     
-    private Coordinates start;
-    private Coordinates end;
-    private long maxHeight;
-    private long weight;
+    private final Coordinates start;
+    private final Coordinates end;
+    private final long maxHeight;
+    private final long weight;
+    private final List<Coordinates> waypoints;
+    private final boolean orderedWaypoints;
     
     public Itinerary(Coordinates start, Coordinates end, long maxHeight, long weight) {
+        this(start, null, true, end, maxHeight, weight);
+    }
+    
+    public Itinerary(Coordinates start, List<Coordinates> waypoints, boolean orderedWaypoints, Coordinates end, long maxHeight, long weight) {
         super();
         this.start = start;
         this.end = end;
         this.maxHeight = maxHeight;
         this.weight = weight;
+        this.waypoints = waypoints == null || waypoints.isEmpty() ? Collections.<Coordinates> emptyList() : Collections.unmodifiableList(new ArrayList<>(waypoints));
+        this.orderedWaypoints = orderedWaypoints;
     }
     
     public Coordinates getStart() {
         return start;
     }
     
-    public void setStart(Coordinates start) {
-        this.start = start;
-    }
-    
     public Coordinates getEnd() {
         return end;
     }
     
-    public void setEnd(Coordinates end) {
-        this.end = end;
-    }
-    
     public long getMaxHeight() {
         return maxHeight;
     }
     
-    public void setMaxHeight(long maxHeight) {
-        this.maxHeight = maxHeight;
-    }
-    
     public long getWeight() {
         return weight;
     }
     
-    public void setWeight(long weight) {
-        this.weight = weight;
+    public List<Coordinates> getWaypoints() {
+        // Null only if read from JSON without waypoints
+        return waypoints == null ? Collections.<Coordinates> emptyList() : waypoints;
+    }
+    
+    public boolean isOrderedWaypoints() {
+        return orderedWaypoints;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Itinerary)) {
+            return false;
+        }
+        Itinerary other = (Itinerary) o;
+        return maxHeight == other.maxHeight && weight == other.weight && orderedWaypoints == other.orderedWaypoints && Objects.equals(start, other.start) && Objects.equals(end, other.end) && getWaypoints().equals(other.getWaypoints());
+    }
+    
+    @Override
+    public int hashCode() {
+        int hash = Objects.hashCode(start);
+        hash = 31 * hash + Objects.hashCode(end);
+        hash = 31 * hash + Long.hashCode(maxHeight);
+        hash = 31 * hash + Long.hashCode(weight);
+        hash = 31 * hash + getWaypoints().hashCode();
+        return 31 * hash + (orderedWaypoints ? 1 : 0);
     }
     
     @Override
     public String toString() {
-        return "Itinerary [start=" + start + ", end=" + end + ", maxHeight=" + maxHeight + " cm, weight=" + weight + " hg]";
+        return "Itinerary [start=" + start + (getWaypoints().isEmpty() ? "" : ", waypoints=" + waypoints + (orderedWaypoints ? "" : " (unordered)")) + ", end=" + end + ", maxHeight=" + maxHeight + " cm, weight=" + weight + " hg]";
     }
 }
@@ -0,0 +1,54 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.data;
+
+import java.util.Arrays;
+
+/**
+ * Outcome of the planning of a single {@link Itinerary} inside a batch.
+ * It holds either the generated commands or the error that stopped the planning
+ * @author Marco Vasapollo
+ *
+ */
+public class PlanResult {
+
+    private final Itinerary itinerary;
+    private final DroneCommand[] droneCommands;
+    private final Throwable error;
+
+    public PlanResult(Itinerary itinerary, DroneCommand[] droneCommands, Throwable error) {
+        super();
+        this.itinerary = itinerary;
+        this.droneCommands = droneCommands;
+        this.error = error;
+    }
+
+    public Itinerary getItinerary() {
+        return itinerary;
+    }
+
+    public DroneCommand[] getDroneCommands() {
+        return droneCommands;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return "PlanResult [itinerary=" + itinerary + ", droneCommands=" + Arrays.toString(droneCommands) + ", error=" + error + "]";
+    }
+}
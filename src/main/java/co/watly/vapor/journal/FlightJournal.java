@@ -0,0 +1,339 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.util.DroneCommandMapper;
+
+/**
+ * Append-only journal of every command issued to the drones, with its issue and completion time and its result.
+ * Records have a fixed size and are written into memory-mapped segment files, rotated when full:
+ * writers claim their slot with a single atomic add and write it with absolute puts, so recording 
+ * a command costs a few tens of nanoseconds, with no lock, no allocation and no system call.
+ * Segments are never overwritten, a new journal on the same directory starts a new segment.
+ * Each segment header carries the high-water mark of its records, published when the segment is full and all its writers are done,
+ * and at every {@link #flush()}. A journal that cannot write (e.g. the disk is full) drops the records, marking their slots as skipped, 
+ * and keeps the first error, flights are never stopped by it.
+ * Can be shared by many controllers, see {@link JournalReader} and {@link FlightReplay} to read it back
+ * @author Marco Vasapollo
+ *
+ */
+public class FlightJournal implements AutoCloseable {
+    
+    static final int MAGIC = 0x56504A4E;
+    
+    static final byte VERSION = 1;
+    
+    // magic, version, record size, maneuver table fingerprint, segment index, high-water mark, padding
+    static final int HEADER_SIZE = 64;
+    
+    // The end of the last claimed record, 0 if never published
+    static final int HIGH_WATER_MARK = 24;
+    
+    // kind, flags, opcode, step, flight, timestamp, speed, argument
+    static final int RECORD_SIZE = 40;
+    
+    static final String SEGMENT_PREFIX = "flight-";
+    
+    static final String SEGMENT_SUFFIX = ".journal";
+    
+    static final byte ISSUED = 1;
+    static final byte COMPLETED = 2;
+    static final byte FAILED = 3;
+    // A claimed slot whose record could not be written
+    static final byte SKIPPED = 4;
+    
+    static final byte DECIMAL_ARG = 1;
+    
+    private static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    
+    private final Path directory;
+    private final int segmentSize;
+    
+    // Converts System.nanoTime() into nanoseconds since the epoch
+    private final long epochOffset;
+    
+    private final AtomicLong flightIds;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicReference<IOException> error = new AtomicReference<>();
+    private volatile Segment current;
+    // Full segments whose writers may still be writing, guarded by this
+    private final List<Segment> sealed = new ArrayList<>();
+    private volatile boolean closed;
+    
+    public FlightJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+    
+    /**
+     * @param directory where segment files are written, created if missing
+     * @param segmentSize the size of each segment file, in bytes
+     */
+    public FlightJournal(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < HEADER_SIZE + RECORD_SIZE) {
+            throw new IllegalArgumentException("Journal segments must be at least " + (HEADER_SIZE + RECORD_SIZE) + " bytes, got " + segmentSize);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.epochOffset = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+        // Unique across restarts too
+        this.flightIds = new AtomicLong(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+        this.current = new Segment(lastSegmentIndex(directory) + 1);
+    }
+    
+    /**
+     * @return a new flight identifier, to be used for all the commands of the same flight
+     */
+    public final long nextFlightId() {
+        return flightIds.incrementAndGet();
+    }
+    
+    /**
+     * Records a command sent to the drone
+     * @param flightId the flight, see {@link #nextFlightId()}
+     * @param step the position of the command in the flight
+     * @param droneCommand the issued command, a maneuver of the {@link co.watly.vapor.model.IDrone}
+     * @param issuedAt when it was issued, as given by {@link System#nanoTime()}
+     */
+    public final void issued(long flightId, int step, DroneCommand droneCommand, long issuedAt) {
+        boolean decimal = droneCommand.isDecimal();
+        long arg = decimal ? Double.doubleToRawLongBits(droneCommand.getArgAsDouble()) : droneCommand.getArgAsLong();
+        append(ISSUED, decimal ? DECIMAL_ARG : 0, DroneCommandMapper.opcode(droneCommand.getName()), flightId, step, issuedAt, droneCommand.getSpeed(), arg);
+    }
+    
+    /**
+     * Records the result of a command
+     * @param flightId the flight, see {@link #nextFlightId()}
+     * @param step the position of the command in the flight
+     * @param droneCommand the completed command
+     * @param successful false if the drone reported an error
+     * @param completedAt when it completed, as given by {@link System#nanoTime()}
+     */
+    public final void completed(long flightId, int step, DroneCommand droneCommand, boolean successful, long completedAt) {
+        append(successful ? COMPLETED : FAILED, (byte) 0, DroneCommandMapper.opcode(droneCommand.getName()), flightId, step, completedAt, 0, 0);
+    }
+    
+    /**
+     * @return the number of records lost because the journal could not write them
+     */
+    public final long getDropped() {
+        return dropped.get();
+    }
+    
+    /**
+     * @return the first write error, null if none happened
+     */
+    public final IOException getError() {
+        return error.get();
+    }
+    
+    public final Path getDirectory() {
+        return directory;
+    }
+    
+    /**
+     * Forces the records written so far to the storage, publishing the high-water mark of the current segment.
+     * Records still being written by other threads may not be included
+     */
+    public final synchronized void flush() {
+        settle();
+        current.publish();
+    }
+    
+    /**
+     * Waits for the writers still appending, then flushes all the segments. Records appended afterwards are dropped
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            // No rotation can happen meanwhile, writers only leave
+            awaitWriters(current);
+            for (Segment full : sealed) {
+                awaitWriters(full);
+            }
+            flush();
+        }
+    }
+    
+    private static void awaitWriters(Segment segment) {
+        while (segment.writers.get() > 0) {
+            Thread.yield();
+        }
+    }
+    
+    private void append(byte kind, byte flags, int opcode, long flightId, int step, long nanoTime, long speed, long arg) {
+        Segment segment = current;
+        long offset;
+        while (true) {
+            segment.writers.incrementAndGet();
+            // Checked after joining the writers, so that close() either waits for this writer or this writer sees it closed
+            if (closed) {
+                segment.writers.decrementAndGet();
+                dropped.incrementAndGet();
+                return;
+            }
+            offset = segment.cursor.getAndAdd(RECORD_SIZE);
+            if (offset + RECORD_SIZE <= segmentSize) {
+                break;
+            }
+            segment.writers.decrementAndGet();
+            segment = rotate(segment);
+            if (segment == null) {
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        MappedByteBuffer buffer = segment.buffer;
+        int at = (int) offset;
+        try {
+            buffer.put(at + 1, flags);
+            buffer.putShort(at + 2, (short) opcode);
+            buffer.putInt(at + 4, step);
+            buffer.putLong(at + 8, flightId);
+            buffer.putLong(at + 16, nanoTime + epochOffset);
+            buffer.putLong(at + 24, speed);
+            buffer.putLong(at + 32, arg);
+            // The kind goes last, a slot without it is still being written
+            buffer.put(at, kind);
+        }
+        catch (InternalError e) {
+            // A mapped page could not be written, e.g. the disk is full
+            error.compareAndSet(null, new IOException("Flight journal write failed in " + segmentPath(directory, segment.index), e));
+            dropped.incrementAndGet();
+            skip(buffer, at);
+        }
+        finally {
+            segment.writers.decrementAndGet();
+        }
+    }
+    
+    private static void skip(MappedByteBuffer buffer, int at) {
+        try {
+            buffer.put(at, SKIPPED);
+        }
+        catch (InternalError e) {
+            // The reader finds an unfinished slot instead, and skips it as well
+        }
+    }
+    
+    /**
+     * Replaces the given full segment with a new one, unless another writer already did
+     * @return the segment to write into, null if no new segment can be created
+     */
+    private synchronized Segment rotate(Segment full) {
+        if (closed || error.get() != null) {
+            return null;
+        }
+        if (current != full) {
+            return current;
+        }
+        try {
+            current = new Segment(full.index + 1);
+            sealed.add(full);
+            settle();
+            return current;
+        }
+        catch (IOException e) {
+            error.compareAndSet(null, e);
+            return null;
+        }
+    }
+    
+    /**
+     * Publishes and forces the full segments whose writers are all done.
+     * Writers arriving later on a full segment never write into it, since they always find it full
+     */
+    private void settle() {
+        for (int i = sealed.size() - 1; i >= 0; i--) {
+            Segment full = sealed.get(i);
+            if (full.writers.get() == 0) {
+                full.publish();
+                sealed.remove(i);
+            }
+        }
+    }
+    
+    static final Path segmentPath(Path directory, long index) {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+    
+    /**
+     * @return the index of the given segment file, -1 if it is not a segment
+     */
+    static final long segmentIndex(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    private static long lastSegmentIndex(Path directory) throws IOException {
+        long last = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                last = Math.max(last, segmentIndex(file));
+            }
+        }
+        return last;
+    }
+    
+    private final class Segment {
+        
+        private final long index;
+        private final MappedByteBuffer buffer;
+        private final AtomicLong cursor = new AtomicLong(HEADER_SIZE);
+        // The threads between joining and leaving this segment in append
+        private final AtomicInteger writers = new AtomicInteger();
+        
+        private Segment(long index) throws IOException {
+            this.index = index;
+            try (FileChannel channel = FileChannel.open(segmentPath(directory, index), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // The mapping stays valid after the channel is closed
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.put(4, VERSION);
+            buffer.putInt(8, RECORD_SIZE);
+            buffer.putInt(12, DroneCommandMapper.getTableFingerprint());
+            buffer.putLong(16, index);
+        }
+        
+        /**
+         * Writes the end of the last claimed record into the header and forces the segment to the storage
+         */
+        private void publish() {
+            long end = Math.min(cursor.get(), HEADER_SIZE + (long) (segmentSize - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE);
+            buffer.putLong(HIGH_WATER_MARK, end);
+            buffer.force();
+        }
+    }
+}
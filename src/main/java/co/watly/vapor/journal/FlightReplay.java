@@ -0,0 +1,145 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.journal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import co.watly.vapor.model.IDrone;
+import co.watly.vapor.util.DroneCommandMapper;
+
+/**
+ * Re-drives a drone (usually a stub) with the commands recorded by a {@link FlightJournal}, 
+ * keeping their original timing or a faster one. 
+ * Commands are issued when due whatever happens to the previous ones, as the drones received them,
+ * so many flights can be replayed together as a load test
+ * @author Marco Vasapollo
+ *
+ */
+public final class FlightReplay {
+    
+    private final JournalEntry[] issued;
+    private final IDrone drone;
+    private final double speed;
+    private final ScheduledExecutorService timer;
+    private final CompletableFuture<Integer> completion = new CompletableFuture<>();
+    
+    // One share for each running command, plus one held until every command has been issued
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final AtomicReference<Throwable> firstError = new AtomicReference<>();
+    
+    private long origin;
+    private long startedAt;
+    private int next;
+    
+    private FlightReplay(JournalEntry[] issued, IDrone drone, double speed, ScheduledExecutorService timer) {
+        this.issued = issued;
+        this.drone = drone;
+        this.speed = speed;
+        this.timer = timer;
+    }
+    
+    /**
+     * Replays the issued commands among the given entries
+     * @param entries the journal entries, e.g. read by {@link JournalReader}
+     * @param drone the drone receiving the commands
+     * @param speed 1 keeps the original timing, 10 replays ten times faster, {@link Double#POSITIVE_INFINITY} as fast as possible
+     * @param timer schedules the commands, it also issues them
+     * @return a future completed with the number of replayed commands when all of them completed, 
+     * or failed with the first error once all of them completed
+     */
+    public static final CompletableFuture<Integer> replay(Collection<JournalEntry> entries, IDrone drone, double speed, ScheduledExecutorService timer) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Replay speed must be positive, got " + speed);
+        }
+        List<JournalEntry> issued = new ArrayList<>();
+        for (JournalEntry entry : entries) {
+            if (entry.getKind() == JournalEntry.Kind.ISSUED) {
+                issued.add(entry);
+            }
+        }
+        // Concurrent flights may append slightly out of order
+        issued.sort(Comparator.comparingLong(JournalEntry::getTimestamp));
+        FlightReplay replay = new FlightReplay(issued.toArray(new JournalEntry[issued.size()]), drone, speed, timer);
+        timer.execute(replay::start);
+        return replay.completion;
+    }
+    
+    private void start() {
+        origin = issued.length == 0 ? 0 : issued[0].getTimestamp();
+        startedAt = System.nanoTime();
+        issueDue();
+    }
+    
+    /**
+     * Issues every command already due, then waits for the next one
+     */
+    private void issueDue() {
+        final long elapsed = System.nanoTime() - startedAt;
+        while (next < issued.length) {
+            long due = (long) ((issued[next].getTimestamp() - origin) / speed);
+            if (due > elapsed) {
+                timer.schedule(this::issueDue, due - elapsed, TimeUnit.NANOSECONDS);
+                return;
+            }
+            issue(issued[next++]);
+        }
+        done();
+    }
+    
+    private void issue(JournalEntry entry) {
+        pending.incrementAndGet();
+        CompletableFuture<Void> maneuver;
+        try {
+            maneuver = DroneCommandMapper.invoke(entry.getDroneCommand(), drone);
+        }
+        catch (RuntimeException e) {
+            fail(e);
+            return;
+        }
+        if (maneuver == null) {
+            fail(new IllegalStateException("Drone returned no result for " + entry.getDroneCommand()));
+            return;
+        }
+        maneuver.whenComplete((v, e) -> {
+            if (e != null) {
+                fail(e);
+            }
+            else {
+                done();
+            }
+        });
+    }
+    
+    private void fail(Throwable error) {
+        firstError.compareAndSet(null, error);
+        done();
+    }
+    
+    private void done() {
+        if (pending.decrementAndGet() == 0) {
+            Throwable error = firstError.get();
+            if (error == null) {
+                completion.complete(issued.length);
+            }
+            else {
+                completion.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.journal;
+
+import co.watly.vapor.data.DroneCommand;
+
+/**
+ * A record of the {@link FlightJournal}
+ * @author Marco Vasapollo
+ *
+ */
+public class JournalEntry {
+    
+    public enum Kind {
+        
+        /**
+         * The command has been sent to the drone
+         */
+        ISSUED,
+        
+        /**
+         * The drone completed the command
+         */
+        COMPLETED,
+        
+        /**
+         * The drone reported an error for the command
+         */
+        FAILED
+    }
+    
+    private final Kind kind;
+    private final long flightId;
+    private final int step;
+    private final long timestamp;
+    private final DroneCommand droneCommand;
+    
+    public JournalEntry(Kind kind, long flightId, int step, long timestamp, DroneCommand droneCommand) {
+        super();
+        this.kind = kind;
+        this.flightId = flightId;
+        this.step = step;
+        this.timestamp = timestamp;
+        this.droneCommand = droneCommand;
+    }
+    
+    public Kind getKind() {
+        return kind;
+    }
+    
+    public long getFlightId() {
+        return flightId;
+    }
+    
+    public int getStep() {
+        return step;
+    }
+    
+    /**
+     * @return when the command was issued or completed, in nanoseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    /**
+     * @return the command, speed and argument are only set for {@link Kind#ISSUED} entries
+     */
+    public DroneCommand getDroneCommand() {
+        return droneCommand;
+    }
+    
+    @Override
+    public String toString() {
+        return "JournalEntry [kind=" + kind + ", flightId=" + flightId + ", step=" + step + ", timestamp=" + timestamp + ", droneCommand=" + droneCommand + "]";
+    }
+}
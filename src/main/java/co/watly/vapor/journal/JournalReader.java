@@ -0,0 +1,116 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.util.DroneCommandMapper;
+
+/**
+ * Reads back the records written by a {@link FlightJournal}, segment after segment
+ * @author Marco Vasapollo
+ *
+ */
+public final class JournalReader {
+    
+    private static final JournalEntry.Kind[] KINDS = { null, JournalEntry.Kind.ISSUED, JournalEntry.Kind.COMPLETED, JournalEntry.Kind.FAILED };
+
+    
+    private JournalReader() {
+    }
+    
+    /**
+     * @param directory the journal directory
+     * @return all the records of the journal, in the order they were appended
+     * @throws IllegalArgumentException if a segment is not valid or was written with a different maneuver table
+     */
+    public static final List<JournalEntry> read(Path directory) throws IOException {
+        return read(directory, -1);
+    }
+    
+    /**
+     * @param directory the journal directory
+     * @param flightId the flight to read, see {@link FlightJournal#nextFlightId()}
+     * @return the records of the given flight, in the order they were appended
+     * @throws IllegalArgumentException if a segment is not valid or was written with a different maneuver table
+     */
+    public static final List<JournalEntry> read(Path directory, long flightId) throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                long index = FlightJournal.segmentIndex(file);
+                if (index >= 0) {
+                    segments.put(index, file);
+                }
+            }
+        }
+        List<JournalEntry> entries = new ArrayList<>();
+        for (Path segment : segments.values()) {
+            readSegment(segment, flightId, entries);
+        }
+        return entries;
+    }
+    
+    private static void readSegment(Path segment, long flightId, List<JournalEntry> entries) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < FlightJournal.HEADER_SIZE || buffer.getInt(0) != FlightJournal.MAGIC) {
+            throw new IllegalArgumentException("Not a flight journal segment: " + segment);
+        }
+        if (buffer.get(4) != FlightJournal.VERSION || buffer.getInt(8) != FlightJournal.RECORD_SIZE) {
+            throw new IllegalArgumentException("Unsupported flight journal version " + buffer.get(4) + " in " + segment);
+        }
+        if (buffer.getInt(12) != DroneCommandMapper.getTableFingerprint()) {
+            throw new IllegalArgumentException("Flight journal segment written for a different drone command table: " + segment);
+        }
+        // Segments of a journal not closed yet may not have published their high-water mark
+        long highWaterMark = buffer.getLong(FlightJournal.HIGH_WATER_MARK);
+        long end = highWaterMark > 0 ? Math.min(highWaterMark, buffer.capacity()) : buffer.capacity();
+        for (int at = FlightJournal.HEADER_SIZE; at + FlightJournal.RECORD_SIZE <= end; at += FlightJournal.RECORD_SIZE) {
+            byte kind = buffer.get(at);
+            if (kind == 0 || kind == FlightJournal.SKIPPED) {
+                // Never written, still being written or dropped by the journal
+                continue;
+            }
+            if (kind < 0 || kind >= KINDS.length) {
+                throw new IllegalArgumentException("Corrupted flight journal record at " + at + " in " + segment);
+            }
+            long recordFlightId = buffer.getLong(at + 8);
+            if (flightId >= 0 && recordFlightId != flightId) {
+                continue;
+            }
+            String name = DroneCommandMapper.command(buffer.getShort(at + 2));
+            DroneCommand droneCommand;
+            if (kind != FlightJournal.ISSUED) {
+                droneCommand = new DroneCommand(name, 0, 0L);
+            }
+            else if ((buffer.get(at + 1) & FlightJournal.DECIMAL_ARG) != 0) {
+                droneCommand = new DroneCommand(name, buffer.getLong(at + 24), Double.longBitsToDouble(buffer.getLong(at + 32)));
+            }
+            else {
+                droneCommand = new DroneCommand(name, buffer.getLong(at + 24), buffer.getLong(at + 32));
+            }
+            entries.add(new JournalEntry(KINDS[kind], recordFlightId, buffer.getInt(at + 4), buffer.getLong(at + 16), droneCommand));
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.simulation;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import co.watly.vapor.controller.EnergyModel;
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.model.IDrone;
+import co.watly.vapor.model.IDroneData;
+import co.watly.vapor.util.Helper;
+
+/**
+ * A drone flying on a {@link SimulationClock}, to load test controllers and fleets without hardware.
+ * Every maneuver lasts as long as its command says: climbs, descents and forwards their duration in milliseconds,
+ * rotations as long as the planning accounts them (a millisecond per degree). When it completes, the drone moves,
+ * climbs or turns, and consumes journey as priced by its {@link EnergyModel}: a maneuver needing more journey than left fails.
+ * The drone answers after a configurable latency, and can fail or stall (never complete) maneuvers at random, 
+ * drawn from its own seed so that the same flights fail the same way at every run.
+ * The {@link IDrone} is a dynamic proxy, so it keeps working whatever maneuvers the Drone Model declares:
+ * unknown ones take their argument as a duration
+ * @author Marco Vasapollo
+ *
+ */
+public final class SimulatedDrone {
+    
+    // Length of a degree of latitude, in cm, on the same earth used by the controller
+    private static final double DEGREE_LENGTH = Math.toRadians(6371.0 * 100000.0);
+    
+    // Maneuvers written by the planning
+    private static final String UP = "up";
+    private static final String DOWN = "down";
+    private static final String FORWARD = "forward";
+    private static final String ROTATE = "rotate";
+    
+    private final SimulationClock clock;
+    private final IDroneData droneData;
+    private final EnergyModel energyModel;
+    private final Random random;
+    private final IDrone drone;
+    
+    // Guarded by this
+    private double latitude;
+    private double longitude;
+    private long height;
+    private double heading;
+    private long consumedJourney;
+    private long payload;
+    private long latency;
+    private long jitter;
+    private double failureRate;
+    private double stallRate;
+    private long maneuvers;
+    private long failures;
+    private long stalls;
+    
+    /**
+     * A drone that prices every maneuver at its distance, see {@link EnergyModel#DISTANCE}
+     */
+    public SimulatedDrone(SimulationClock clock, IDroneData droneData, Coordinates position, long seed) {
+        this(clock, droneData, position, EnergyModel.DISTANCE, seed);
+    }
+    
+    /**
+     * @param position where the drone stands, heading east as the planning expects
+     * @param energyModel prices the maneuvers in journey, should be the one of the controllers
+     * @param seed of the latency jitter and of the injected faults
+     */
+    public SimulatedDrone(SimulationClock clock, IDroneData droneData, Coordinates position, EnergyModel energyModel, long seed) {
+        this.clock = clock;
+        this.droneData = droneData;
+        this.energyModel = energyModel;
+        this.random = new Random(seed);
+        this.latitude = position.getLatitude();
+        this.longitude = position.getLongitude();
+        this.height = position.getHeight();
+        this.drone = (IDrone) Proxy.newProxyInstance(IDrone.class.getClassLoader(), new Class<?>[] { IDrone.class }, (proxy, method, args) -> invoke(proxy, method, args));
+    }
+    
+    /**
+     * @return drone data with the given values, e.g. to build a {@link SimulatedDrone}
+     */
+    public static final IDroneData droneData(String modelName, long totalJourney, long maxWeightCapability, long maxReachableSpeed, double speedDecreasingFactor) {
+        final Map<String, Object> values = new HashMap<>();
+        values.put("getModelName", modelName);
+        values.put("getTotalJourney", totalJourney);
+        values.put("getMaxWeightCapability", maxWeightCapability);
+        values.put("getMaxReachableSpeed", maxReachableSpeed);
+        values.put("getSpeedDecreasingFactor", speedDecreasingFactor);
+        return (IDroneData) Proxy.newProxyInstance(IDroneData.class.getClassLoader(), new Class<?>[] { IDroneData.class }, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(proxy, method, args, "SimulatedDroneData " + values);
+            }
+            return values.get(method.getName());
+        });
+    }
+    
+    /**
+     * @return the drone to give to a controller
+     */
+    public final IDrone getDrone() {
+        return drone;
+    }
+    
+    public final IDroneData getDroneData() {
+        return droneData;
+    }
+    
+    /**
+     * @return where the drone is, once its completed maneuvers are applied
+     */
+    public final synchronized Coordinates getPosition() {
+        return new Coordinates(latitude, longitude, height);
+    }
+    
+    /**
+     * Puts the drone at the given position heading east, e.g. back to its base after a failed flight
+     */
+    public final synchronized void place(Coordinates position) {
+        latitude = position.getLatitude();
+        longitude = position.getLongitude();
+        height = position.getHeight();
+        heading = 0;
+    }
+    
+    /**
+     * @return the heading in degrees, counterclockwise from east as in the planning
+     */
+    public final synchronized double getHeading() {
+        return heading;
+    }
+    
+    /**
+     * @return the journey consumed so far, in cm
+     */
+    public final synchronized long getConsumedJourney() {
+        return consumedJourney;
+    }
+    
+    /**
+     * @return the journey left, in cm
+     */
+    public final synchronized long getRemainingJourney() {
+        return droneData.getTotalJourney() - consumedJourney;
+    }
+    
+    /**
+     * Restores the whole journey of the drone, e.g. between missions
+     */
+    public final synchronized void recharge() {
+        consumedJourney = 0;
+    }
+    
+    /**
+     * @param weight the carried weight, in hg, weighing on the journey consumed
+     */
+    public final synchronized void setPayload(long weight) {
+        this.payload = weight;
+    }
+    
+    /**
+     * @param latency added to every maneuver and to the drone data request, in milliseconds
+     * @param jitter the most extra latency, drawn at random for each request, in milliseconds
+     */
+    public final synchronized void setLatency(long latency, long jitter) {
+        if (latency < 0 || jitter < 0) {
+            throw new IllegalArgumentException("Latency and jitter must be non negative");
+        }
+        this.latency = latency;
+        this.jitter = jitter;
+    }
+    
+    /**
+     * @param failureRate the probability that a maneuver fails with a {@link SimulatedFaultException}
+     * @param stallRate the probability that a maneuver never completes, see {@link co.watly.vapor.controller.VaporController#setCommandTimeout(long, java.util.concurrent.TimeUnit)}
+     */
+    public final synchronized void setFaults(double failureRate, double stallRate) {
+        if (!(failureRate >= 0 && stallRate >= 0 && failureRate + stallRate <= 1)) {
+            throw new IllegalArgumentException("Fault rates must be non negative and sum up to 1 at most");
+        }
+        this.failureRate = failureRate;
+        this.stallRate = stallRate;
+    }
+    
+    /**
+     * @return the number of maneuvers received
+     */
+    public final synchronized long getManeuverCount() {
+        return maneuvers;
+    }
+    
+    /**
+     * @return the number of maneuvers failed, injected or for lack of journey
+     */
+    public final synchronized long getFailureCount() {
+        return failures;
+    }
+    
+    /**
+     * @return the number of maneuvers that will never complete
+     */
+    public final synchronized long getStallCount() {
+        return stalls;
+    }
+    
+    private Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getDeclaringClass() == Object.class) {
+            return objectMethod(proxy, method, args, toString());
+        }
+        if ("getData".equals(method.getName())) {
+            final CompletableFuture<IDroneData> data = new CompletableFuture<>();
+            clock.schedule(nextLatency(), () -> data.complete(droneData));
+            return data;
+        }
+        if (args == null || args.length != 2 || !(args[0] instanceof Number) || !(args[1] instanceof Number)) {
+            throw new UnsupportedOperationException("Not simulated: " + method.getName());
+        }
+        return maneuver(method.getName(), ((Number) args[0]).longValue(), (Number) args[1]);
+    }
+    
+    private static Object objectMethod(Object proxy, Method method, Object[] args, String description) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return description;
+        }
+    }
+    
+    private synchronized long nextLatency() {
+        return jitter == 0 ? latency : latency + (long) (random.nextDouble() * (jitter + 1));
+    }
+    
+    private CompletableFuture<Void> maneuver(final String name, final long speed, Number arg) {
+        final boolean rotation = ROTATE.equals(name);
+        final double degrees = arg.doubleValue();
+        final long duration = Math.abs(arg instanceof Double || arg instanceof Float ? (long) degrees : arg.longValue());
+        // Same distances of the planning: the radial distance for rotations, speed by duration for anything else
+        final long distance = rotation ? (long) Math.ceil((double) speed * Math.abs(degrees) / 1000.0) : speed * duration / 1000;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final long delay;
+        final SimulatedFaultException fault;
+        synchronized (this) {
+            maneuvers++;
+            delay = nextLatency();
+            double draw = failureRate + stallRate > 0 ? random.nextDouble() : 1;
+            if (draw < stallRate) {
+                stalls++;
+                return result;
+            }
+            long cost = energyModel.cost(name, speed, distance, payload, droneData);
+            if (draw < stallRate + failureRate) {
+                failures++;
+                fault = new SimulatedFaultException(Helper.stringFormat("Injected failure of {0} {1} {2}", name, speed, arg));
+            }
+            else if (consumedJourney + cost > droneData.getTotalJourney()) {
+                failures++;
+                fault = new SimulatedFaultException(Helper.stringFormat("Journey ran out: {0} {1} {2} needs {3} cm, {4} cm left", name, speed, arg, cost, droneData.getTotalJourney() - consumedJourney));
+            }
+            else {
+                fault = null;
+                // Reserved at once, so that overlapping maneuvers cannot spend the same journey
+                consumedJourney += cost;
+            }
+        }
+        if (fault != null) {
+            clock.schedule(delay, () -> result.completeExceptionally(fault));
+            return result;
+        }
+        clock.schedule(delay + duration, () -> {
+            move(name, distance, degrees);
+            result.complete(null);
+        });
+        return result;
+    }
+    
+    private synchronized void move(String name, long distance, double degrees) {
+        if (UP.equals(name)) {
+            height += distance;
+        }
+        else if (DOWN.equals(name)) {
+            height -= distance;
+        }
+        else if (ROTATE.equals(name)) {
+            heading = (heading + degrees) % 360;
+            if (heading < 0) {
+                heading += 360;
+            }
+        }
+        else if (FORWARD.equals(name)) {
+            // Along the heading on the latitude longitude plane, as the planning measures the angles
+            double radians = Math.toRadians(heading);
+            double sin = Math.sin(radians);
+            double cos = Math.cos(radians);
+            double parallel = Math.cos(Math.toRadians(latitude));
+            double step = distance / (DEGREE_LENGTH * Math.sqrt(sin * sin + cos * cos * parallel * parallel));
+            latitude += step * sin;
+            longitude += step * cos;
+        }
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "SimulatedDrone [position=" + latitude + "," + longitude + "," + height + ", heading=" + heading + ", consumedJourney=" + consumedJourney + ", maneuvers=" + maneuvers + "]";
+    }
+}
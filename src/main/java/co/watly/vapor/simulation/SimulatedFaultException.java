@@ -0,0 +1,26 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.simulation;
+
+/**
+ * Thrown by a {@link SimulatedDrone} maneuver that failed, by fault injection or because the journey of the drone ran out.
+ * It carries no stack trace, as it would only show the clock running the failing maneuver
+ * @author Marco Vasapollo
+ *
+ */
+public class SimulatedFaultException extends RuntimeException {
+    
+    private static final long serialVersionUID = 2318804736612905873L;
+    
+    public SimulatedFaultException(String message) {
+        super(message, null, true, false);
+    }
+}
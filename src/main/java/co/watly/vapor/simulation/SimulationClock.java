@@ -0,0 +1,156 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.simulation;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Discrete-event clock of a simulation: time is virtual, in milliseconds, and jumps from an event to the next one,
+ * so hours of flight are simulated in the time needed to run their events.
+ * Events at the same time run in scheduling order, one at a time, on the thread running the clock.
+ * A simulation is deterministic as long as everything is scheduled from that thread, e.g. flights started by events;
+ * events scheduled by other threads are taken at the virtual time they arrive
+ * @author Marco Vasapollo
+ *
+ */
+public final class SimulationClock {
+    
+    // Guarded by this
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long now;
+    private long sequence;
+    private long processedEvents;
+    
+    /**
+     * @return the virtual time, in milliseconds from the start of the simulation
+     */
+    public final synchronized long now() {
+        return now;
+    }
+    
+    /**
+     * Runs the given action after the given virtual delay
+     * @param delay in milliseconds, negative delays are taken as 0
+     */
+    public final synchronized void schedule(long delay, Runnable action) {
+        events.add(new Event(now + Math.max(0, delay), sequence++, action));
+        notifyAll();
+    }
+    
+    /**
+     * @param delay in milliseconds
+     * @return a future completed, on the clock, after the given virtual delay
+     */
+    public final CompletableFuture<Void> after(long delay) {
+        final CompletableFuture<Void> elapsed = new CompletableFuture<>();
+        schedule(delay, () -> elapsed.complete(null));
+        return elapsed;
+    }
+    
+    /**
+     * Moves the time to the next event and runs it. A failing event does not stop the clock
+     * @return false if no event was pending
+     */
+    public final boolean step() {
+        Event event;
+        synchronized (this) {
+            event = events.poll();
+            if (event == null) {
+                return false;
+            }
+            now = event.time;
+            processedEvents++;
+        }
+        try {
+            event.action.run();
+        }
+        catch (RuntimeException e) {
+            // The action owns its failures, as a drone owns the failures of its maneuvers
+        }
+        return true;
+    }
+    
+    /**
+     * Runs the events until none is pending, including the ones scheduled meanwhile
+     * @return the virtual time reached
+     */
+    public final long runUntilIdle() {
+        while (step()) {
+            // Nothing else to do
+        }
+        return now();
+    }
+    
+    /**
+     * Runs the events until the given future completes, waiting for other threads to schedule new ones when none is pending,
+     * e.g. while flights are being planned on the lanes of a fleet.
+     * Returns early if the calling thread is interrupted, keeping its interrupt status
+     * @return the virtual time reached
+     */
+    public final long run(CompletableFuture<?> until) {
+        until.whenComplete((v, e) -> wake());
+        while (!until.isDone()) {
+            if (step()) {
+                continue;
+            }
+            synchronized (this) {
+                while (events.isEmpty() && !until.isDone()) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return now;
+                    }
+                }
+            }
+        }
+        return now();
+    }
+    
+    private synchronized void wake() {
+        notifyAll();
+    }
+    
+    /**
+     * @return the number of events run so far
+     */
+    public final synchronized long getProcessedEvents() {
+        return processedEvents;
+    }
+    
+    /**
+     * @return the number of events waiting for their time
+     */
+    public final synchronized int getPendingEvents() {
+        return events.size();
+    }
+    
+    private static final class Event implements Comparable<Event> {
+        
+        private final long time;
+        private final long sequence;
+        private final Runnable action;
+        
+        private Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+        
+        @Override
+        public int compareTo(Event other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+/**
+ * Forwards everything to many sinks, e.g. a {@link MetricsTelemetry} and a {@link RingBufferTelemetry}
+ * @author Marco Vasapollo
+ *
+ */
+public class CompositeTelemetry implements Telemetry {
+    
+    private final Telemetry[] sinks;
+    private final boolean enabled;
+    private final boolean tracing;
+    
+    public CompositeTelemetry(Telemetry... sinks) {
+        this.sinks = sinks.clone();
+        boolean anyEnabled = false;
+        boolean anyTracing = false;
+        for (Telemetry sink : this.sinks) {
+            anyEnabled |= sink.isEnabled();
+            anyTracing |= sink.isTracing();
+        }
+        this.enabled = anyEnabled;
+        this.tracing = anyTracing;
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    @Override
+    public boolean isTracing() {
+        return tracing;
+    }
+    
+    @Override
+    public void record(Phase phase, long nanos) {
+        for (Telemetry sink : sinks) {
+            sink.record(phase, nanos);
+        }
+    }
+    
+    @Override
+    public void measure(Measure measure, long value) {
+        for (Telemetry sink : sinks) {
+            sink.measure(measure, value);
+        }
+    }
+    
+    @Override
+    public void count(Event event) {
+        for (Telemetry sink : sinks) {
+            sink.count(event);
+        }
+    }
+    
+    @Override
+    public void trace(Event event, Object... details) {
+        for (Telemetry sink : sinks) {
+            if (sink.isTracing()) {
+                sink.trace(event, details);
+            }
+            else {
+                sink.count(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import co.watly.vapor.util.Template;
+
+/**
+ * Debug sink printing every traced event, as the controller used to do on the standard output.
+ * The print stream is synchronized, so this sink should not be used under load, 
+ * or only behind a {@link RingBufferTelemetry}
+ * @author Marco Vasapollo
+ *
+ */
+public class ConsoleTelemetry implements Telemetry {
+    
+    private static final Template[] TEMPLATES = new Template[Event.values().length];
+    
+    static {
+        for (Event event : Event.values()) {
+            TEMPLATES[event.ordinal()] = Template.compile(event.getTemplate());
+        }
+    }
+    
+    private final PrintStream out;
+    
+    public ConsoleTelemetry() {
+        this(System.out);
+    }
+    
+    public ConsoleTelemetry(PrintStream out) {
+        this.out = out;
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+    
+    @Override
+    public boolean isTracing() {
+        return true;
+    }
+    
+    @Override
+    public void record(Phase phase, long nanos) {
+    }
+    
+    @Override
+    public void measure(Measure measure, long value) {
+    }
+    
+    @Override
+    public void count(Event event) {
+    }
+    
+    @Override
+    public void trace(Event event, Object... details) {
+        Object[] values = details;
+        if (details != null) {
+            values = new Object[details.length];
+            for (int i = 0; i < details.length; i++) {
+                values[i] = details[i] instanceof Object[] ? Arrays.toString((Object[]) details[i]) : details[i];
+            }
+        }
+        out.println(TEMPLATES[event.ordinal()].format(values));
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+/**
+ * The counted events of planning and flying.
+ * Each event has the template used to render its details, e.g. by the {@link ConsoleTelemetry}
+ * @author Marco Vasapollo
+ *
+ */
+public enum Event {
+    
+    ITINERARY_RECEIVED("New Itinerary to elaborate:\n\t{0}\n"),
+    
+    SPEEDS_CALCULATED("With a load of {0} hg, drone's min speed can be {1} cm/sec, while max speed can be {2} cm/sec"),
+    
+    FLIGHT_HEIGHT_CALCULATED("Drone flight height will be {0} cm from the sea level"),
+    
+    ROUTE_CALCULATED("Total itinerary is {0} cm"),
+    
+    DSL_CONVERTED("DSL generated from Itinerary:\n\t{0}\n"),
+    
+    COMMANDS_COMPILED("Drone Commands compiled from the Itinerary:\n\t{0}\n"),
+    
+    COMMANDS_REPLANNED("Drone Commands replanned from the current position:\n\t{0}\n"),
+    
+    COMMANDS_GENERATED("Drone Commands generated from the DSL:\n\t{0}\n"),
+    
+    PLAN_OPTIMIZED("Plan optimized from {0} to {1} commands, saving {2} ms of flight and {3} cm of journey"),
+    
+    PLAN_FAILED("Planning failed: {0}"),
+    
+    FLIGHT_STARTED("Fly command fired, executing drone commands:\n\t{0}\n"),
+    
+    STREAMED_FLIGHT_STARTED("Fly command fired, executing streamed drone commands\n"),
+    
+    FLIGHT_COMPLETED("All commands executed successfully! Drone landed to the end destination"),
+    
+    FLIGHT_FAILED("Flight failed: {0}"),
+    
+    FLIGHT_ABORTED("Flight aborted: {0}"),
+    
+    EXECUTOR_SATURATED("{0} is saturated, {1} threads busy and {2} tasks queued: the task is handled by {3}");
+    
+    private final String template;
+    
+    private Event(String template) {
+        this.template = template;
+    }
+    
+    public final String getTemplate() {
+        return template;
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+/**
+ * The measured values of planning and flying, other than durations of phases
+ * @author Marco Vasapollo
+ *
+ */
+public enum Measure {
+    
+    /**
+     * Flight time saved by the optimization of a plan, in milliseconds
+     */
+    FLIGHT_TIME_SAVED,
+    
+    /**
+     * Journey saved by the optimization of a plan, in cm
+     */
+    JOURNEY_SAVED,
+    
+    /**
+     * Commands saved by the optimization of a plan
+     */
+    COMMANDS_SAVED,
+    
+    /**
+     * Time a planning task waited in the queue of its executor, in microseconds
+     */
+    PLANNING_QUEUE_WAIT,
+    
+    /**
+     * Time a drone call waited in the queue of its executor, in microseconds
+     */
+    DRONE_QUEUE_WAIT
+}
@@ -0,0 +1,120 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory counters, phase and measure histograms, cheap enough to stay enabled in production.
+ * It does not trace: traced events are only counted
+ * @author Marco Vasapollo
+ *
+ */
+public class MetricsTelemetry implements Telemetry {
+    
+    private final LongAdder[] counters = new LongAdder[Event.values().length];
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private final LatencyHistogram[] measures = new LatencyHistogram[Measure.values().length];
+    
+    public MetricsTelemetry() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < measures.length; i++) {
+            measures[i] = new LatencyHistogram();
+        }
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+    
+    @Override
+    public boolean isTracing() {
+        return false;
+    }
+    
+    @Override
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+    
+    @Override
+    public void measure(Measure measure, long value) {
+        measures[measure.ordinal()].record(value);
+    }
+    
+    @Override
+    public void count(Event event) {
+        counters[event.ordinal()].increment();
+    }
+    
+    @Override
+    public void trace(Event event, Object... details) {
+        count(event);
+    }
+    
+    /**
+     * @return how many times the given event occurred
+     */
+    public final long getCount(Event event) {
+        return counters[event.ordinal()].sum();
+    }
+    
+    /**
+     * @return the durations of the given phase, in nanoseconds
+     */
+    public final LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+    
+    /**
+     * @return the values of the given measure, their total is {@link LatencyHistogram#getTotal()}
+     */
+    public final LatencyHistogram getHistogram(Measure measure) {
+        return measures[measure.ordinal()];
+    }
+    
+    /**
+     * Drops every counter, recorded duration and measure
+     */
+    public final void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        for (LatencyHistogram histogram : measures) {
+            histogram.reset();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("MetricsTelemetry [");
+        for (Event event : Event.values()) {
+            out.append(event).append('=').append(getCount(event)).append(", ");
+        }
+        for (Phase phase : Phase.values()) {
+            out.append(phase).append('=').append(getHistogram(phase)).append(", ");
+        }
+        for (Measure measure : Measure.values()) {
+            out.append(measure).append('=').append(getHistogram(measure)).append(", ");
+        }
+        out.setLength(out.length() - 2);
+        return out.append(']').toString();
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+/**
+ * See {@link Telemetry#NONE}
+ * @author Marco Vasapollo
+ *
+ */
+final class NoTelemetry implements Telemetry {
+    
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+    
+    @Override
+    public boolean isTracing() {
+        return false;
+    }
+    
+    @Override
+    public void record(Phase phase, long nanos) {
+    }
+    
+    @Override
+    public void measure(Measure measure, long value) {
+    }
+    
+    @Override
+    public void count(Event event) {
+    }
+    
+    @Override
+    public void trace(Event event, Object... details) {
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+/**
+ * The timed phases of planning and flying
+ * @author Marco Vasapollo
+ *
+ */
+public enum Phase {
+    
+    /**
+     * Itinerary to DSL conversion
+     */
+    CONVERT,
+    
+    /**
+     * Itinerary to Drone Commands compilation
+     */
+    COMPILE,
+    
+    /**
+     * Re-plan of the rest of a flight from the current position of the drone
+     */
+    REPLAN,
+    
+    /**
+     * Optimization of a compiled, generated or re-planned plan, see {@link co.watly.vapor.controller.PlanOptimizer}
+     */
+    OPTIMIZE,
+    
+    /**
+     * DSL to JSON generation by the Vapor Generator
+     */
+    GENERATE,
+    
+    /**
+     * JSON to Drone Commands decoding
+     */
+    DECODE,
+    
+    /**
+     * Execution of a single Drone Command, from issue to completion
+     */
+    EXECUTE,
+    
+    /**
+     * A whole flight, from the fly command to the landing
+     */
+    FLIGHT
+}
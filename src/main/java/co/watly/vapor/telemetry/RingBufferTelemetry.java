@@ -0,0 +1,230 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous sink for detailed tracing.
+ * Callers only write into a preallocated bounded ring buffer, without locks and without waiting,
+ * while a single daemon thread drains it into the downstream sink (e.g. a {@link ConsoleTelemetry}).
+ * When the buffer is full new records are dropped and counted, so a slow downstream never slows down planning or flying
+ * @author Marco Vasapollo
+ *
+ */
+public class RingBufferTelemetry implements Telemetry, AutoCloseable {
+    
+    private static final AtomicInteger DRAINER_COUNTER = new AtomicInteger();
+    
+    // How long the drainer sleeps when the buffer is empty
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private static final byte RECORD = 0;
+    private static final byte COUNT = 1;
+    private static final byte TRACE = 2;
+    private static final byte MEASURE = 3;
+    
+    private final Telemetry downstream;
+    private final boolean enabled;
+    private final boolean tracing;
+    private final int mask;
+    
+    // A slot can be written when its sequence equals the claiming position, and read when it equals position + 1
+    private final AtomicLongArray sequences;
+    private final byte[] kinds;
+    private final Phase[] phases;
+    private final Event[] events;
+    private final Measure[] measures;
+    // Durations of the records, values of the measures
+    private final long[] durations;
+    private final Object[][] details;
+    
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    
+    // Only touched by the drainer, guarded by this
+    private long tail;
+    
+    private final Thread drainer;
+    private volatile boolean closed;
+    
+    /**
+     * @param capacity max number of records waiting to be drained, rounded up to a power of two
+     * @param downstream the sink records are drained into
+     */
+    public RingBufferTelemetry(int capacity, Telemetry downstream) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Ring buffer capacity must be between 1 and 2^30, got " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.downstream = downstream;
+        this.enabled = downstream.isEnabled();
+        this.tracing = downstream.isTracing();
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.kinds = new byte[size];
+        this.phases = new Phase[size];
+        this.events = new Event[size];
+        this.measures = new Measure[size];
+        this.durations = new long[size];
+        this.details = new Object[size][];
+        this.drainer = new Thread(this::drainLoop, "vapor-telemetry-" + DRAINER_COUNTER.incrementAndGet());
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    @Override
+    public boolean isTracing() {
+        return tracing;
+    }
+    
+    @Override
+    public void record(Phase phase, long nanos) {
+        publish(RECORD, phase, null, null, nanos, null);
+    }
+    
+    @Override
+    public void measure(Measure measure, long value) {
+        publish(MEASURE, null, null, measure, value, null);
+    }
+    
+    @Override
+    public void count(Event event) {
+        publish(COUNT, null, event, null, 0, null);
+    }
+    
+    @Override
+    public void trace(Event event, Object... details) {
+        publish(TRACE, null, event, null, 0, details);
+    }
+    
+    /**
+     * @return the number of records lost because the buffer was full or the sink closed
+     */
+    public final long getDropped() {
+        return dropped.get();
+    }
+    
+    /**
+     * Forwards the buffered records to the downstream sink from the calling thread
+     * @return the number of forwarded records
+     */
+    public final synchronized int drain() {
+        int drained = 0;
+        while (true) {
+            int slot = (int) (tail & mask);
+            if (sequences.get(slot) != tail + 1) {
+                return drained;
+            }
+            byte kind = kinds[slot];
+            Phase phase = phases[slot];
+            Event event = events[slot];
+            Measure measure = measures[slot];
+            long duration = durations[slot];
+            Object[] values = details[slot];
+            details[slot] = null;
+            // Hands the slot back to the writers
+            sequences.set(slot, tail + mask + 1);
+            tail++;
+            drained++;
+            try {
+                if (kind == RECORD) {
+                    downstream.record(phase, duration);
+                }
+                else if (kind == COUNT) {
+                    downstream.count(event);
+                }
+                else if (kind == MEASURE) {
+                    downstream.measure(measure, duration);
+                }
+                else {
+                    downstream.trace(event, values);
+                }
+            }
+            catch (RuntimeException e) {
+                // A failing sink must not stop the draining
+            }
+        }
+    }
+    
+    /**
+     * Stops the drainer thread, after forwarding the records still in the buffer
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+    }
+    
+    private void publish(byte kind, Phase phase, Event event, Measure measure, long duration, Object[] values) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return;
+        }
+        long position = head.get();
+        while (true) {
+            int slot = (int) (position & mask);
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    kinds[slot] = kind;
+                    phases[slot] = phase;
+                    events[slot] = event;
+                    measures[slot] = measure;
+                    durations[slot] = duration;
+                    details[slot] = values;
+                    // Publishes the slot to the drainer
+                    sequences.set(slot, position + 1);
+                    return;
+                }
+                position = head.get();
+            }
+            else if (difference < 0) {
+                // Full, the drainer is still behind of a whole lap
+                dropped.incrementAndGet();
+                return;
+            }
+            else {
+                position = head.get();
+            }
+        }
+    }
+    
+    private void drainLoop() {
+        while (!closed) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+    }
+}
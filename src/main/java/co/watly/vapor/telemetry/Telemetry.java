@@ -0,0 +1,63 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+/**
+ * Receives timings, measures, counters and trace events from the controllers.
+ * Call sites check {@link #isEnabled()} before reading the clock and {@link #isTracing()} before building 
+ * any trace detail, so a disabled telemetry costs a couple of virtual calls and nothing else.
+ * Implementations must be thread safe and must not block the caller
+ * @author Marco Vasapollo
+ *
+ */
+public interface Telemetry {
+    
+    /**
+     * The disabled telemetry, used by default
+     */
+    Telemetry NONE = new NoTelemetry();
+    
+    /**
+     * @return true if phase timings and counters are wanted
+     */
+    boolean isEnabled();
+    
+    /**
+     * @return true if the details of the events are wanted
+     */
+    boolean isTracing();
+    
+    /**
+     * Records how long a phase took
+     * @param phase the timed phase
+     * @param nanos the phase duration, in nanoseconds
+     */
+    void record(Phase phase, long nanos);
+    
+    /**
+     * Records a measured value
+     * @param measure what has been measured
+     * @param value the value, in the unit of the measure
+     */
+    void measure(Measure measure, long value);
+    
+    /**
+     * Counts an occurrence of the given event
+     */
+    void count(Event event);
+    
+    /**
+     * Counts an occurrence of the given event, together with its details
+     * @param event the event
+     * @param details the values of the event template
+     */
+    void trace(Event event, Object... details);
+}
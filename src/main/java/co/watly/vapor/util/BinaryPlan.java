@@ -0,0 +1,235 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.util;
+
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import co.watly.vapor.data.DroneCommand;
+
+/**
+ * Compact binary format for Drone Command plans, a denser and faster alternative to JSON.
+ * 
+ * Layout, multi-byte fixed values are big endian:
+ * <pre>
+ * magic "VPLN"          4 bytes
+ * version               1 byte
+ * maneuver table hash   4 bytes, see {@link DroneCommandMapper#getTableFingerprint()}
+ * body length           4 bytes
+ * body:
+ *   command count       varint
+ *   each command:
+ *     opcode and type   varint, opcode &lt;&lt; 1 | 1 if the argument is decimal
+ *     speed             zig-zag varint
+ *     argument          zig-zag varint if integral, 8 bytes IEEE 754 if decimal
+ * CRC32                 4 bytes, of everything above
+ * </pre>
+ * Encoding and decoding work straight on the buffer: the only objects created are the decoded commands.
+ * Position and limit are moved through {@link Buffer}, so that the class links on Java 8 even when built by a newer JDK
+ * @author Marco Vasapollo
+ *
+ */
+public final class BinaryPlan {
+    
+    private static final int MAGIC = 0x56504C4E;
+    
+    private static final byte VERSION = 1;
+    
+    // magic, version, table hash, body length
+    private static final int HEADER_SIZE = 4 + 1 + 4 + 4;
+    
+    private static final int CHECKSUM_SIZE = 4;
+    
+    // opcode, speed and integral argument take at least one byte each
+    private static final int MIN_COMMAND_SIZE = 3;
+    
+    private BinaryPlan() {
+    }
+    
+    /**
+     * @return the exact number of bytes the given plan is encoded into
+     * @throws IllegalArgumentException if a command is not a maneuver of the {@link co.watly.vapor.model.IDrone}
+     */
+    public static final int encodedSize(DroneCommand[] droneCommands) {
+        return HEADER_SIZE + bodySize(droneCommands) + CHECKSUM_SIZE;
+    }
+    
+    /**
+     * Encodes the given plan into a new heap buffer, ready to be read
+     */
+    public static final ByteBuffer encode(DroneCommand[] droneCommands) {
+        ByteBuffer out = ByteBuffer.allocate(encodedSize(droneCommands));
+        encode(droneCommands, out);
+        ((Buffer) out).flip();
+        return out;
+    }
+    
+    /**
+     * Encodes the given plan at the current position of the given buffer, moving it after the plan
+     * @throws BufferOverflowException if the plan does not fit the buffer, see {@link #encodedSize(DroneCommand[])}
+     */
+    public static final void encode(DroneCommand[] droneCommands, ByteBuffer out) {
+        final int bodySize = bodySize(droneCommands);
+        if (out.remaining() < HEADER_SIZE + bodySize + CHECKSUM_SIZE) {
+            throw new BufferOverflowException();
+        }
+        final int start = out.position();
+        out.putInt(MAGIC).put(VERSION).putInt(DroneCommandMapper.getTableFingerprint()).putInt(bodySize);
+        putVarint(out, droneCommands.length);
+        for (DroneCommand droneCommand : droneCommands) {
+            int opcode = DroneCommandMapper.opcode(droneCommand.getName());
+            putVarint(out, opcode << 1 | (droneCommand.isDecimal() ? 1 : 0));
+            putVarint(out, zigZag(droneCommand.getSpeed()));
+            if (droneCommand.isDecimal()) {
+                out.putDouble(droneCommand.getArgAsDouble());
+            }
+            else {
+                putVarint(out, zigZag(droneCommand.getArgAsLong()));
+            }
+        }
+        out.putInt(checksum(out, start, out.position()));
+    }
+    
+    /**
+     * Decodes the plan at the current position of the given buffer, moving it after the plan
+     * @throws IllegalArgumentException if the buffer does not hold a valid plan, 
+     * or the plan was encoded with a different maneuver table. The buffer position is left unchanged
+     */
+    public static final DroneCommand[] decode(ByteBuffer in) {
+        final int start = in.position();
+        try {
+            return decode(in, start);
+        }
+        catch (IllegalArgumentException e) {
+            ((Buffer) in).position(start);
+            throw e;
+        }
+    }
+    
+    private static final DroneCommand[] decode(ByteBuffer in, int start) {
+        if (in.remaining() < HEADER_SIZE + CHECKSUM_SIZE) {
+            throw new IllegalArgumentException("Truncated binary plan");
+        }
+        if (in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a binary plan");
+        }
+        byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary plan version: " + version);
+        }
+        if (in.getInt() != DroneCommandMapper.getTableFingerprint()) {
+            throw new IllegalArgumentException("Binary plan encoded for a different drone command table");
+        }
+        final int bodySize = in.getInt();
+        if (bodySize < 1 || bodySize > in.remaining() - CHECKSUM_SIZE) {
+            throw new IllegalArgumentException("Truncated binary plan");
+        }
+        final int end = start + HEADER_SIZE + bodySize;
+        if (in.getInt(end) != checksum(in, start, end)) {
+            throw new IllegalArgumentException("Corrupted binary plan, checksum mismatch");
+        }
+        final int savedLimit = in.limit();
+        // Reads past the body are reported as underflows
+        ((Buffer) in).limit(end).position(start + HEADER_SIZE);
+        try {
+            long count = getVarint(in);
+            if (count > bodySize / MIN_COMMAND_SIZE) {
+                throw new IllegalArgumentException("Corrupted binary plan, " + count + " commands in " + bodySize + " bytes");
+            }
+            DroneCommand[] droneCommands = new DroneCommand[(int) count];
+            for (int i = 0; i < droneCommands.length; i++) {
+                long opcodeAndType = getVarint(in);
+                String name = DroneCommandMapper.command((int) (opcodeAndType >>> 1));
+                long speed = unZigZag(getVarint(in));
+                if ((opcodeAndType & 1) == 1) {
+                    droneCommands[i] = new DroneCommand(name, speed, in.getDouble());
+                }
+                else {
+                    droneCommands[i] = new DroneCommand(name, speed, unZigZag(getVarint(in)));
+                }
+            }
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException("Corrupted binary plan, " + in.remaining() + " bytes after the last command");
+            }
+            ((Buffer) in).limit(savedLimit).position(end + CHECKSUM_SIZE);
+            return droneCommands;
+        }
+        catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Corrupted binary plan, truncated command", e);
+        }
+        finally {
+            ((Buffer) in).limit(savedLimit);
+        }
+    }
+    
+    private static final int bodySize(DroneCommand[] droneCommands) {
+        int size = varintSize(droneCommands.length);
+        for (DroneCommand droneCommand : droneCommands) {
+            size += varintSize(DroneCommandMapper.opcode(droneCommand.getName()) << 1);
+            size += varintSize(zigZag(droneCommand.getSpeed()));
+            size += droneCommand.isDecimal() ? 8 : varintSize(zigZag(droneCommand.getArgAsLong()));
+        }
+        return size;
+    }
+    
+    /**
+     * CRC32 of the bytes between the given positions, leaving position and limit as they were
+     */
+    private static final int checksum(ByteBuffer buffer, int from, int to) {
+        final int position = buffer.position();
+        final int limit = buffer.limit();
+        CRC32 crc = new CRC32();
+        ((Buffer) buffer).limit(to).position(from);
+        crc.update(buffer);
+        ((Buffer) buffer).limit(limit).position(position);
+        return (int) crc.getValue();
+    }
+    
+    private static final long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    private static final long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    private static final int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+    
+    private static final void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+    
+    private static final long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Corrupted binary plan, varint longer than 10 bytes");
+    }
+}
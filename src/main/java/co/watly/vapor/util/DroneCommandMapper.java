@@ -10,49 +10,261 @@
  */
 package co.watly.vapor.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
+import co.watly.vapor.data.DroneCommand;
 import co.watly.vapor.model.IDrone;
 
 /**
  * Utility class that map each {@link DroneCommand} into {@link IDrone} methods.
- * This avoids a lot of headaches in synchronizing Drone Model and DSL Grammar updates with ugly and boring if/else sentences
+ * This avoids a lot of headaches in synchronizing Drone Model and DSL Grammar updates with ugly and boring if/else sentences.
+ * The dispatch table is built once: every maneuver gets a precompiled {@link MethodHandle} 
+ * that receives its argument as a primitive long or double, so no reflection happens per command.
+ * Maneuvers are also numbered by name, these opcodes are used by the {@link BinaryPlan} format
  * @author Marco Vasapollo
  *
  */
 public class DroneCommandMapper {
     
-    private static final Map<String, Method> COMMANDS = new HashMap<>();
-    private static final Map<String, Class<?>> SECOND_PARAMS = new HashMap<>();
+    private static final Map<String, Maneuver> COMMANDS = new HashMap<>();
+    
+    // Maneuver names sorted, the index is the opcode
+    private static final String[] OPCODE_NAMES;
+    
+    private static final Map<String, Integer> OPCODES = new HashMap<>();
+    
+    // Changes whenever a maneuver is added, removed or changes its argument type
+    private static final int TABLE_FINGERPRINT;
     
     static {
-        try {
-            Method[] methods = IDrone.class.getDeclaredMethods();
-            for (Method method : methods) {
-                String name = method.getName();
-                COMMANDS.put(name, method);
-                try {
-                    SECOND_PARAMS.put(name, method.getParameterTypes()[1]);
-                }
-                catch(Exception e) {   
-                }
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (Method method : IDrone.class.getDeclaredMethods()) {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            // Maneuvers receive the speed and a numeric argument (duration, degrees...)
+            if (parameterTypes.length != 2 || !isNumeric(parameterTypes[0]) || !isNumeric(parameterTypes[1]) || !CompletableFuture.class.isAssignableFrom(method.getReturnType())) {
+                continue;
+            }
+            try {
+                MethodHandle handle = lookup.unreflect(method);
+                COMMANDS.put(method.getName(), parameterTypes[1] == double.class || parameterTypes[1] == float.class ? new DecimalManeuver(handle) : new IntegralManeuver(handle));
             }
+            catch (IllegalAccessException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+        OPCODE_NAMES = COMMANDS.keySet().toArray(new String[COMMANDS.size()]);
+        Arrays.sort(OPCODE_NAMES);
+        StringBuilder table = new StringBuilder();
+        for (int i = 0; i < OPCODE_NAMES.length; i++) {
+            OPCODES.put(OPCODE_NAMES[i], i);
+            table.append(OPCODE_NAMES[i]).append(COMMANDS.get(OPCODE_NAMES[i]) instanceof DecimalManeuver ? ":d;" : ":i;");
+        }
+        TABLE_FINGERPRINT = table.toString().hashCode();
+    }
+    
+    private static final boolean isNumeric(Class<?> type) {
+        return type.isPrimitive() && type != boolean.class && type != char.class && type != void.class;
+    }
+    
+    /**
+     * @return true if the given command is a maneuver of the {@link IDrone}
+     */
+    public static final boolean isSupported(String command) {
+        return COMMANDS.containsKey(command);
+    }
+
+    /**
+     * @return the shared instance of the given command name, so that plans do not hold a copy of it per command
+     */
+    public static final String intern(String command) {
+        Integer opcode = OPCODES.get(command);
+        return opcode == null ? command.intern() : OPCODE_NAMES[opcode];
+    }
+    
+    /**
+     * @return the opcode of the given maneuver
+     * @throws IllegalArgumentException if the command is not a maneuver of the {@link IDrone}
+     */
+    public static final int opcode(String command) {
+        Integer opcode = OPCODES.get(command);
+        if (opcode == null) {
+            throw new IllegalArgumentException("Unknown drone command: " + command);
         }
-        catch (Exception e) {
-            e.printStackTrace();
+        return opcode;
+    }
+    
+    /**
+     * @return the name of the maneuver with the given opcode
+     * @throws IllegalArgumentException if no maneuver has that opcode
+     */
+    public static final String command(int opcode) {
+        if (opcode < 0 || opcode >= OPCODE_NAMES.length) {
+            throw new IllegalArgumentException("Unknown drone command opcode: " + opcode);
         }
+        return OPCODE_NAMES[opcode];
+    }
+    
+    /**
+     * @return a hash of the maneuver table, plans encoded with a different table cannot be decoded
+     */
+    public static final int getTableFingerprint() {
+        return TABLE_FINGERPRINT;
     }
 
-    @SuppressWarnings("unchecked")
     public static final CompletableFuture<Void> invoke(String command, long speed, Number secondParameter, IDrone drone) {
+        Maneuver maneuver = maneuver(command);
+        if (secondParameter == null) {
+            throw new IllegalArgumentException("Missing argument for drone command: " + command);
+        }
         try {
-            return (CompletableFuture<Void>) COMMANDS.get(command).invoke(drone, speed, Number.class.getMethod(SECOND_PARAMS.get(command).getSimpleName().toLowerCase() + "Value").invoke(secondParameter));
+            return maneuver.invoke(drone, speed, secondParameter);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    /**
+     * Invokes the given command reading its primitive argument, without boxing it
+     */
+    public static final CompletableFuture<Void> invoke(DroneCommand droneCommand, IDrone drone) {
+        Maneuver maneuver = maneuver(droneCommand.getName());
+        try {
+            return maneuver.invoke(drone, droneCommand);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
         }
-        catch (Exception e) {
-            throw new RuntimeException(e);
+    }
+    
+    /**
+     * Validates the given command and converts its argument ahead of time, 
+     * so that it can be issued later with no lookup nor conversion
+     * @throws IllegalArgumentException if the command is not a maneuver of the {@link IDrone}
+     */
+    public static final Function<IDrone, CompletableFuture<Void>> prepare(DroneCommand droneCommand) {
+        return maneuver(droneCommand.getName()).prepare(droneCommand);
+    }
+    
+    /**
+     * Unchecked exceptions are thrown as they are, checked ones are wrapped
+     */
+    private static final RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new RuntimeException(e);
+    }
+    
+    private static final Maneuver maneuver(String command) {
+        Maneuver maneuver = COMMANDS.get(command);
+        if (maneuver == null) {
+            throw new IllegalArgumentException("Unknown drone command: " + command);
+        }
+        return maneuver;
+    }
+    
+    /**
+     * A precompiled {@link IDrone} maneuver
+     */
+    private static abstract class Maneuver {
+        
+        protected final MethodHandle handle;
+        
+        private Maneuver(MethodHandle handle, Class<?> argType) {
+            // Conversion from the primitive argument to the real parameter type is done by the handle itself
+            this.handle = MethodHandles.explicitCastArguments(handle, MethodType.methodType(CompletableFuture.class, IDrone.class, long.class, argType));
+        }
+        
+        abstract CompletableFuture<Void> invoke(IDrone drone, long speed, Number arg) throws Throwable;
+        
+        abstract CompletableFuture<Void> invoke(IDrone drone, DroneCommand droneCommand) throws Throwable;
+        
+        abstract Function<IDrone, CompletableFuture<Void>> prepare(DroneCommand droneCommand);
+    }
+    
+    /**
+     * Maneuvers with an integral argument (e.g. duration in milliseconds)
+     */
+    private static final class IntegralManeuver extends Maneuver {
+        
+        private IntegralManeuver(MethodHandle handle) {
+            super(handle, long.class);
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        CompletableFuture<Void> invoke(IDrone drone, long speed, Number arg) throws Throwable {
+            return (CompletableFuture<Void>) handle.invokeExact(drone, speed, arg.longValue());
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        CompletableFuture<Void> invoke(IDrone drone, DroneCommand droneCommand) throws Throwable {
+            return (CompletableFuture<Void>) handle.invokeExact(drone, droneCommand.getSpeed(), droneCommand.getArgAsLong());
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        Function<IDrone, CompletableFuture<Void>> prepare(DroneCommand droneCommand) {
+            final long speed = droneCommand.getSpeed();
+            final long arg = droneCommand.getArgAsLong();
+            return drone -> {
+                try {
+                    return (CompletableFuture<Void>) handle.invokeExact(drone, speed, arg);
+                }
+                catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            };
+        }
+    }
+    
+    /**
+     * Maneuvers with a decimal argument (e.g. rotation degrees)
+     */
+    private static final class DecimalManeuver extends Maneuver {
+        
+        private DecimalManeuver(MethodHandle handle) {
+            super(handle, double.class);
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        CompletableFuture<Void> invoke(IDrone drone, long speed, Number arg) throws Throwable {
+            return (CompletableFuture<Void>) handle.invokeExact(drone, speed, arg.doubleValue());
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        CompletableFuture<Void> invoke(IDrone drone, DroneCommand droneCommand) throws Throwable {
+            return (CompletableFuture<Void>) handle.invokeExact(drone, droneCommand.getSpeed(), droneCommand.getArgAsDouble());
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        Function<IDrone, CompletableFuture<Void>> prepare(DroneCommand droneCommand) {
+            final long speed = droneCommand.getSpeed();
+            final double arg = droneCommand.getArgAsDouble();
+            return drone -> {
+                try {
+                    return (CompletableFuture<Void>) handle.invokeExact(drone, speed, arg);
+                }
+                catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            };
         }
     }
-}
\ No newline at end of file
+}
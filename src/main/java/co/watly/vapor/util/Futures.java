@@ -0,0 +1,97 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * CompletableFuture utilities missing in Java 8
+ * @author Marco Vasapollo
+ *
+ */
+public final class Futures {
+    
+    // Never runs user code: timeouts are handed over to another executor, cancelled ones are dropped at once
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "vapor-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+    
+    private Futures() {
+    }
+    
+    /**
+     * @return a future already failed with the given error
+     */
+    public static final <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+    
+    /**
+     * @return a future completed as the given one, or failed with the supplied error if the given one is not completed in time.
+     * The given future is left untouched, a timeout is reported on the common pool
+     */
+    public static final <T> CompletableFuture<T> within(CompletableFuture<T> future, long timeout, TimeUnit unit, Supplier<? extends Throwable> timeoutError) {
+        return within(future, timeout, unit, timeoutError, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * @param completer runs the dependents of a timeout, the common pool if it rejects them
+     * @return a future completed as the given one, or failed with the supplied error if the given one is not completed in time.
+     * The given future is left untouched
+     */
+    public static final <T> CompletableFuture<T> within(CompletableFuture<T> future, long timeout, TimeUnit unit, Supplier<? extends Throwable> timeoutError, Executor completer) {
+        if (future.isDone()) {
+            return future;
+        }
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final Runnable expire = () -> result.completeExceptionally(timeoutError.get());
+        final ScheduledFuture<?> timer = TIMER.schedule(() -> {
+            try {
+                completer.execute(expire);
+            }
+            catch (RejectedExecutionException e) {
+                ForkJoinPool.commonPool().execute(expire);
+            }
+        }, timeout, unit);
+        future.whenComplete((value, error) -> {
+            timer.cancel(false);
+            if (error == null) {
+                result.complete(value);
+            }
+            else {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Runs the given task after the given delay on the shared timer thread, the task must be short and non blocking
+     */
+    public static final ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return TIMER.schedule(task, delay, unit);
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.util;
+
+import java.util.List;
+
+import co.watly.vapor.data.Coordinates;
+
+/**
+ * Geodesic kernel over a set of points kept as primitive arrays (struct of arrays).
+ * The trigonometric terms of every point are computed once, so a distance costs a few multiplications plus one asin,
+ * and batch loops over the arrays are simple counted loops the JIT can unroll and vectorize.
+ * Distances use the haversine formula written with half-angle terms, which keeps full precision for close points.
+ * Bearings are true initial bearings: degrees clockwise from the north, in [0, 360)
+ * @author Marco Vasapollo
+ *
+ */
+public final class GeoPoints {
+    
+    // Same earth radius used by the controller, in cm
+    private static final double EARTH_RADIUS = 6371.0 * 100000.0;
+    
+    private final int size;
+    private final double[] sinHalfLatitudes;
+    private final double[] cosHalfLatitudes;
+    private final double[] sinHalfLongitudes;
+    private final double[] cosHalfLongitudes;
+    private final double[] sinLatitudes;
+    private final double[] cosLatitudes;
+    private final double[] sinLongitudes;
+    private final double[] cosLongitudes;
+    
+    /**
+     * @param latitudes in degrees
+     * @param longitudes in degrees, same length of latitudes
+     */
+    public GeoPoints(double[] latitudes, double[] longitudes) {
+        if (latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("Latitudes and longitudes must have the same length");
+        }
+        size = latitudes.length;
+        sinHalfLatitudes = new double[size];
+        cosHalfLatitudes = new double[size];
+        sinHalfLongitudes = new double[size];
+        cosHalfLongitudes = new double[size];
+        sinLatitudes = new double[size];
+        cosLatitudes = new double[size];
+        sinLongitudes = new double[size];
+        cosLongitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            double latitude = Math.toRadians(latitudes[i]);
+            double longitude = Math.toRadians(longitudes[i]);
+            sinHalfLatitudes[i] = Math.sin(latitude / 2);
+            cosHalfLatitudes[i] = Math.cos(latitude / 2);
+            sinHalfLongitudes[i] = Math.sin(longitude / 2);
+            cosHalfLongitudes[i] = Math.cos(longitude / 2);
+            sinLatitudes[i] = Math.sin(latitude);
+            cosLatitudes[i] = Math.cos(latitude);
+            sinLongitudes[i] = Math.sin(longitude);
+            cosLongitudes[i] = Math.cos(longitude);
+        }
+    }
+    
+    public static final GeoPoints of(List<Coordinates> coordinates) {
+        double[] latitudes = new double[coordinates.size()];
+        double[] longitudes = new double[coordinates.size()];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = coordinates.get(i).getLatitude();
+            longitudes[i] = coordinates.get(i).getLongitude();
+        }
+        return new GeoPoints(latitudes, longitudes);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * @return the distance between the points i and j, in cm
+     */
+    public double distance(int i, int j) {
+        return centralAngle(haversine(sinHalfLatitudes[i], cosHalfLatitudes[i], sinHalfLongitudes[i], cosHalfLongitudes[i], cosLatitudes[i], j)) * EARTH_RADIUS;
+    }
+    
+    /**
+     * Distances from the point from to every point
+     * @param out receives the distances in cm, at least as long as the points
+     */
+    public void distances(int from, double[] out) {
+        final double sinHalfLatitude = sinHalfLatitudes[from];
+        final double cosHalfLatitude = cosHalfLatitudes[from];
+        final double sinHalfLongitude = sinHalfLongitudes[from];
+        final double cosHalfLongitude = cosHalfLongitudes[from];
+        final double cosLatitude = cosLatitudes[from];
+        for (int j = 0; j < size; j++) {
+            out[j] = haversine(sinHalfLatitude, cosHalfLatitude, sinHalfLongitude, cosHalfLongitude, cosLatitude, j);
+        }
+        for (int j = 0; j < size; j++) {
+            out[j] = centralAngle(out[j]) * EARTH_RADIUS;
+        }
+    }
+    
+    /**
+     * Distances from the given location to every point
+     * @param out receives the distances in cm, at least as long as the points
+     */
+    public void distances(double latitude, double longitude, double[] out) {
+        scan(latitude, longitude, out);
+        for (int j = 0; j < size; j++) {
+            out[j] = centralAngle(out[j]) * EARTH_RADIUS;
+        }
+    }
+    
+    /**
+     * @return the index of the point nearest to the given location, -1 if there are no points
+     */
+    public int nearest(double latitude, double longitude) {
+        return scan(latitude, longitude, null);
+    }
+    
+    /**
+     * Computes the haversine terms between the given location and every point, 
+     * the trigonometric terms of the location once for all the points
+     * @param out receives the haversine terms if not null, at least as long as the points
+     * @return the index of the point nearest to the location, -1 if there are no points
+     */
+    private int scan(double latitude, double longitude, double[] out) {
+        final double latitudeRadians = Math.toRadians(latitude);
+        final double longitudeRadians = Math.toRadians(longitude);
+        final double sinHalfLatitude = Math.sin(latitudeRadians / 2);
+        final double cosHalfLatitude = Math.cos(latitudeRadians / 2);
+        final double sinHalfLongitude = Math.sin(longitudeRadians / 2);
+        final double cosHalfLongitude = Math.cos(longitudeRadians / 2);
+        final double cosLatitude = Math.cos(latitudeRadians);
+        int nearest = -1;
+        double best = Double.POSITIVE_INFINITY;
+        // The haversine term grows with the distance, no need to turn it into a distance
+        for (int j = 0; j < size; j++) {
+            double term = haversine(sinHalfLatitude, cosHalfLatitude, sinHalfLongitude, cosHalfLongitude, cosLatitude, j);
+            if (out != null) {
+                out[j] = term;
+            }
+            if (term < best) {
+                best = term;
+                nearest = j;
+            }
+        }
+        return nearest;
+    }
+    
+    /**
+     * @return the initial bearing from the point i to the point j, in degrees clockwise from the north
+     */
+    public double bearing(int i, int j) {
+        double sinDeltaLongitude = sinLongitudes[j] * cosLongitudes[i] - cosLongitudes[j] * sinLongitudes[i];
+        double cosDeltaLongitude = cosLongitudes[j] * cosLongitudes[i] + sinLongitudes[j] * sinLongitudes[i];
+        return normalize(Math.atan2(sinDeltaLongitude * cosLatitudes[j], cosLatitudes[i] * sinLatitudes[j] - sinLatitudes[i] * cosLatitudes[j] * cosDeltaLongitude));
+    }
+    
+    /**
+     * Initial bearings from the point from to every point
+     * @param out receives the bearings in degrees clockwise from the north, at least as long as the points
+     */
+    public void bearings(int from, double[] out) {
+        for (int j = 0; j < size; j++) {
+            out[j] = bearing(from, j);
+        }
+    }
+    
+    /**
+     * Single pair distance, for callers with no points to reuse: same haversine of the points, on the differences of the coordinates
+     * @return distance between coordinates in cm
+     */
+    public static final double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double sinHalfDeltaLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinHalfDeltaLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        return centralAngle(sinHalfDeltaLatitude * sinHalfDeltaLatitude + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * sinHalfDeltaLongitude * sinHalfDeltaLongitude) * EARTH_RADIUS;
+    }
+    
+    /**
+     * Single pair initial bearing, for callers with no points to reuse
+     * @return degrees clockwise from the north, in [0, 360)
+     */
+    public static final double bearing(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double latitude1Radians = Math.toRadians(latitude1);
+        double latitude2Radians = Math.toRadians(latitude2);
+        double deltaLongitude = Math.toRadians(longitude2 - longitude1);
+        double cosLatitude2 = Math.cos(latitude2Radians);
+        return normalize(Math.atan2(Math.sin(deltaLongitude) * cosLatitude2, Math.cos(latitude1Radians) * Math.sin(latitude2Radians) - Math.sin(latitude1Radians) * cosLatitude2 * Math.cos(deltaLongitude)));
+    }
+    
+    /**
+     * @return the haversine term between a location, given by its trigonometric terms, and the point j
+     */
+    private double haversine(double sinHalfLatitude, double cosHalfLatitude, double sinHalfLongitude, double cosHalfLongitude, double cosLatitude, int j) {
+        double sinHalfDeltaLatitude = sinHalfLatitudes[j] * cosHalfLatitude - cosHalfLatitudes[j] * sinHalfLatitude;
+        double sinHalfDeltaLongitude = sinHalfLongitudes[j] * cosHalfLongitude - cosHalfLongitudes[j] * sinHalfLongitude;
+        return sinHalfDeltaLatitude * sinHalfDeltaLatitude + cosLatitude * cosLatitudes[j] * sinHalfDeltaLongitude * sinHalfDeltaLongitude;
+    }
+    
+    private static double centralAngle(double haversine) {
+        return 2 * Math.asin(Math.sqrt(Math.min(1.0, haversine)));
+    }
+    
+    private static double normalize(double radians) {
+        double degrees = Math.toDegrees(radians);
+        if (degrees < 0) {
+            degrees += 360;
+        }
+        // A tiny negative angle rounds up to 360
+        return degrees >= 360 ? 0 : degrees;
+    }
+}
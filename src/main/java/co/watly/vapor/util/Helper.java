@@ -12,6 +12,8 @@ package co.watly.vapor.util;
 
 import java.io.File;
 import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Generic Utility Methods
@@ -19,6 +21,10 @@ import java.nio.file.Files;
  *
  */
 public final class Helper {
+    
+    private static final int MAX_CACHED_TEMPLATES = 256;
+    
+    private static final ConcurrentMap<String, Template> TEMPLATES = new ConcurrentHashMap<>();
 
     /*
      * Java implementation of Microsoft .NET's string.IsNullOrWhiteSpace(string test) native method
@@ -28,22 +34,33 @@ public final class Helper {
     }
 
     /*
-     * Java implementation of Microsoft .NET's string.Format(string template, Object[] args) native method
+     * Java implementation of Microsoft .NET's string.Format(string template, Object[] args) native method.
+     * Templates are compiled once and cached, see Template for allocation-free rendering
      */
     public static final String stringFormat(String template, Object firstValue, Object... otherValues) {
         if (stringIsNullOrWhiteSpace(template)) {
             return template;
         }
-        String firstVal = firstValue == null ? "null" : firstValue.toString();
-        String f = template.replace("{0}", firstVal);
-        if (otherValues != null && otherValues.length > 0) {
-            for (int i = 0; i < otherValues.length; i++) {
-                String n = "{" + (i + 1) + "}";
-                String v = otherValues[i] == null ? "null" : otherValues[i].toString();
-                f = f.replace(n, v);
+        Object[] values = new Object[otherValues == null ? 1 : otherValues.length + 1];
+        values[0] = firstValue;
+        if (otherValues != null) {
+            System.arraycopy(otherValues, 0, values, 1, otherValues.length);
+        }
+        return template(template).format(values);
+    }
+    
+    /*
+     * Compiled version of the given template, cached unless too many different templates are around
+     */
+    private static final Template template(String template) {
+        Template compiled = TEMPLATES.get(template);
+        if (compiled == null) {
+            compiled = Template.compile(template);
+            if (TEMPLATES.size() < MAX_CACHED_TEMPLATES) {
+                TEMPLATES.putIfAbsent(template, compiled);
             }
         }
-        return f;
+        return compiled;
     }
     
     /*
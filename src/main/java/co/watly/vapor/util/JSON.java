@@ -10,7 +10,10 @@
  */
 package co.watly.vapor.util;
 
+import java.io.Reader;
+
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 
 /**
  * Utility class to Serialize/Deserialize JSONs.
@@ -29,4 +32,15 @@ public final class JSON {
     public static final <T> T parse(String json, Class<? extends T> type) {
         return GSON.fromJson(json, type);
     }
+    
+    public static final <T> T parse(Reader json, Class<? extends T> type) {
+        return GSON.fromJson(json, type);
+    }
+    
+    /**
+     * Reads the elements of the JSON array one at a time, as they are needed
+     */
+    public static final <T> JsonArrayStream<T> stream(Reader json, Class<T> type) {
+        return new JsonArrayStream<>(GSON, new JsonReader(json), type);
+    }
 }
@@ -0,0 +1,80 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Reads the elements of a JSON array one at a time, so that the first ones can be used
+ * before the rest of the array has been received or decoded
+ * @author Marco Vasapollo
+ *
+ * @param <T> the type of the array elements
+ */
+public final class JsonArrayStream<T> implements Iterator<T>, Closeable {
+    
+    private final Gson gson;
+    private final JsonReader reader;
+    private final Class<T> type;
+    private boolean started;
+    private boolean finished;
+    
+    JsonArrayStream(Gson gson, JsonReader reader, Class<T> type) {
+        this.gson = gson;
+        this.reader = reader;
+        this.type = type;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        if (finished) {
+            return false;
+        }
+        try {
+            if (!started) {
+                reader.beginArray();
+                started = true;
+            }
+            if (reader.hasNext()) {
+                return true;
+            }
+            reader.endArray();
+            finished = true;
+            return false;
+        }
+        catch (IOException | IllegalStateException e) {
+            throw new JsonParseException(e);
+        }
+    }
+    
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return gson.fromJson(reader, type);
+    }
+    
+    /**
+     * Closes the underlying reader
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.util;
+
+import java.util.Arrays;
+
+import co.watly.vapor.data.DroneCommand;
+
+/**
+ * Stores many plans as a struct of arrays: the opcode, speed and argument of every command in parallel primitive arrays,
+ * plus where each plan starts. A command takes 19 bytes and no object, instead of a {@link DroneCommand} and its slot in a plan array,
+ * so it suits large batches (e.g. the plans of a whole fleet) that are kept in memory.
+ * Commands are rebuilt on read, or read field by field without allocating.
+ * Plans are appended by a single thread, once the store is published (e.g. through a future) any number of threads can read it
+ * @author Marco Vasapollo
+ *
+ */
+public final class PlanStore {
+    
+    private static final byte DECIMAL = 1;
+    
+    private short[] opcodes;
+    private byte[] flags;
+    private long[] speeds;
+    // The integral argument or the raw bits of the decimal one
+    private long[] args;
+    // Plan i spans from offsets[i] to offsets[i + 1]
+    private int[] offsets;
+    private int size;
+    
+    public PlanStore() {
+        this(16, 128);
+    }
+    
+    /**
+     * @param expectedPlans the number of plans to make room for
+     * @param expectedCommands the number of commands, of all the plans, to make room for
+     */
+    public PlanStore(int expectedPlans, int expectedCommands) {
+        if (expectedPlans < 1 || expectedCommands < 1) {
+            throw new IllegalArgumentException("The expected number of plans and commands must be positive");
+        }
+        opcodes = new short[expectedCommands];
+        flags = new byte[expectedCommands];
+        speeds = new long[expectedCommands];
+        args = new long[expectedCommands];
+        offsets = new int[expectedPlans + 1];
+    }
+    
+    /**
+     * Appends the given plan
+     * @return the index of the plan
+     * @throws IllegalArgumentException if a command is not a maneuver of the {@link co.watly.vapor.model.IDrone}
+     */
+    public final int add(DroneCommand[] droneCommands) {
+        final int start = offsets[size];
+        final int end = start + droneCommands.length;
+        // Opcodes first, so that an unknown command leaves the store as it was
+        final short[] planOpcodes = new short[droneCommands.length];
+        for (int i = 0; i < droneCommands.length; i++) {
+            planOpcodes[i] = (short) DroneCommandMapper.opcode(droneCommands[i].getName());
+        }
+        if (end > speeds.length) {
+            grow(end);
+        }
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        System.arraycopy(planOpcodes, 0, opcodes, start, planOpcodes.length);
+        for (int i = 0; i < droneCommands.length; i++) {
+            DroneCommand droneCommand = droneCommands[i];
+            speeds[start + i] = droneCommand.getSpeed();
+            if (droneCommand.isDecimal()) {
+                flags[start + i] = DECIMAL;
+                args[start + i] = Double.doubleToRawLongBits(droneCommand.getArgAsDouble());
+            }
+            else {
+                flags[start + i] = 0;
+                args[start + i] = droneCommand.getArgAsLong();
+            }
+        }
+        offsets[size + 1] = end;
+        return size++;
+    }
+    
+    /**
+     * @return the number of stored plans
+     */
+    public final int size() {
+        return size;
+    }
+    
+    /**
+     * @return the number of stored commands, of all the plans
+     */
+    public final int getCommandCount() {
+        return offsets[size];
+    }
+    
+    /**
+     * @return the number of commands of the given plan
+     */
+    public final int length(int plan) {
+        checkPlan(plan);
+        return offsets[plan + 1] - offsets[plan];
+    }
+    
+    /**
+     * @return the commands of the given plan, rebuilt
+     */
+    public final DroneCommand[] get(int plan) {
+        DroneCommand[] droneCommands = new DroneCommand[length(plan)];
+        for (int i = 0; i < droneCommands.length; i++) {
+            droneCommands[i] = command(offsets[plan] + i);
+        }
+        return droneCommands;
+    }
+    
+    /**
+     * @return the given command of the given plan, rebuilt
+     */
+    public final DroneCommand get(int plan, int step) {
+        return command(index(plan, step));
+    }
+    
+    public final String getName(int plan, int step) {
+        return DroneCommandMapper.command(opcodes[index(plan, step)]);
+    }
+    
+    public final long getSpeed(int plan, int step) {
+        return speeds[index(plan, step)];
+    }
+    
+    public final boolean isDecimal(int plan, int step) {
+        return flags[index(plan, step)] == DECIMAL;
+    }
+    
+    public final long getArgAsLong(int plan, int step) {
+        int index = index(plan, step);
+        return flags[index] == DECIMAL ? (long) Double.longBitsToDouble(args[index]) : args[index];
+    }
+    
+    public final double getArgAsDouble(int plan, int step) {
+        int index = index(plan, step);
+        return flags[index] == DECIMAL ? Double.longBitsToDouble(args[index]) : (double) args[index];
+    }
+    
+    /**
+     * @return the bytes taken by the arrays of the store, allocated room included
+     */
+    public final long getFootprint() {
+        return (long) opcodes.length * (Short.BYTES + Byte.BYTES + Long.BYTES + Long.BYTES) + (long) offsets.length * Integer.BYTES;
+    }
+    
+    /**
+     * Releases the room allocated beyond the stored plans
+     */
+    public final void trim() {
+        final int commands = offsets[size];
+        opcodes = Arrays.copyOf(opcodes, Math.max(commands, 1));
+        flags = Arrays.copyOf(flags, opcodes.length);
+        speeds = Arrays.copyOf(speeds, opcodes.length);
+        args = Arrays.copyOf(args, opcodes.length);
+        offsets = Arrays.copyOf(offsets, size + 1);
+    }
+    
+    private DroneCommand command(int index) {
+        String name = DroneCommandMapper.command(opcodes[index]);
+        return flags[index] == DECIMAL ? new DroneCommand(name, speeds[index], Double.longBitsToDouble(args[index])) : new DroneCommand(name, speeds[index], args[index]);
+    }
+    
+    private int index(int plan, int step) {
+        checkPlan(plan);
+        if (step < 0 || step >= offsets[plan + 1] - offsets[plan]) {
+            throw new IndexOutOfBoundsException("Step " + step + " of plan " + plan);
+        }
+        return offsets[plan] + step;
+    }
+    
+    private void checkPlan(int plan) {
+        if (plan < 0 || plan >= size) {
+            throw new IndexOutOfBoundsException("Plan " + plan + " of " + size);
+        }
+    }
+    
+    private void grow(int commands) {
+        int capacity = Math.max(commands, opcodes.length * 2);
+        opcodes = Arrays.copyOf(opcodes, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        speeds = Arrays.copyOf(speeds, capacity);
+        args = Arrays.copyOf(args, capacity);
+    }
+}
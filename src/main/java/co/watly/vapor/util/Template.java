@@ -0,0 +1,204 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A precompiled .NET-like string template (e.g. "{0} at {1} cm/sec").
+ * The template is parsed once into literal and slot segments, then rendered straight into a caller-supplied buffer.
+ * Primitive overloads append long and double values without boxing them.
+ * Placeholders without a value are rendered as they are, like {@link Helper#stringFormat(String, Object, Object...)} does.
+ * Only canonical indexes are placeholders: "{01}" or an index past {@value #MAX_DIGITS} digits is literal text
+ * @author Marco Vasapollo
+ *
+ */
+public final class Template {
+    
+    // Any index up to 999,999,999 fits an int
+    private static final int MAX_DIGITS = 9;
+    
+    // literals[i] precedes slots[i], the last literal closes the template
+    private final String[] literals;
+    private final int[] slots;
+    
+    private Template(String[] literals, int[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+    }
+    
+    /**
+     * Parses the given template once, so that it can be rendered many times
+     */
+    public static final Template compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        int literalStart = 0;
+        int open = template.indexOf('{');
+        while (open >= 0) {
+            int close = open + 1;
+            while (close < template.length() && template.charAt(close) >= '0' && template.charAt(close) <= '9') {
+                close++;
+            }
+            if (isSlot(template, open + 1, close)) {
+                literals.add(template.substring(literalStart, open));
+                slots.add(Integer.parseInt(template.substring(open + 1, close)));
+                literalStart = close + 1;
+                open = template.indexOf('{', literalStart);
+            }
+            else {
+                open = template.indexOf('{', open + 1);
+            }
+        }
+        literals.add(template.substring(literalStart));
+        int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) {
+            slotArray[i] = slots.get(i);
+        }
+        return new Template(literals.toArray(new String[literals.size()]), slotArray);
+    }
+    
+    /**
+     * @return true if the given digits are a canonical placeholder index closed by a brace
+     */
+    private static boolean isSlot(String template, int start, int end) {
+        int digits = end - start;
+        return digits > 0 && digits <= MAX_DIGITS && (digits == 1 || template.charAt(start) != '0') && end < template.length() && template.charAt(end) == '}';
+    }
+    
+    public StringBuilder appendTo(StringBuilder out, long first) {
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            if (slots[i] == 0) {
+                out.append(first);
+            }
+            else {
+                appendPlaceholder(out, slots[i]);
+            }
+        }
+        return out.append(literals[slots.length]);
+    }
+    
+    public StringBuilder appendTo(StringBuilder out, long first, long second) {
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            switch (slots[i]) {
+                case 0:
+                    out.append(first);
+                    break;
+                case 1:
+                    out.append(second);
+                    break;
+                default:
+                    appendPlaceholder(out, slots[i]);
+            }
+        }
+        return out.append(literals[slots.length]);
+    }
+    
+    public StringBuilder appendTo(StringBuilder out, long first, double second) {
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            switch (slots[i]) {
+                case 0:
+                    out.append(first);
+                    break;
+                case 1:
+                    out.append(second);
+                    break;
+                default:
+                    appendPlaceholder(out, slots[i]);
+            }
+        }
+        return out.append(literals[slots.length]);
+    }
+    
+    public StringBuilder appendTo(StringBuilder out, long first, long second, long third) {
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            switch (slots[i]) {
+                case 0:
+                    out.append(first);
+                    break;
+                case 1:
+                    out.append(second);
+                    break;
+                case 2:
+                    out.append(third);
+                    break;
+                default:
+                    appendPlaceholder(out, slots[i]);
+            }
+        }
+        return out.append(literals[slots.length]);
+    }
+    
+    public StringBuilder appendTo(StringBuilder out, Object first, long second, long third) {
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            switch (slots[i]) {
+                case 0:
+                    out.append(first);
+                    break;
+                case 1:
+                    out.append(second);
+                    break;
+                case 2:
+                    out.append(third);
+                    break;
+                default:
+                    appendPlaceholder(out, slots[i]);
+            }
+        }
+        return out.append(literals[slots.length]);
+    }
+    
+    public StringBuilder appendTo(StringBuilder out, Object... values) {
+        try {
+            render(out, values);
+        }
+        catch (IOException e) {
+            // A StringBuilder never throws it
+            throw new RuntimeException(e);
+        }
+        return out;
+    }
+    
+    /**
+     * Renders the template into any {@link Appendable} (e.g. a Writer), null values are rendered as "null"
+     */
+    public <A extends Appendable> A render(A out, Object... values) throws IOException {
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            if (values != null && slots[i] < values.length) {
+                out.append(String.valueOf(values[slots[i]]));
+            }
+            else {
+                out.append('{').append(Integer.toString(slots[i])).append('}');
+            }
+        }
+        out.append(literals[slots.length]);
+        return out;
+    }
+    
+    /**
+     * Renders the template into a new String
+     */
+    public String format(Object... values) {
+        return appendTo(new StringBuilder(), values).toString();
+    }
+    
+    private static void appendPlaceholder(StringBuilder out, int slot) {
+        out.append('{').append(slot).append('}');
+    }
+}
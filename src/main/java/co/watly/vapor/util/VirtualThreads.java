@@ -0,0 +1,55 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to the Java 21 virtual threads from code compiled for older Java versions
+ * @author Marco Vasapollo
+ *
+ */
+public final class VirtualThreads {
+    
+    private static final ExecutorService EXECUTOR = createExecutor();
+    
+    private VirtualThreads() {
+    }
+    
+    private static final ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (Exception e) {
+            // Not running on Java 21+
+            return null;
+        }
+    }
+    
+    /**
+     * @return true if the running JVM supports virtual threads
+     */
+    public static final boolean isAvailable() {
+        return EXECUTOR != null;
+    }
+    
+    /**
+     * @return a shared executor that runs each task on a new virtual thread
+     * @throws UnsupportedOperationException if the running JVM does not support virtual threads
+     */
+    public static final ExecutorService executor() {
+        if (EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later, running on Java " + System.getProperty("java.version"));
+        }
+        return EXECUTOR;
+    }
+}
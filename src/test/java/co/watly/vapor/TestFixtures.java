@@ -0,0 +1,113 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDrone;
+import co.watly.vapor.model.IDroneData;
+
+/**
+ * Stub drones and seeded random itineraries shared by the tests.
+ * Stubs are built as dynamic proxies, so they keep working whatever maneuvers the Drone Model declares
+ * @author Marco Vasapollo
+ *
+ */
+public final class TestFixtures {
+    
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+    
+    private TestFixtures() {
+    }
+    
+    /**
+     * @return drone data of a mid-range delivery drone
+     */
+    public static final IDroneData droneData() {
+        return droneData("Vapor Test", 5000000L, 50L, 2000L, 5.0);
+    }
+    
+    /**
+     * @return drone data of a random drone of a mixed fleet, from small short range drones to heavy lifters
+     */
+    public static final IDroneData droneData(Random random) {
+        long maxWeight = 10 + random.nextInt(60);
+        return droneData("Vapor Mixed", 300000L + random.nextInt(1700000), maxWeight, 1500L + random.nextInt(1000), 1.0 + random.nextDouble() * 10 / maxWeight);
+    }
+    
+    public static final IDroneData droneData(String modelName, long totalJourney, long maxWeightCapability, long maxReachableSpeed, double speedDecreasingFactor) {
+        final Map<String, Object> values = new HashMap<>();
+        values.put("getModelName", modelName);
+        values.put("getTotalJourney", totalJourney);
+        values.put("getMaxWeightCapability", maxWeightCapability);
+        values.put("getMaxReachableSpeed", maxReachableSpeed);
+        values.put("getSpeedDecreasingFactor", speedDecreasingFactor);
+        return (IDroneData) Proxy.newProxyInstance(IDroneData.class.getClassLoader(), new Class<?>[] { IDroneData.class }, (proxy, method, args) -> values.get(method.getName()));
+    }
+    
+    /**
+     * @return a drone with the given data, whose maneuvers complete immediately
+     */
+    public static final IDrone drone(IDroneData droneData) {
+        final CompletableFuture<IDroneData> data = CompletableFuture.completedFuture(droneData);
+        return (IDrone) Proxy.newProxyInstance(IDrone.class.getClassLoader(), new Class<?>[] { IDrone.class }, (proxy, method, args) -> "getData".equals(method.getName()) ? data : DONE);
+    }
+    
+    /**
+     * @return a controller of the given drone, whose data already arrived
+     */
+    public static final VaporController controller(IDroneData droneData) {
+        VaporController controller = new VaporController(drone(droneData));
+        controller.whenReady().join();
+        return controller;
+    }
+    
+    /**
+     * Random deliveries of a few km around the same depot area, with loads the drone can carry
+     */
+    public static final Itinerary[] itineraries(int count, long seed) {
+        Random random = new Random(seed);
+        Itinerary[] itineraries = new Itinerary[count];
+        for (int i = 0; i < count; i++) {
+            Coordinates start = new Coordinates(45.46 + random.nextDouble() * 0.05, 9.18 + random.nextDouble() * 0.05, random.nextInt(2000));
+            Coordinates end = new Coordinates(45.46 + random.nextDouble() * 0.05, 9.18 + random.nextDouble() * 0.05, random.nextInt(2000));
+            itineraries[i] = new Itinerary(start, end, 12000, 1 + random.nextInt(9));
+        }
+        return itineraries;
+    }
+    
+    /**
+     * Random delivery rounds of up to the given number of stops, in a neighborhood of about 2 km, ordered or not
+     */
+    public static final Itinerary[] rounds(int count, int maxStops, long seed) {
+        Random random = new Random(seed);
+        Itinerary[] itineraries = new Itinerary[count];
+        for (int i = 0; i < count; i++) {
+            Coordinates depot = new Coordinates(45.46 + random.nextDouble() * 0.02, 9.18 + random.nextDouble() * 0.02, random.nextInt(2000));
+            int stops = 1 + random.nextInt(maxStops);
+            List<Coordinates> waypoints = new ArrayList<>(stops);
+            for (int j = 0; j < stops; j++) {
+                waypoints.add(new Coordinates(45.46 + random.nextDouble() * 0.02, 9.18 + random.nextDouble() * 0.02, random.nextInt(2000)));
+            }
+            itineraries[i] = new Itinerary(depot, waypoints, random.nextBoolean(), depot, 12000, 1 + random.nextInt(9));
+        }
+        return itineraries;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import co.watly.vapor.data.AirspaceZone;
+import co.watly.vapor.util.JSON;
+
+/**
+ * The grid index must find the same trespasses as a plain scan of the zones, whatever their size
+ * @author Marco Vasapollo
+ *
+ */
+public class AirspaceTest {
+    
+    @Test
+    public void regionWideZoneIsIndexed() {
+        // About 1,000,000 cells of the default grid
+        AirspaceZone region = new AirspaceZone("Region", 12000, square(40, 5, 10));
+        AirspaceZone airport = new AirspaceZone("Airport", 0, square(45.62, 8.71, 0.05));
+        Airspace airspace = new Airspace(Arrays.asList(region, airport));
+        assertEquals(2, airspace.size());
+        assertSame(region, airspace.findViolation(44, 9, 44.01, 9.01, 15000));
+        assertNull(airspace.findViolation(44, 9, 44.01, 9.01, 10000));
+        assertSame(airport, airspace.findViolation(45.6, 8.7, 45.7, 8.8, 10000));
+        assertNull(airspace.findViolation(51, 0, 51.1, 0.1, 15000));
+    }
+    
+    @Test
+    public void laterChangesToTheZonesAreIgnored() {
+        double[][] polygon = square(45.62, 8.71, 0.05);
+        AirspaceZone airport = new AirspaceZone("Airport", 0, polygon);
+        Airspace airspace = new Airspace(Collections.singletonList(airport));
+        // Moved into another cell of the grid, and out of the way
+        polygon[0][0] = 10;
+        airport.setPolygon(square(10, 10, 0.05));
+        assertSame(airport, airspace.findViolation(45.6, 8.7, 45.7, 8.8, 10000));
+    }
+    
+    @Test
+    public void gridAgreesWithPlainScan() {
+        Random random = new Random(13);
+        List<AirspaceZone> zones = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            // Mostly small zones, some spanning more cells than a zone may be bucketed in
+            double side = i % 30 == 0 ? 0.5 + random.nextDouble() : 0.001 + random.nextDouble() * 0.05;
+            zones.add(new AirspaceZone("Zone " + i, random.nextInt(3) * 5000, square(45 + random.nextDouble() * 2, 9 + random.nextDouble() * 2, side)));
+        }
+        Airspace grid = new Airspace(zones);
+        // A single cell for the whole area: every lookup scans all the zones
+        Airspace scan = new Airspace(zones, 1000);
+        for (int i = 0; i < 5000; i++) {
+            double fromLatitude = 45 + random.nextDouble() * 2;
+            double fromLongitude = 9 + random.nextDouble() * 2;
+            double toLatitude = fromLatitude + (random.nextDouble() - 0.5) * 0.2;
+            double toLongitude = fromLongitude + (random.nextDouble() - 0.5) * 0.2;
+            long height = random.nextInt(12000);
+            assertEquals(scan.findViolation(fromLatitude, fromLongitude, toLatitude, toLongitude, height) == null, grid.findViolation(fromLatitude, fromLongitude, toLatitude, toLongitude, height) == null);
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void missingCeilingIsRefused() {
+        AirspaceZone[] zones = JSON.parse("[{\"name\": \"Park\", \"polygon\": [[45.0, 9.0], [45.0, 9.1], [45.1, 9.1]]}]", AirspaceZone[].class);
+        new Airspace(Arrays.asList(zones));
+    }
+    
+    @Test
+    public void zeroCeilingIsNoFly() {
+        AirspaceZone[] zones = JSON.parse("[{\"name\": \"Park\", \"ceiling\": 0, \"polygon\": [[45.0, 9.0], [45.0, 9.1], [45.1, 9.1]]}]", AirspaceZone[].class);
+        Airspace airspace = new Airspace(Arrays.asList(zones));
+        assertSame(zones[0], airspace.findViolation(45.05, 9.04, 45.05, 9.06, 1));
+        assertNull(new Airspace(Collections.<AirspaceZone> emptyList()).findViolation(45.05, 9.04, 45.05, 9.06, 1));
+    }
+    
+    private static double[][] square(double latitude, double longitude, double side) {
+        return new double[][] { { latitude, longitude }, { latitude, longitude + side }, { latitude + side, longitude + side }, { latitude + side, longitude } };
+    }
+}
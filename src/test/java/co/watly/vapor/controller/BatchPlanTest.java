@@ -0,0 +1,187 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.data.PlanResult;
+
+/**
+ * A batch planning gives a result to every itinerary of the wave, in order, whatever happens to the others,
+ * planning at most as many itineraries at a time as its lanes
+ * @author Marco Vasapollo
+ *
+ */
+public class BatchPlanTest {
+    
+    @Test
+    public void saturatedExecutorFailsEachItinerary() throws InterruptedException {
+        VaporController controller = TestFixtures.controller(TestFixtures.droneData());
+        controller.setPlanningMode(PlanningMode.COMPILED);
+        CountDownLatch release = new CountDownLatch(1);
+        try (BoundedExecutor executor = new BoundedExecutor("saturated", 1, 1, RejectionPolicy.ABORT)) {
+            // A busy thread and a full queue: every planning is refused
+            executor.execute(() -> {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            executor.execute(() -> {
+            });
+            Itinerary[] wave = TestFixtures.itineraries(20, 41);
+            List<PlanResult> results = controller.plan(Arrays.asList(wave), executor, 4).join();
+            assertEquals(wave.length, results.size());
+            for (int i = 0; i < wave.length; i++) {
+                assertSame(wave[i], results.get(i).getItinerary());
+                assertTrue(results.get(i).getError() instanceof RejectedExecutionException);
+            }
+        }
+        finally {
+            release.countDown();
+        }
+    }
+    
+    @Test
+    public void partlySaturatedExecutorPlansTheRest() {
+        VaporController controller = TestFixtures.controller(TestFixtures.droneData());
+        controller.setPlanningMode(PlanningMode.COMPILED);
+        try (BoundedExecutor executor = new BoundedExecutor("narrow", 1, 2, RejectionPolicy.ABORT)) {
+            Itinerary[] wave = TestFixtures.itineraries(500, 43);
+            List<PlanResult> results = controller.plan(Arrays.asList(wave), executor, 8).join();
+            int planned = 0;
+            for (int i = 0; i < wave.length; i++) {
+                PlanResult result = results.get(i);
+                assertNotNull(result);
+                assertSame(wave[i], result.getItinerary());
+                if (result.isSuccessful()) {
+                    assertTrue(result.getDroneCommands().length > 0);
+                    planned++;
+                }
+                else {
+                    assertTrue(result.getError() instanceof RejectedExecutionException);
+                }
+            }
+            assertTrue(planned > 0);
+        }
+    }
+    
+    @Test
+    public void maxParallelismBoundsTheLanes() {
+        VaporController controller = TestFixtures.controller(TestFixtures.droneData());
+        controller.setPlanningMode(PlanningMode.COMPILED);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger peak = new AtomicInteger();
+            // Every planning lasts long enough for the lanes to overlap. 
+            // Counted before it completes, as its completion starts the next planning of the lane
+            Executor slow = runnable -> threads.execute(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                runnable.run();
+            });
+            List<PlanResult> results = controller.plan(Arrays.asList(TestFixtures.itineraries(12, 45)), slow, 3).join();
+            assertEquals(12, results.size());
+            assertEquals(3, peak.get());
+        }
+        finally {
+            threads.shutdown();
+        }
+    }
+    
+    @Test
+    public void resultsKeepTheOrderOfTheWave() {
+        VaporController controller = TestFixtures.controller(TestFixtures.droneData());
+        controller.setPlanningMode(PlanningMode.COMPILED);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            Itinerary[] wave = TestFixtures.itineraries(40, 47);
+            // Later itineraries complete first
+            AtomicInteger submitted = new AtomicInteger();
+            Executor reversed = runnable -> {
+                long delay = 40 - submitted.getAndIncrement() % 40;
+                threads.execute(() -> {
+                    try {
+                        Thread.sleep(delay);
+                        runnable.run();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            };
+            List<PlanResult> results = controller.plan(Arrays.asList(wave), reversed, 4).join();
+            for (int i = 0; i < wave.length; i++) {
+                assertSame(wave[i], results.get(i).getItinerary());
+                assertArrayEquals(controller.compile(wave[i]), results.get(i).getDroneCommands());
+            }
+        }
+        finally {
+            threads.shutdown();
+        }
+    }
+    
+    @Test
+    public void failingItineraryIsIsolated() {
+        VaporController controller = TestFixtures.controller(TestFixtures.droneData());
+        controller.setPlanningMode(PlanningMode.COMPILED);
+        Itinerary[] wave = TestFixtures.itineraries(10, 49);
+        Coordinates start = wave[3].getStart();
+        // Far more than the 50 hg the drone can lift
+        wave[3] = new Itinerary(start, wave[3].getEnd(), 12000, 500);
+        List<PlanResult> results = controller.plan(Arrays.asList(wave), Runnable::run, 2).join();
+        for (int i = 0; i < wave.length; i++) {
+            PlanResult result = results.get(i);
+            assertSame(wave[i], result.getItinerary());
+            if (i == 3) {
+                assertTrue(result.getError() instanceof WeightExcessException);
+                assertNull(result.getDroneCommands());
+            }
+            else {
+                assertTrue(result.isSuccessful());
+                assertArrayEquals(controller.compile(wave[i]), result.getDroneCommands());
+            }
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void noLaneIsRefused() {
+        TestFixtures.controller(TestFixtures.droneData()).plan(Arrays.asList(TestFixtures.itineraries(1, 51)), Runnable::run, 0);
+    }
+}
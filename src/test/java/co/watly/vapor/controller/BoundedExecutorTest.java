@@ -0,0 +1,178 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * A saturated {@link BoundedExecutor} refuses or runs the task on the caller, as its policy says, and always counts it
+ * @author Marco Vasapollo
+ *
+ */
+public class BoundedExecutorTest {
+    
+    @Test
+    public void abortRefusesOnceSaturated() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        try (BoundedExecutor executor = new BoundedExecutor("abort", 1, 2, RejectionPolicy.ABORT)) {
+            saturate(executor, release, done);
+            try {
+                executor.execute(done::countDown);
+                fail("A saturated ABORT executor must refuse the task");
+            }
+            catch (RejectedExecutionException e) {
+                assertTrue(e.getMessage().contains("saturated"));
+            }
+            assertEquals(1, executor.getSaturatedCount());
+            assertEquals(2, executor.getPeakQueueSize());
+            assertEquals(2, executor.getQueueSize());
+            assertEquals(1, executor.getActiveCount());
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+    }
+    
+    @Test
+    public void callerRunsOnceSaturated() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        try (BoundedExecutor executor = new BoundedExecutor("caller-runs", 1, 2, RejectionPolicy.CALLER_RUNS)) {
+            saturate(executor, release, done);
+            AtomicReference<Thread> ranOn = new AtomicReference<>();
+            executor.execute(() -> ranOn.set(Thread.currentThread()));
+            assertSame(Thread.currentThread(), ranOn.get());
+            assertEquals(1, executor.getSaturatedCount());
+            assertEquals(2, executor.getPeakQueueSize());
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            // The peak is kept once the queue is drained
+            assertEquals(2, executor.getPeakQueueSize());
+        }
+    }
+    
+    @Test
+    public void directHandOffHasNoQueue() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        try (BoundedExecutor executor = new BoundedExecutor("hand-off", 1, 0, RejectionPolicy.ABORT)) {
+            executor.execute(() -> await(release));
+            try {
+                executor.execute(() -> {
+                });
+                fail("A busy executor without queue must refuse the task");
+            }
+            catch (RejectedExecutionException e) {
+                assertEquals(1, executor.getSaturatedCount());
+                assertEquals(0, executor.getPeakQueueSize());
+            }
+            finally {
+                release.countDown();
+            }
+        }
+    }
+    
+    @Test
+    public void closeRunsQueuedTasksAndRefusesNewOnes() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        BoundedExecutor executor = new BoundedExecutor("closing", 1, 2, RejectionPolicy.CALLER_RUNS);
+        saturate(executor, release, done);
+        executor.close();
+        try {
+            executor.execute(done::countDown);
+            fail("A closed executor must refuse the task, whatever its policy");
+        }
+        catch (RejectedExecutionException e) {
+            assertTrue(e.getMessage().contains("closed"));
+        }
+        assertEquals("Refusals of a closed executor are not saturations", 0, executor.getSaturatedCount());
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void contextOwnsOnlyItsBoundedExecutors() {
+        ExecutionContext context = new ExecutionContext(1, 4, 1, 4);
+        BoundedExecutor planning = (BoundedExecutor) context.getPlanningExecutor();
+        BoundedExecutor drone = (BoundedExecutor) context.getDroneExecutor();
+        assertEquals(RejectionPolicy.ABORT, planning.getRejectionPolicy());
+        assertEquals(RejectionPolicy.CALLER_RUNS, drone.getRejectionPolicy());
+        assertEquals(4, planning.getQueueDepth());
+        context.close();
+        assertRefuses(planning);
+        assertRefuses(drone);
+        
+        ExecutorService shared = Executors.newSingleThreadExecutor();
+        try {
+            new ExecutionContext(shared, null).close();
+            assertFalse(shared.isShutdown());
+        }
+        finally {
+            shared.shutdown();
+        }
+        assertNull(ExecutionContext.COMMON.getDroneExecutor());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void planningExecutorIsMandatory() {
+        new ExecutionContext((Executor) null, null);
+    }
+    
+    /**
+     * Keeps the only thread busy until released and fills the queue of 2
+     */
+    private static void saturate(BoundedExecutor executor, CountDownLatch release, CountDownLatch done) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+            done.countDown();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(done::countDown);
+        executor.execute(done::countDown);
+    }
+    
+    private static void assertRefuses(Executor executor) {
+        try {
+            executor.execute(() -> {
+            });
+            fail("A closed context must close its executors");
+        }
+        catch (RejectedExecutionException e) {
+            // Expected
+        }
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
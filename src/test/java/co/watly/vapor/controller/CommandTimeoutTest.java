@@ -0,0 +1,65 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.model.IDrone;
+import co.watly.vapor.model.IDroneData;
+
+/**
+ * A command running past its timeout aborts the flight, landing the drone away from the shared timer thread
+ * @author Marco Vasapollo
+ *
+ */
+public class CommandTimeoutTest {
+    
+    @Test
+    public void timeoutLandsOffTheTimer() {
+        final CompletableFuture<IDroneData> data = CompletableFuture.completedFuture(TestFixtures.droneData());
+        final CompletableFuture<String> landedOn = new CompletableFuture<>();
+        IDrone drone = (IDrone) Proxy.newProxyInstance(IDrone.class.getClassLoader(), new Class<?>[] { IDrone.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getData":
+                    return data;
+                case "down":
+                    landedOn.complete(Thread.currentThread().getName());
+                    return CompletableFuture.completedFuture(null);
+                default:
+                    // The climb never completes
+                    return new CompletableFuture<Void>();
+            }
+        });
+        VaporController controller = new VaporController(drone);
+        controller.whenReady().join();
+        controller.setCommandTimeout(20, TimeUnit.MILLISECONDS);
+        controller.setDroneCommands(controller.compile(TestFixtures.itineraries(1, 5)[0]));
+        try {
+            controller.fly().join();
+            throw new AssertionError("The flight must be aborted");
+        }
+        catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof FlightAbortedException);
+            assertTrue(e.getCause().getCause() instanceof TimeoutException);
+        }
+        assertNotEquals("vapor-timer", landedOn.join());
+    }
+}
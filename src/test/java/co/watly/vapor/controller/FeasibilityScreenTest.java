@@ -0,0 +1,127 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDroneData;
+import co.watly.vapor.telemetry.Event;
+import co.watly.vapor.telemetry.Measure;
+import co.watly.vapor.telemetry.Phase;
+import co.watly.vapor.telemetry.Telemetry;
+
+/**
+ * The screen must find feasible exactly the pairs the planning compiles, pricing them with the same journey
+ * @author Marco Vasapollo
+ *
+ */
+public class FeasibilityScreenTest {
+    
+    @Test
+    public void distanceScreenAgreesWithThePlan() {
+        check(EnergyModel.DISTANCE);
+    }
+    
+    @Test
+    public void weightedScreenAgreesWithThePlan() {
+        check(new EnergyModel(1.8, 0.6, 1, 0.5, 0.4, 0.3));
+    }
+    
+    private static void check(EnergyModel energyModel) {
+        Random random = new Random(21);
+        List<IDroneData> fleet = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            fleet.add(TestFixtures.droneData(random));
+        }
+        // Some loads too heavy and some trips too long for the smaller drones
+        List<Itinerary> wave = new ArrayList<>();
+        for (Itinerary itinerary : TestFixtures.itineraries(60, 22)) {
+            wave.add(new Itinerary(itinerary.getStart(), itinerary.getEnd(), itinerary.getMaxHeight(), 1 + random.nextInt(80)));
+        }
+        FeasibilityScreen screen = new FeasibilityScreen(energyModel, null);
+        FeasibilityMatrix matrix = screen.screen(wave, fleet, Runnable::run, 1).join();
+        
+        List<VaporController> controllers = new ArrayList<>();
+        AtomicLong totalRoute = new AtomicLong();
+        for (IDroneData droneData : fleet) {
+            VaporController controller = TestFixtures.controller(droneData);
+            controller.setEnergyModel(energyModel);
+            controller.setTelemetry(routeTracer(totalRoute));
+            controllers.add(controller);
+        }
+        int feasible = 0;
+        int infeasible = 0;
+        for (int i = 0; i < wave.size(); i++) {
+            long[] energies = screen.screen(wave.get(i), fleet);
+            for (int d = 0; d < fleet.size(); d++) {
+                assertEquals(matrix.getEnergy(i, d), energies[d]);
+                totalRoute.set(-1);
+                try {
+                    controllers.get(d).compile(wave.get(i));
+                    assertEquals("Itinerary " + i + " on drone " + d, totalRoute.get(), energies[d]);
+                    feasible++;
+                }
+                catch (WeightExcessException | InsufficientAutonomyException e) {
+                    assertEquals("Itinerary " + i + " on drone " + d + ": " + e.getMessage(), -1, energies[d]);
+                    infeasible++;
+                }
+            }
+        }
+        assertTrue(feasible > 0 && infeasible > 0);
+    }
+    
+    /**
+     * @return a telemetry keeping the total route the planning priced last
+     */
+    private static Telemetry routeTracer(AtomicLong totalRoute) {
+        return new Telemetry() {
+            
+            @Override
+            public boolean isEnabled() {
+                return false;
+            }
+            
+            @Override
+            public boolean isTracing() {
+                return true;
+            }
+            
+            @Override
+            public void record(Phase phase, long nanos) {
+            }
+            
+            @Override
+            public void measure(Measure measure, long value) {
+            }
+            
+            @Override
+            public void count(Event event) {
+            }
+            
+            @Override
+            public void trace(Event event, Object... details) {
+                if (event == Event.ROUTE_CALCULATED) {
+                    totalRoute.set(((Number) details[0]).longValue());
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDrone;
+import co.watly.vapor.model.IDroneData;
+
+/**
+ * A drone is dispatched only when nothing else is queued on it, and is available again once its missions are over
+ * @author Marco Vasapollo
+ *
+ */
+public class FleetControllerTest {
+    
+    @Test
+    public void concurrentWavesNeverShareADrone() {
+        try (FleetController fleet = fleet(2)) {
+            Queue<Runnable> screening = new ArrayDeque<>();
+            Executor held = screening::add;
+            Itinerary[] itineraries = TestFixtures.itineraries(4, 31);
+            CompletableFuture<Assignment> first = fleet.dispatch(Arrays.asList(itineraries[0], itineraries[1]), new FeasibilityScreen(), held);
+            CompletableFuture<Assignment> second = fleet.dispatch(Arrays.asList(itineraries[2], itineraries[3]), new FeasibilityScreen(), held);
+            while (!screening.isEmpty()) {
+                screening.poll().run();
+            }
+            assertEquals(2, first.join().getAssignedCount());
+            assertEquals(0, second.join().getAssignedCount());
+            landAll(first.join());
+            assertEquals(2, fleet.dispatch(Arrays.asList(itineraries[2], itineraries[3]), new FeasibilityScreen(), Runnable::run).join().getAssignedCount());
+        }
+    }
+    
+    @Test
+    public void queuedDroneIsNotDispatched() throws InterruptedException {
+        try (FleetController fleet = fleet(2)) {
+            Itinerary[] itineraries = TestFixtures.itineraries(4, 31);
+            // Holds the shared lane with its first maneuver, so that the missions submitted next stay queued
+            CountDownLatch release = new CountDownLatch(1);
+            fleet.register("blocker", blockingDrone(release)).whenReady().join();
+            CompletableFuture<Void> blocked = fleet.submit("blocker", itineraries[3]);
+            while (fleet.getStatus("blocker") != DroneStatus.FLYING) {
+                Thread.sleep(1);
+            }
+            CompletableFuture<Void> mission = fleet.submit("drone-0", itineraries[0]);
+            assertEquals(DroneStatus.IDLE, fleet.getStatus("drone-0"));
+            Assignment assignment = fleet.dispatch(Arrays.asList(itineraries[1], itineraries[2]), new FeasibilityScreen(), Runnable::run).join();
+            assertEquals(1, assignment.getAssignedCount());
+            assertEquals("drone-1", assignment.getDroneId(assignment.getMission(0) == null ? 1 : 0));
+            release.countDown();
+            blocked.join();
+            mission.join();
+            landAll(assignment);
+        }
+    }
+    
+    @Test
+    public void unassignedDronesAreReleased() {
+        try (FleetController fleet = fleet(3)) {
+            List<Itinerary> single = Arrays.asList(TestFixtures.itineraries(1, 31));
+            Assignment first = fleet.dispatch(single, new FeasibilityScreen(), Runnable::run).join();
+            assertEquals(1, first.getAssignedCount());
+            landAll(first);
+            for (int wave = 0; wave < 5; wave++) {
+                landAll(fleet.dispatch(single, new FeasibilityScreen(), Runnable::run).join());
+            }
+            assertEquals(3, fleet.dispatch(Arrays.asList(TestFixtures.itineraries(3, 37)), new FeasibilityScreen(), Runnable::run).join().getAssignedCount());
+        }
+    }
+    
+    /**
+     * @return a fleet sharing a single lane, so that submitted missions stay queued behind the calling test
+     */
+    private static FleetController fleet(int drones) {
+        FleetController fleet = new FleetController(1);
+        for (int i = 0; i < drones; i++) {
+            fleet.register("drone-" + i, TestFixtures.drone(TestFixtures.droneData())).whenReady().join();
+        }
+        return fleet;
+    }
+    
+    /**
+     * @return a drone whose maneuvers block the calling thread until released
+     */
+    private static IDrone blockingDrone(CountDownLatch release) {
+        final CompletableFuture<IDroneData> data = CompletableFuture.completedFuture(TestFixtures.droneData());
+        return (IDrone) Proxy.newProxyInstance(IDrone.class.getClassLoader(), new Class<?>[] { IDrone.class }, (proxy, method, args) -> {
+            if ("getData".equals(method.getName())) {
+                return data;
+            }
+            release.await();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+    
+    private static void landAll(Assignment assignment) {
+        for (int i = 0; i < assignment.getItineraryCount(); i++) {
+            if (assignment.getMission(i) != null) {
+                assignment.getMission(i).join();
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.FlightState;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDrone;
+import co.watly.vapor.model.IDroneData;
+import co.watly.vapor.simulation.SimulatedDrone;
+import co.watly.vapor.simulation.SimulationClock;
+import co.watly.vapor.telemetry.Telemetry;
+import co.watly.vapor.util.Futures;
+import co.watly.vapor.util.GeoPoints;
+
+/**
+ * Aborts must never wait for the drone, and every issued step must be accounted for
+ * @author Marco Vasapollo
+ *
+ */
+public class FlightExecutionTest {
+    
+    private static final DroneCommand[] PLAN = { new DroneCommand("up", 100, 1000L), new DroneCommand("forward", 100, 2000L), new DroneCommand("down", 100, 1000L) };
+    
+    @Test
+    public void hungDroneCallDoesNotDelayAborts() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> calls = new CopyOnWriteArrayList<>();
+        // The forward of the first drone hangs inside the drone call, the one of the second is just long
+        VaporController hung = controller(drone(calls, "forward", release));
+        List<String> otherCalls = new CopyOnWriteArrayList<>();
+        VaporController other = controller(drone(otherCalls, "forward", new CountDownLatch(0)));
+        CompletableFuture<Void> hungFlight = startInBackground(hung);
+        CompletableFuture<Void> otherFlight = startInBackground(other);
+        while (!calls.contains("forward") || !otherCalls.contains("forward")) {
+            Thread.sleep(1);
+        }
+        // One after the other, as a fleet-wide abort does
+        CompletableFuture<Void> hungLanding = CompletableFuture.supplyAsync(hung::abort).get(1, TimeUnit.SECONDS);
+        CompletableFuture<Void> otherLanding = CompletableFuture.supplyAsync(other::abort).get(1, TimeUnit.SECONDS);
+        otherLanding.get(1, TimeUnit.SECONDS);
+        assertTrue(otherFlight.isCompletedExceptionally());
+        assertTrue(hung.getCurrentFlight().isAborted());
+        assertFalse("The landing cannot overtake the hung command", calls.contains("down"));
+        
+
+        release.countDown();
+        hungLanding.get(1, TimeUnit.SECONDS);
+        assertEquals("down", calls.get(calls.size() - 1));
+        try {
+            hungFlight.join();
+        }
+        catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof FlightAbortedException);
+            return;
+        }
+        throw new AssertionError("The flight must be aborted");
+    }
+    
+    @Test
+    public void refusedCommandEndsItsStep() {
+        VaporController controller = controller(drone(new CopyOnWriteArrayList<>(), "forward", null));
+        try {
+            controller.fly().join();
+            throw new AssertionError("The flight must fail");
+        }
+        catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        long[] latencies = controller.getCurrentFlight().getStepLatencies();
+        assertEquals(2, latencies.length);
+        for (long latency : latencies) {
+            assertTrue(latency >= 0);
+        }
+    }
+    
+    @Test
+    public void replanResumesFromTheFailedStep() {
+        Coordinates start = new Coordinates(45.46, 9.18, 0);
+        Coordinates first = new Coordinates(45.47, 9.19, 0);
+        Coordinates second = new Coordinates(45.465, 9.2, 0);
+        Coordinates end = new Coordinates(45.46, 9.21, 500);
+        Itinerary itinerary = new Itinerary(start, Arrays.asList(first, second), true, end, 12000, 5);
+        IDroneData droneData = TestFixtures.droneData();
+        DroneCommand[] plan = TestFixtures.controller(droneData).compile(itinerary);
+        
+        // The drone refuses the second leg
+        AtomicInteger forwards = new AtomicInteger();
+        final CompletableFuture<IDroneData> data = CompletableFuture.completedFuture(droneData);
+        VaporController controller = new VaporController((IDrone) Proxy.newProxyInstance(IDrone.class.getClassLoader(), new Class<?>[] { IDrone.class }, (proxy, method, args) -> {
+            if ("getData".equals(method.getName())) {
+                return data;
+            }
+            if ("forward".equals(method.getName()) && forwards.incrementAndGet() == 2) {
+                return Futures.failed(new IllegalStateException("Drone lost the second leg"));
+            }
+            return CompletableFuture.completedFuture(null);
+        }));
+        controller.whenReady().join();
+        controller.setDroneCommands(plan);
+        try {
+            controller.fly().join();
+            throw new AssertionError("The flight must fail");
+        }
+        catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        int completed = controller.getCurrentFlight().getCompletedSteps();
+        assertEquals("The failed leg is not completed", secondForward(plan), completed);
+        
+        FlightState flightState = controller.progress(itinerary, plan, completed);
+        assertEquals(first.getLatitude(), flightState.getPosition().getLatitude(), 1e-9);
+        assertEquals(first.getLongitude(), flightState.getPosition().getLongitude(), 1e-9);
+        DroneCommand[] resumed = controller.replan(flightState, Collections.singletonList(second), true, end);
+        
+        // Flying what was completed, then the resumed plan, still visits the second stop and lands at the end
+        SimulationClock clock = new SimulationClock();
+        SimulatedDrone drone = new SimulatedDrone(clock, droneData, start, 0);
+        VaporController simulated = new VaporController(drone.getDrone());
+        clock.run(simulated.whenReady());
+        DroneCommand[] flown = Arrays.copyOf(plan, completed + resumed.length);
+        System.arraycopy(resumed, 0, flown, completed, resumed.length);
+        simulated.setDroneCommands(flown);
+        CompletableFuture<Void> flight = simulated.fly();
+        clock.run(flight);
+        flight.join();
+        Coordinates landed = drone.getPosition();
+        assertEquals(0, GeoPoints.distance(landed.getLatitude(), landed.getLongitude(), end.getLatitude(), end.getLongitude()), 20);
+        assertEquals(end.getHeight(), landed.getHeight(), 100);
+    }
+    
+    @Test
+    public void blockingRunTimesStepsLikeStart() {
+        // Climbs can run together with forwards, anything else waits
+        OverlapPolicy climbWhileForward = (running, next) -> PlanWriter.UP.equals(running.getName()) && PlanWriter.FORWARD.equals(next.getName());
+        DroneCommand[] plan = { new DroneCommand("up", 100, 1000L), new DroneCommand("forward", 100, 2000L), new DroneCommand("rotate", 100, 90.0), 
+                new DroneCommand("forward", 100, 2000L), new DroneCommand("down", 100, 1000L) };
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            for (OverlapPolicy overlapPolicy : new OverlapPolicy[] { OverlapPolicy.SEQUENTIAL, climbWhileForward }) {
+                List<String> startCalls = new CopyOnWriteArrayList<>();
+                AtomicInteger startPeak = new AtomicInteger();
+                FlightExecution started = new FlightExecution(timedDrone(timer, startCalls, startPeak), Arrays.asList(plan).iterator(), overlapPolicy, Telemetry.NONE, null, 0, null).start();
+                started.getCompletion().join();
+                
+                List<String> runCalls = new CopyOnWriteArrayList<>();
+                AtomicInteger runPeak = new AtomicInteger();
+                FlightExecution ran = new FlightExecution(timedDrone(timer, runCalls, runPeak), Arrays.asList(plan).iterator(), overlapPolicy, Telemetry.NONE, null, 0, null).run();
+                assertTrue("run() returns once the flight is over", ran.getCompletion().isDone());
+                ran.getCompletion().join();
+                
+                assertEquals(startCalls, runCalls);
+                assertEquals(startPeak.get(), runPeak.get());
+                assertEquals(overlapPolicy == OverlapPolicy.SEQUENTIAL ? 1 : 2, runPeak.get());
+                for (FlightExecution flight : new FlightExecution[] { started, ran }) {
+                    assertEquals(plan.length, flight.getIssuedSteps());
+                    assertEquals(plan.length, flight.getCompletedSteps());
+                    for (long latency : flight.getStepLatencies()) {
+                        assertTrue("Step latency " + latency, latency >= TimeUnit.MILLISECONDS.toNanos(5));
+                    }
+                }
+            }
+        }
+        finally {
+            timer.shutdown();
+        }
+    }
+    
+    /**
+     * @return a drone whose maneuvers complete 5 ms after being issued, keeping the peak of the maneuvers running together
+     */
+    private static IDrone timedDrone(ScheduledExecutorService timer, List<String> calls, AtomicInteger peak) {
+        final CompletableFuture<IDroneData> data = CompletableFuture.completedFuture(TestFixtures.droneData());
+        final AtomicInteger running = new AtomicInteger();
+        return (IDrone) Proxy.newProxyInstance(IDrone.class.getClassLoader(), new Class<?>[] { IDrone.class }, (proxy, method, args) -> {
+            if ("getData".equals(method.getName())) {
+                return data;
+            }
+            calls.add(method.getName());
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            CompletableFuture<Void> maneuver = new CompletableFuture<>();
+            timer.schedule(() -> {
+                running.decrementAndGet();
+                maneuver.complete(null);
+            }, 5, TimeUnit.MILLISECONDS);
+            return maneuver;
+        });
+    }
+    
+    private static int secondForward(DroneCommand[] plan) {
+        int forwards = 0;
+        for (int step = 0; step < plan.length; step++) {
+            if ("forward".equals(plan[step].getName()) && ++forwards == 2) {
+                return step;
+            }
+        }
+        throw new AssertionError("The plan has less than 2 legs");
+    }
+    
+    private static VaporController controller(IDrone drone) {
+        VaporController controller = new VaporController(drone);
+        controller.whenReady().join();
+        controller.setDroneCommands(PLAN);
+        return controller;
+    }
+    
+    private static CompletableFuture<Void> startInBackground(VaporController controller) {
+        return CompletableFuture.supplyAsync(controller::fly, runnable -> new Thread(runnable).start()).thenCompose(flight -> flight);
+    }
+    
+    /**
+     * @param failing the maneuver that hangs until released, throws if there is nothing to wait for, 
+     * or never completes if already released
+     */
+    private static IDrone drone(List<String> calls, String failing, CountDownLatch release) {
+        final CompletableFuture<IDroneData> data = CompletableFuture.completedFuture(TestFixtures.droneData());
+        return (IDrone) Proxy.newProxyInstance(IDrone.class.getClassLoader(), new Class<?>[] { IDrone.class }, (proxy, method, args) -> {
+            if ("getData".equals(method.getName())) {
+                return data;
+            }
+            calls.add(method.getName());
+            if (method.getName().equals(failing)) {
+                if (release == null) {
+                    throw new IllegalStateException("Drone refused " + failing);
+                }
+                if (release.getCount() == 0) {
+                    return new CompletableFuture<Void>();
+                }
+                release.await();
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDroneData;
+
+/**
+ * Concurrent requests of a plan being computed must share it, whatever the cache size and ttl, and a cached plan must still fit the drone asking for it
+ * @author Marco Vasapollo
+ *
+ */
+public class PlanCacheTest {
+    
+    private static final IDroneData DRONE_DATA = TestFixtures.droneData();
+    private static final DroneCommand[] PLAN = { new DroneCommand("up", 100, 1000L), new DroneCommand("down", 100, 1000L) };
+    
+    @Test
+    public void pendingPlanSurvivesOverflow() {
+        PlanCache cache = new PlanCache(1, 1, TimeUnit.HOURS);
+        Itinerary[] itineraries = TestFixtures.itineraries(3, 11);
+        CompletableFuture<DroneCommand[]> pending = new CompletableFuture<>();
+        AtomicInteger planned = new AtomicInteger();
+        Function<Itinerary, CompletableFuture<DroneCommand[]>> slow = itinerary -> {
+            planned.incrementAndGet();
+            return pending;
+        };
+        CompletableFuture<DroneCommand[]> first = cache.get(itineraries[0], DRONE_DATA, slow);
+        cache.get(itineraries[1], DRONE_DATA, itinerary -> CompletableFuture.completedFuture(PLAN));
+        cache.get(itineraries[2], DRONE_DATA, itinerary -> CompletableFuture.completedFuture(PLAN));
+        CompletableFuture<DroneCommand[]> second = cache.get(itineraries[0], DRONE_DATA, slow);
+        assertEquals(1, planned.get());
+        pending.complete(PLAN);
+        assertEquals(PLAN.length, first.join().length);
+        assertEquals(PLAN.length, second.join().length);
+        assertEquals(1, cache.size());
+    }
+    
+    @Test
+    public void ttlStartsOnceComputed() throws InterruptedException {
+        PlanCache cache = new PlanCache(10, 50, TimeUnit.MILLISECONDS);
+        Itinerary itinerary = TestFixtures.itineraries(1, 11)[0];
+        CompletableFuture<DroneCommand[]> pending = new CompletableFuture<>();
+        AtomicInteger planned = new AtomicInteger();
+        Function<Itinerary, CompletableFuture<DroneCommand[]>> slow = normalized -> {
+            planned.incrementAndGet();
+            return pending;
+        };
+        cache.get(itinerary, DRONE_DATA, slow);
+        Thread.sleep(100);
+        assertEquals(0, cache.evictExpired());
+        cache.get(itinerary, DRONE_DATA, slow);
+        pending.complete(PLAN);
+        cache.get(itinerary, DRONE_DATA, slow).join();
+        assertEquals(1, planned.get());
+        assertEquals(2, cache.getHits());
+        Thread.sleep(100);
+        assertEquals(1, cache.evictExpired());
+    }
+    
+    @Test
+    public void computedPlansAreBounded() {
+        PlanCache cache = new PlanCache(2, 1, TimeUnit.HOURS);
+        for (Itinerary itinerary : TestFixtures.itineraries(5, 11)) {
+            cache.get(itinerary, DRONE_DATA, normalized -> CompletableFuture.completedFuture(PLAN)).join();
+        }
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.getEvictions());
+    }
+    
+    @Test
+    public void drainedJourneyIsCheckedOnHit() {
+        PlanCache cache = new PlanCache(10, 1, TimeUnit.HOURS);
+        Itinerary itinerary = TestFixtures.itineraries(1, 11)[0];
+        AtomicInteger planned = new AtomicInteger();
+        Function<Itinerary, CompletableFuture<DroneCommand[]>> planner = normalized -> {
+            planned.incrementAndGet();
+            return CompletableFuture.completedFuture(PLAN);
+        };
+        cache.get(itinerary, DRONE_DATA, planner).join();
+        // PLAN consumes 200 cm
+        cache.get(itinerary, TestFixtures.droneData("Vapor Test", 300L, 50L, 2000L, 5.0), planner).join();
+        try {
+            cache.get(itinerary, TestFixtures.droneData("Vapor Test", 150L, 50L, 2000L, 5.0), planner).join();
+            fail("A drone without the journey the cached plan consumes must not get it");
+        }
+        catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof InsufficientAutonomyException);
+        }
+        assertEquals(1, planned.get());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.size());
+    }
+    
+    @Test
+    public void energyModelAndPlanningModeAreKeyed() {
+        PlanCache cache = new PlanCache(10, 1, TimeUnit.HOURS);
+        Itinerary itinerary = TestFixtures.itineraries(1, 11)[0];
+        Function<Itinerary, CompletableFuture<DroneCommand[]>> planner = normalized -> CompletableFuture.completedFuture(PLAN);
+        cache.get(itinerary, DRONE_DATA, EnergyModel.DISTANCE, PlanningMode.DSL, planner).join();
+        cache.get(itinerary, DRONE_DATA, EnergyModel.DISTANCE, PlanningMode.COMPILED, planner).join();
+        cache.get(itinerary, DRONE_DATA, new EnergyModel(2, 0.5, 1, 1, 0.4, 0.2), PlanningMode.COMPILED, planner).join();
+        assertEquals(3, cache.size());
+        // Equal models share their plans
+        cache.get(itinerary, DRONE_DATA, new EnergyModel(2, 0.5, 1, 1, 0.4, 0.2), PlanningMode.COMPILED, planner).join();
+        cache.get(itinerary, DRONE_DATA, new EnergyModel(1, 1, 1, 1, 0, 0), PlanningMode.DSL, planner).join();
+        assertEquals(3, cache.size());
+        assertEquals(2, cache.getHits());
+    }
+}
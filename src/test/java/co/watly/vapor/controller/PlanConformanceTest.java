@@ -0,0 +1,74 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import co.watly.Vapor;
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.Itinerary;
+
+/**
+ * The compiled planning path must produce exactly the Drone Commands the Vapor Generator produces from the DSL:
+ * same maneuvers, same speeds and same arguments, integral or decimal alike
+ * @author Marco Vasapollo
+ *
+ */
+public class PlanConformanceTest {
+    
+    private static final int DRONES = 20;
+    
+    @Test
+    public void compiledPlansMatchGeneratedOnes() {
+        Random random = new Random(2);
+        int compared = 0;
+        for (int d = 0; d < DRONES; d++) {
+            VaporController controller = TestFixtures.controller(TestFixtures.droneData(random));
+            for (Itinerary itinerary : TestFixtures.itineraries(100, 1000 + d)) {
+                compared += compare(controller, itinerary);
+            }
+            for (Itinerary itinerary : TestFixtures.rounds(100, 6, 2000 + d)) {
+                compared += compare(controller, itinerary);
+            }
+        }
+        assertTrue("Too few plans compared: " + compared, compared > DRONES * 100);
+    }
+    
+    /**
+     * @return 1 if both paths planned the itinerary, 0 if both refused it with the same error
+     */
+    private static int compare(VaporController controller, Itinerary itinerary) {
+        DroneCommand[] compiled;
+        try {
+            compiled = controller.compile(itinerary);
+        }
+        catch (RuntimeException compileError) {
+            try {
+                controller.convert(itinerary);
+            }
+            catch (RuntimeException convertError) {
+                assertEquals(itinerary.toString(), compileError.getClass(), convertError.getClass());
+                return 0;
+            }
+            throw new AssertionError("Only the compiled path refused " + itinerary, compileError);
+        }
+        DroneCommand[] generated = DroneCommand.fromJSON(Vapor.generate(controller.convert(itinerary)).join());
+        assertArrayEquals(itinerary.toString(), generated, compiled);
+        return 1;
+    }
+}
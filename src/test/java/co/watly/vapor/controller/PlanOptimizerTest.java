@@ -0,0 +1,118 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDroneData;
+import co.watly.vapor.simulation.SimulatedDrone;
+import co.watly.vapor.simulation.SimulationClock;
+import co.watly.vapor.util.GeoPoints;
+
+/**
+ * An optimized plan must never be slower, longer or bigger than the compiled one, 
+ * and must land the drone where the compiled one does, with the same heading
+ * @author Marco Vasapollo
+ *
+ */
+public class PlanOptimizerTest {
+    
+    // Climbs can run together with forwards, anything else waits
+    private static final OverlapPolicy CLIMB_WHILE_FORWARD = (running, next) -> PlanWriter.UP.equals(running.getName()) && PlanWriter.FORWARD.equals(next.getName());
+    
+    private static final IDroneData DRONE_DATA = TestFixtures.droneData();
+    
+    @Test
+    public void sequentialPlansLandAlike() {
+        check(OverlapPolicy.SEQUENTIAL);
+    }
+    
+    @Test
+    public void overlappingPlansLandAlike() {
+        check(CLIMB_WHILE_FORWARD);
+    }
+    
+    @Test
+    public void movesAndRotationsAreMerged() {
+        PlanOptimizer optimizer = new PlanOptimizer(OverlapPolicy.SEQUENTIAL);
+        DroneCommand[] plan = { new DroneCommand("up", 100, 1000L), new DroneCommand("up", 100, 500L), new DroneCommand("rotate", 100, 270.0), 
+                new DroneCommand("rotate", 100, 0.0), new DroneCommand("forward", 100, 0L), new DroneCommand("down", 100, 1500L) };
+        assertArrayEquals(new DroneCommand[] { new DroneCommand("up", 100, 1500L), new DroneCommand("rotate", 100, 270.0), new DroneCommand("down", 100, 1500L) }, 
+                optimizer.optimize(plan));
+        DroneCommand[] optimal = { new DroneCommand("up", 100, 1000L), new DroneCommand("down", 100, 1000L) };
+        assertTrue("An optimal plan must be handed back as it is", optimal == optimizer.optimize(optimal));
+    }
+    
+    @Test
+    public void rotationsAreMergedModulo360() {
+        DroneCommand[] plan = { new DroneCommand("rotate", 100, 270.0), new DroneCommand("rotate", 100, 180.0), 
+                new DroneCommand("forward", 100, 1000L), new DroneCommand("rotate", 100, 300.0), new DroneCommand("rotate", 100, 60.0) };
+        assertArrayEquals(new DroneCommand[] { new DroneCommand("rotate", 100, 90.0), new DroneCommand("forward", 100, 1000L) }, 
+                new PlanOptimizer(OverlapPolicy.SEQUENTIAL).optimize(plan));
+    }
+    
+    @Test
+    public void counterRotationIsOptIn() {
+        DroneCommand[] plan = { new DroneCommand("rotate", 100, 200.0), new DroneCommand("rotate", 100, 70.0) };
+        assertArrayEquals(new DroneCommand[] { new DroneCommand("rotate", 100, 270.0) }, new PlanOptimizer(OverlapPolicy.SEQUENTIAL).optimize(plan));
+        assertArrayEquals(new DroneCommand[] { new DroneCommand("rotate", 100, -90.0) }, new PlanOptimizer(OverlapPolicy.SEQUENTIAL, true).optimize(plan));
+    }
+    
+    private static void check(OverlapPolicy overlapPolicy) {
+        PlanOptimizer optimizer = new PlanOptimizer(overlapPolicy);
+        VaporController controller = TestFixtures.controller(DRONE_DATA);
+        for (Itinerary itinerary : TestFixtures.rounds(300, 5, 24)) {
+            DroneCommand[] compiled = controller.compile(itinerary);
+            DroneCommand[] optimized = optimizer.optimize(compiled);
+            assertTrue(optimized.length <= compiled.length);
+            assertTrue(optimizer.flightTime(optimized) <= optimizer.flightTime(compiled));
+            assertTrue(PlanOptimizer.journey(optimized, EnergyModel.DISTANCE, itinerary.getWeight(), DRONE_DATA) <= PlanOptimizer.journey(compiled, EnergyModel.DISTANCE, itinerary.getWeight(), DRONE_DATA));
+            assertArrayEquals("Optimizing twice must change nothing", optimized, optimizer.optimize(optimized));
+            for (DroneCommand droneCommand : optimized) {
+                if (PlanWriter.ROTATE.equals(droneCommand.getName())) {
+                    assertTrue(droneCommand.getArgAsDouble() >= 0 && droneCommand.getArgAsDouble() < 360);
+                }
+            }
+            
+            SimulatedDrone original = fly(itinerary, compiled, overlapPolicy);
+            SimulatedDrone optimizedDrone = fly(itinerary, optimized, overlapPolicy);
+            Coordinates a = original.getPosition();
+            Coordinates b = optimizedDrone.getPosition();
+            assertEquals(0, GeoPoints.distance(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude()), 1);
+            assertEquals(a.getHeight(), b.getHeight(), 1);
+            double heading = Math.abs(original.getHeading() - optimizedDrone.getHeading()) % 360;
+            assertEquals(0, Math.min(heading, 360 - heading), 1e-6);
+        }
+    }
+    
+    private static SimulatedDrone fly(Itinerary itinerary, DroneCommand[] droneCommands, OverlapPolicy overlapPolicy) {
+        SimulationClock clock = new SimulationClock();
+        SimulatedDrone drone = new SimulatedDrone(clock, DRONE_DATA, itinerary.getStart(), 0);
+        VaporController controller = new VaporController(drone.getDrone());
+        controller.setOverlapPolicy(overlapPolicy);
+        clock.run(controller.whenReady());
+        controller.setDroneCommands(droneCommands);
+        CompletableFuture<Void> flight = controller.fly();
+        clock.run(flight);
+        flight.join();
+        return drone;
+    }
+}
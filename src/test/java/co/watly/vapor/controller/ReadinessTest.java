@@ -0,0 +1,101 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.model.IDrone;
+import co.watly.vapor.model.IDroneData;
+
+/**
+ * A controller must become ready with the first Drone data that arrives, even after failed requests,
+ * and must never go back to data older than the data in use
+ * @author Marco Vasapollo
+ *
+ */
+public class ReadinessTest {
+    
+    @Test
+    public void readyAfterAFailedRequest() {
+        ConcurrentLinkedQueue<CompletableFuture<IDroneData>> requests = new ConcurrentLinkedQueue<>();
+        VaporController controller = new VaporController(drone(requests));
+        controller.setPlanningMode(PlanningMode.COMPILED);
+        CompletableFuture<IDroneData> waiting = controller.whenReady();
+        requests.poll().completeExceptionally(new IOException("Drone not reachable"));
+        assertTrue("Whoever waits must know of the failure", waiting.isCompletedExceptionally());
+        assertFalse(controller.isReady());
+        
+        CompletableFuture<IDroneData> ready = controller.whenReady();
+        assertFalse("A failed request must not fail the next readiness", ready.isDone());
+        CompletableFuture<?> plan = controller.plan(TestFixtures.itineraries(1, 10)[0]);
+        controller.refreshDroneData();
+        IDroneData data = TestFixtures.droneData();
+        requests.poll().complete(data);
+        assertTrue(controller.isReady());
+        assertSame(data, ready.join());
+        assertSame(data, controller.whenReady().join());
+        plan.join();
+    }
+    
+    @Test
+    public void staleDataIsNotUsed() {
+        ConcurrentLinkedQueue<CompletableFuture<IDroneData>> requests = new ConcurrentLinkedQueue<>();
+        VaporController controller = new VaporController(drone(requests));
+        controller.refreshDroneData();
+        CompletableFuture<IDroneData> first = requests.poll();
+        CompletableFuture<IDroneData> second = requests.poll();
+        IDroneData newer = TestFixtures.droneData();
+        IDroneData older = TestFixtures.droneData();
+        second.complete(newer);
+        first.complete(older);
+        assertSame(newer, controller.getDroneData());
+        assertSame(newer, controller.whenReady().join());
+        
+        controller.refreshDroneData();
+        requests.poll().completeExceptionally(new IOException("Drone not reachable"));
+        assertSame("A failed refresh must keep the data in use", newer, controller.getDroneData());
+        assertTrue(controller.isReady());
+    }
+    
+    @Test
+    public void readinessTimeoutIsApplied() {
+        ConcurrentLinkedQueue<CompletableFuture<IDroneData>> requests = new ConcurrentLinkedQueue<>();
+        VaporController controller = new VaporController(drone(requests));
+        controller.setReadinessTimeout(50, TimeUnit.MILLISECONDS);
+        CompletableFuture<?> plan = controller.plan(TestFixtures.itineraries(1, 10)[0]);
+        assertTrue(plan.handle((commands, error) -> error != null).join());
+    }
+    
+    /**
+     * @return a drone that answers each data request with a future queued in the given queue
+     */
+    private static IDrone drone(ConcurrentLinkedQueue<CompletableFuture<IDroneData>> requests) {
+        return (IDrone) Proxy.newProxyInstance(IDrone.class.getClassLoader(), new Class<?>[] { IDrone.class }, (proxy, method, args) -> {
+            if ("getData".equals(method.getName())) {
+                CompletableFuture<IDroneData> request = new CompletableFuture<>();
+                requests.add(request);
+                return request;
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.util.GeoPoints;
+
+/**
+ * The route must visit every waypoint once between the fixed start and end, 
+ * keep the given order when asked to, and otherwise be no longer than the given order
+ * @author Marco Vasapollo
+ *
+ */
+public class RoutePlannerTest {
+    
+    @Test
+    public void routesVisitEveryWaypointOnce() {
+        for (Itinerary itinerary : TestFixtures.rounds(500, 30, 12)) {
+            List<Coordinates> route = RoutePlanner.route(itinerary);
+            List<Coordinates> waypoints = itinerary.getWaypoints();
+            assertEquals(waypoints.size() + 2, route.size());
+            assertSame(itinerary.getStart(), route.get(0));
+            assertSame(itinerary.getEnd(), route.get(route.size() - 1));
+            assertEquals(new HashSet<>(waypoints), new HashSet<>(route.subList(1, route.size() - 1)));
+            if (itinerary.isOrderedWaypoints()) {
+                assertEquals(waypoints, route.subList(1, route.size() - 1));
+            }
+            else {
+                List<Coordinates> given = new ArrayList<>(waypoints);
+                given.add(0, itinerary.getStart());
+                given.add(itinerary.getEnd());
+                assertTrue(length(route) <= length(given) + 0.01);
+            }
+        }
+    }
+    
+    @Test
+    public void smallRoutesAreNearTheOptimum() {
+        for (Itinerary itinerary : TestFixtures.rounds(200, 7, 14)) {
+            if (itinerary.getWaypoints().size() < 2) {
+                continue;
+            }
+            List<Coordinates> stops = new ArrayList<>(itinerary.getWaypoints());
+            double optimum = shortest(itinerary.getStart(), stops, new ArrayList<>(), itinerary.getEnd(), Double.MAX_VALUE);
+            int[] order = RoutePlanner.optimize(itinerary.getStart(), stops, itinerary.getEnd());
+            List<Coordinates> route = new ArrayList<>();
+            route.add(itinerary.getStart());
+            for (int stop : order) {
+                route.add(stops.get(stop));
+            }
+            route.add(itinerary.getEnd());
+            assertTrue("Route " + length(route) + " cm, optimum " + optimum + " cm", length(route) <= optimum * 1.1);
+        }
+    }
+    
+    /**
+     * @return the length of the shortest route through the remaining stops, by exhaustive search
+     */
+    private static double shortest(Coordinates start, List<Coordinates> remaining, List<Coordinates> visited, Coordinates end, double best) {
+        if (remaining.isEmpty()) {
+            List<Coordinates> route = new ArrayList<>(visited);
+            route.add(0, start);
+            route.add(end);
+            return Math.min(best, length(route));
+        }
+        for (int i = 0; i < remaining.size(); i++) {
+            Coordinates stop = remaining.remove(i);
+            visited.add(stop);
+            best = shortest(start, remaining, visited, end, best);
+            visited.remove(visited.size() - 1);
+            remaining.add(i, stop);
+        }
+        return best;
+    }
+    
+    private static double length(List<Coordinates> route) {
+        double length = 0;
+        for (int i = 1; i < route.size(); i++) {
+            length += GeoPoints.distance(route.get(i - 1).getLatitude(), route.get(i - 1).getLongitude(), route.get(i).getLatitude(), route.get(i).getLongitude());
+        }
+        return length;
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.controller;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.data.Coordinates;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.Itinerary;
+import co.watly.vapor.model.IDroneData;
+import co.watly.vapor.simulation.SimulatedDrone;
+import co.watly.vapor.simulation.SimulationClock;
+import co.watly.vapor.util.GeoPoints;
+
+/**
+ * Every forward must cover its leg: flown at its speed for its duration, and no further
+ * @author Marco Vasapollo
+ *
+ */
+public class RouteProfileTest {
+    
+    private static final IDroneData DRONE_DATA = TestFixtures.droneData();
+    
+    @Test
+    public void forwardsCoverTheLegs() {
+        VaporController controller = TestFixtures.controller(DRONE_DATA);
+        for (Itinerary itinerary : TestFixtures.rounds(300, 6, 23)) {
+            List<Coordinates> route = RoutePlanner.route(itinerary);
+            long legs = 0;
+            for (int leg = 1; leg < route.size(); leg++) {
+                legs += VaporController.calculateDistance(route.get(leg - 1).getLatitude(), route.get(leg).getLatitude(), route.get(leg - 1).getLongitude(), route.get(leg).getLongitude());
+            }
+            long flown = 0;
+            long speed = 0;
+            for (DroneCommand droneCommand : controller.compile(itinerary)) {
+                if (PlanWriter.FORWARD.equals(droneCommand.getName())) {
+                    flown += droneCommand.getSpeed() * droneCommand.getArgAsLong() / 1000;
+                    speed = droneCommand.getSpeed();
+                }
+            }
+            // Durations are truncated to the millisecond
+            assertEquals(legs, flown, (route.size() - 1) * (speed / 1000 + 1));
+        }
+    }
+    
+    @Test
+    public void durationMatchesThePlan() {
+        VaporController controller = TestFixtures.controller(DRONE_DATA);
+        PlanOptimizer optimizer = new PlanOptimizer(OverlapPolicy.SEQUENTIAL);
+        for (Itinerary itinerary : TestFixtures.itineraries(300, 23)) {
+            DroneCommand[] plan = controller.compile(itinerary);
+            long duration = RouteProfile.of(itinerary, null).duration(VaporController.calculateSpeeds(itinerary.getWeight(), DRONE_DATA));
+            // A rotation lasts a millisecond per degree, up to a millisecond more when priced by its radial distance
+            assertEquals(optimizer.flightTime(plan), duration, plan.length);
+        }
+    }
+    
+    @Test
+    public void openItinerariesLandAtTheirEnd() {
+        VaporController planner = TestFixtures.controller(DRONE_DATA);
+        for (Itinerary itinerary : TestFixtures.itineraries(50, 23)) {
+            SimulationClock clock = new SimulationClock();
+            SimulatedDrone drone = new SimulatedDrone(clock, DRONE_DATA, itinerary.getStart(), 0);
+            VaporController controller = new VaporController(drone.getDrone());
+            clock.run(controller.whenReady());
+            controller.setDroneCommands(planner.compile(itinerary));
+            CompletableFuture<Void> flight = controller.fly();
+            clock.run(flight);
+            flight.join();
+            Coordinates landed = drone.getPosition();
+            assertEquals(0, GeoPoints.distance(landed.getLatitude(), landed.getLongitude(), itinerary.getEnd().getLatitude(), itinerary.getEnd().getLongitude()), 100);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.gson.JsonParseException;
+
+import co.watly.vapor.util.JSON;
+
+/**
+ * Commands are decoded with their argument kept primitive, and refused without one
+ * @author Marco Vasapollo
+ *
+ */
+public class DroneCommandTest {
+    
+    @Test
+    public void argumentsKeepTheirKind() {
+        DroneCommand[] droneCommands = DroneCommand.fromJSON("[{\"name\": \"up\", \"speed\": 120, \"arg\": 1500}, {\"name\": \"rotate\", \"speed\": 120, \"arg\": 90.0}, "
+                + "{\"name\": \"forward\", \"speed\": 120, \"arg\": 1e3}, {\"name\": \"down\", \"speed\": 120, \"arg\": \"1500\"}]");
+        assertArrayEquals(new DroneCommand[] { new DroneCommand("up", 120, 1500L), new DroneCommand("rotate", 120, 90.0), new DroneCommand("forward", 120, 1000.0), 
+                new DroneCommand("down", 120, 1500L) }, droneCommands);
+        assertFalse(droneCommands[0].isDecimal());
+        assertTrue(droneCommands[2].isDecimal());
+        assertArrayEquals(droneCommands, DroneCommand.fromJSON(JSON.convert(droneCommands)));
+    }
+    
+    @Test(expected = JsonParseException.class)
+    public void nullArgumentIsRefused() {
+        DroneCommand.fromJSON("[{\"name\": \"up\", \"speed\": 120, \"arg\": null}]");
+    }
+    
+    @Test(expected = JsonParseException.class)
+    public void missingArgumentIsRefused() {
+        DroneCommand.fromJSON("[{\"name\": \"up\", \"speed\": 120}]");
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.Itinerary;
+
+/**
+ * Every record appended to a {@link FlightJournal} must be read back, or be counted as dropped,
+ * whatever the concurrency of the writers, the segment rotations and the slots left unfinished
+ * @author Marco Vasapollo
+ *
+ */
+public class FlightJournalTest {
+    
+    private static final int FLIGHTS = 200;
+    
+    // About 400 records per segment, so that concurrent flights rotate many times
+    private static final int SMALL_SEGMENT = FlightJournal.HEADER_SIZE + 400 * FlightJournal.RECORD_SIZE;
+    
+    private Path directory;
+    
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("flight-journal-test");
+    }
+    
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+    
+    @Test
+    public void concurrentFlightsReadBackCompletely() throws Exception {
+        FlightJournal journal = new FlightJournal(directory, SMALL_SEGMENT);
+        Itinerary[] rounds = TestFixtures.rounds(FLIGHTS, 10, 17);
+        VaporController[] controllers = new VaporController[FLIGHTS];
+        for (int i = 0; i < FLIGHTS; i++) {
+            controllers[i] = TestFixtures.controller(TestFixtures.droneData());
+            controllers[i].setJournal(journal);
+            controllers[i].setDroneCommands(controllers[i].compile(rounds[i]));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Void>> flights = new ArrayList<>();
+        try {
+            for (VaporController controller : controllers) {
+                flights.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    controller.fly().join();
+                }, pool));
+            }
+            start.countDown();
+            CompletableFuture.allOf(flights.toArray(new CompletableFuture<?>[flights.size()])).join();
+        }
+        finally {
+            pool.shutdown();
+        }
+        journal.close();
+        assertNull(journal.getError());
+        assertEquals(0, journal.getDropped());
+        
+        Map<Long, List<JournalEntry>> byFlight = new HashMap<>();
+        for (JournalEntry entry : JournalReader.read(directory)) {
+            byFlight.computeIfAbsent(entry.getFlightId(), id -> new ArrayList<>()).add(entry);
+        }
+        assertEquals(FLIGHTS, byFlight.size());
+        int expectedRecords = 0;
+        for (VaporController controller : controllers) {
+            expectedRecords += 2 * controller.getDroneCommands().length;
+        }
+        int records = 0;
+        for (List<JournalEntry> entries : byFlight.values()) {
+            boolean[] issued = new boolean[entries.size() / 2];
+            boolean[] completed = new boolean[entries.size() / 2];
+            for (JournalEntry entry : entries) {
+                (entry.getKind() == JournalEntry.Kind.ISSUED ? issued : completed)[entry.getStep()] = true;
+            }
+            for (int step = 0; step < issued.length; step++) {
+                assertTrue("Step " + step + " not issued", issued[step]);
+                assertTrue("Step " + step + " not completed", completed[step]);
+            }
+            records += entries.size();
+        }
+        assertEquals(expectedRecords, records);
+        assertTrue("The journal must have rotated", Files.list(directory).count() > 10);
+    }
+    
+    @Test
+    public void unfinishedAndSkippedSlotsAreSkipped() throws IOException {
+        DroneCommand up = new DroneCommand("up", 100, 1000L);
+        try (FlightJournal journal = new FlightJournal(directory, SMALL_SEGMENT)) {
+            long flightId = journal.nextFlightId();
+            for (int step = 0; step < 10; step++) {
+                journal.issued(flightId, step, up, System.nanoTime());
+            }
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().get();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // A slot never finished by its writer, one dropped by the journal, and garbage past the high-water mark
+            channel.write(ByteBuffer.wrap(new byte[] { 0 }), FlightJournal.HEADER_SIZE + 3 * FlightJournal.RECORD_SIZE);
+            channel.write(ByteBuffer.wrap(new byte[] { FlightJournal.SKIPPED }), FlightJournal.HEADER_SIZE + 5 * FlightJournal.RECORD_SIZE);
+            channel.write(ByteBuffer.wrap(new byte[] { FlightJournal.ISSUED }), FlightJournal.HEADER_SIZE + 12 * FlightJournal.RECORD_SIZE);
+        }
+        List<Integer> steps = new ArrayList<>();
+        for (JournalEntry entry : JournalReader.read(directory)) {
+            steps.add(entry.getStep());
+        }
+        assertEquals(java.util.Arrays.asList(0, 1, 2, 4, 6, 7, 8, 9), steps);
+    }
+    
+    @Test
+    public void closeWaitsForTheWriters() throws Exception {
+        FlightJournal journal = new FlightJournal(directory, SMALL_SEGMENT);
+        DroneCommand forward = new DroneCommand("forward", 100, 1000L);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong appended = new AtomicLong();
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Thread(() -> {
+                long flightId = journal.nextFlightId();
+                int step = 0;
+                while (running.get()) {
+                    journal.issued(flightId, step++, forward, System.nanoTime());
+                    appended.incrementAndGet();
+                }
+            });
+            writers[i].start();
+        }
+        Thread.sleep(50);
+        journal.close();
+        running.set(false);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(appended.get(), JournalReader.read(directory).size() + journal.getDropped());
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Every sink gets everything, traces only if it is tracing, counted otherwise
+ * @author Marco Vasapollo
+ *
+ */
+public class CompositeTelemetryTest {
+    
+    @Test
+    public void everySinkGetsEverything() {
+        RecordingTelemetry tracing = new RecordingTelemetry(true);
+        RecordingTelemetry counting = new RecordingTelemetry(false);
+        CompositeTelemetry composite = new CompositeTelemetry(tracing, counting, Telemetry.NONE);
+        assertTrue(composite.isEnabled());
+        assertTrue(composite.isTracing());
+        composite.record(Phase.COMPILE, 12);
+        composite.measure(Measure.JOURNEY_SAVED, 300);
+        composite.count(Event.PLAN_FAILED);
+        composite.trace(Event.ITINERARY_RECEIVED, "itinerary");
+        assertEquals(Arrays.asList("record COMPILE 12", "measure JOURNEY_SAVED 300", "count PLAN_FAILED", "trace ITINERARY_RECEIVED 1"), tracing.getReceived());
+        assertEquals(Arrays.asList("record COMPILE 12", "measure JOURNEY_SAVED 300", "count PLAN_FAILED", "count ITINERARY_RECEIVED"), counting.getReceived());
+    }
+    
+    @Test
+    public void enabledAndTracingIfAnySinkIs() {
+        assertFalse(new CompositeTelemetry().isEnabled());
+        assertFalse(new CompositeTelemetry(Telemetry.NONE).isEnabled());
+        CompositeTelemetry counting = new CompositeTelemetry(Telemetry.NONE, new RecordingTelemetry(false));
+        assertTrue(counting.isEnabled());
+        assertFalse(counting.isTracing());
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Percentiles are exact for small values and at most 12.5% above the real ones for large values, never above the max
+ * @author Marco Vasapollo
+ *
+ */
+public class LatencyHistogramTest {
+    
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 8; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-5);
+        assertEquals(9, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(0, histogram.getPercentile(20));
+        assertEquals(3, histogram.getPercentile(50));
+        assertEquals(7, histogram.getPercentile(100));
+        assertEquals(7, histogram.getMax());
+        assertEquals(28, histogram.getTotal());
+    }
+    
+    @Test
+    public void percentilesStayWithinTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value);
+        }
+        for (double percentile : new double[] { 1, 50, 90, 99, 99.9 }) {
+            long exact = (long) Math.ceil(100000 * percentile / 100);
+            long reported = histogram.getPercentile(percentile);
+            assertTrue(percentile + "th percentile " + reported, reported >= exact && reported <= exact * 1.125);
+        }
+        assertEquals(100000, histogram.getPercentile(100));
+        assertEquals(50000.5, histogram.getMean(), 1e-9);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+    
+    @Test
+    public void bucketsHoldTheirValues() {
+        Random random = new Random(15);
+        for (int i = 0; i < 100000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.lowestValue(bucket) <= value && value <= LatencyHistogram.highestValue(bucket));
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.bucket(Long.MAX_VALUE)));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void percentileAbove100IsRefused() {
+        new LatencyHistogram().getPercentile(101);
+    }
+}
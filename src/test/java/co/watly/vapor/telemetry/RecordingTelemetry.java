@@ -0,0 +1,63 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps everything it receives as text, in order, e.g. "record CONVERT 12"
+ * @author Marco Vasapollo
+ *
+ */
+class RecordingTelemetry implements Telemetry {
+    
+    private final boolean tracing;
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    
+    RecordingTelemetry(boolean tracing) {
+        this.tracing = tracing;
+    }
+    
+    final List<String> getReceived() {
+        return received;
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+    
+    @Override
+    public boolean isTracing() {
+        return tracing;
+    }
+    
+    @Override
+    public void record(Phase phase, long nanos) {
+        received.add("record " + phase + " " + nanos);
+    }
+    
+    @Override
+    public void measure(Measure measure, long value) {
+        received.add("measure " + measure + " " + value);
+    }
+    
+    @Override
+    public void count(Event event) {
+        received.add("count " + event);
+    }
+    
+    @Override
+    public void trace(Event event, Object... details) {
+        received.add("trace " + event + " " + details.length);
+    }
+}
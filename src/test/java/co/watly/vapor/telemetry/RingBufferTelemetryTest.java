@@ -0,0 +1,87 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.telemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Records reach the downstream sink in order while the ring wraps around, a full ring drops and counts the new ones
+ * @author Marco Vasapollo
+ *
+ */
+public class RingBufferTelemetryTest {
+    
+    @Test
+    public void fullRingDropsAndWrapsAround() throws InterruptedException {
+        CountDownLatch draining = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingTelemetry downstream = new RecordingTelemetry(true) {
+            
+            @Override
+            public void record(Phase phase, long nanos) {
+                draining.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.record(phase, nanos);
+            }
+        };
+        List<String> expected = new ArrayList<>();
+        // Rounded up to 4
+        RingBufferTelemetry ring = new RingBufferTelemetry(3, downstream);
+        try {
+            // The drainer takes the first record and hangs in the downstream sink: the ring is then filled and overflown
+            ring.record(Phase.COMPILE, 0);
+            expected.add("record COMPILE 0");
+            assertTrue(draining.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i <= 6; i++) {
+                ring.measure(Measure.JOURNEY_SAVED, i);
+                if (i <= 4) {
+                    expected.add("measure JOURNEY_SAVED " + i);
+                }
+            }
+            assertEquals(2, ring.getDropped());
+            release.countDown();
+            while (downstream.getReceived().size() < expected.size()) {
+                Thread.sleep(1);
+            }
+            // Twice around the ring, one slot after the other
+            for (int i = 0; i < 8; i++) {
+                ring.count(Event.PLAN_FAILED);
+                ring.trace(Event.ITINERARY_RECEIVED, i);
+                expected.add("count PLAN_FAILED");
+                expected.add("trace ITINERARY_RECEIVED 1");
+                while (downstream.getReceived().size() < expected.size() - 2) {
+                    Thread.sleep(1);
+                }
+            }
+        }
+        finally {
+            release.countDown();
+            ring.close();
+        }
+        assertEquals(expected, downstream.getReceived());
+        assertEquals(2, ring.getDropped());
+        ring.count(Event.PLAN_FAILED);
+        assertEquals("A closed ring drops everything", 3, ring.getDropped());
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.Itinerary;
+
+/**
+ * Plans must round-trip unchanged through {@link BinaryPlan}, and damaged plans must be refused
+ * @author Marco Vasapollo
+ *
+ */
+public class BinaryPlanTest {
+    
+    private static final VaporController CONTROLLER = TestFixtures.controller(TestFixtures.droneData());
+    
+    @Test
+    public void compiledPlansRoundTrip() {
+        for (Itinerary itinerary : TestFixtures.rounds(500, 20, 16)) {
+            DroneCommand[] plan = CONTROLLER.compile(itinerary);
+            ByteBuffer encoded = BinaryPlan.encode(plan);
+            assertEquals(BinaryPlan.encodedSize(plan), encoded.remaining());
+            assertArrayEquals(plan, BinaryPlan.decode(encoded));
+            assertEquals(0, encoded.remaining());
+            assertArrayEquals(plan, DroneCommand.fromJSON(JSON.convert(BinaryPlan.decode(BinaryPlan.encode(plan)))));
+        }
+    }
+    
+    @Test
+    public void extremeValuesRoundTrip() {
+        DroneCommand[] plan = { new DroneCommand("up", 0, 0L), new DroneCommand("down", Long.MAX_VALUE, Long.MIN_VALUE), new DroneCommand("forward", -1, -1L), 
+                new DroneCommand("rotate", 1, -0.0), new DroneCommand("rotate", 1, Double.NaN), new DroneCommand("rotate", 1, 1e-300) };
+        assertArrayEquals(plan, BinaryPlan.decode(BinaryPlan.encode(plan)));
+        assertArrayEquals(new DroneCommand[0], BinaryPlan.decode(BinaryPlan.encode(new DroneCommand[0])));
+    }
+    
+    @Test
+    public void damagedPlansAreRefused() {
+        ByteBuffer encoded = BinaryPlan.encode(CONTROLLER.compile(TestFixtures.rounds(1, 10, 17)[0]));
+        for (int i = 0; i < encoded.limit(); i++) {
+            ByteBuffer corrupted = copy(encoded);
+            corrupted.put(i, (byte) (corrupted.get(i) ^ 0x10));
+            assertRefused(corrupted);
+        }
+        for (int length = 0; length < encoded.limit(); length++) {
+            ByteBuffer truncated = copy(encoded);
+            truncated.limit(length);
+            assertRefused(truncated);
+        }
+    }
+    
+    private static void assertRefused(ByteBuffer plan) {
+        int position = plan.position();
+        try {
+            BinaryPlan.decode(plan);
+            fail("Damaged plan decoded");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("The position of a refused plan must not move", position, plan.position());
+        }
+    }
+    
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.limit());
+        copy.put(buffer.duplicate());
+        copy.flip();
+        return copy;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * Timeouts must never run the dependents of a future on the shared timer thread
+ * @author Marco Vasapollo
+ *
+ */
+public class FuturesTest {
+    
+    @Test
+    public void timeoutRunsDependentsOffTheTimer() {
+        CompletableFuture<String> thread = Futures.within(new CompletableFuture<Void>(), 10, TimeUnit.MILLISECONDS, TimeoutException::new)
+                .handle((v, e) -> Thread.currentThread().getName());
+        assertNotEquals("vapor-timer", thread.join());
+    }
+    
+    @Test
+    public void timeoutRunsDependentsOnTheCompleter() {
+        ExecutorService completer = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "completer"));
+        try {
+            CompletableFuture<String> thread = Futures.within(new CompletableFuture<Void>(), 10, TimeUnit.MILLISECONDS, TimeoutException::new, completer)
+                    .handle((v, e) -> e instanceof TimeoutException ? Thread.currentThread().getName() : null);
+            assertEquals("completer", thread.join());
+        }
+        finally {
+            completer.shutdown();
+        }
+    }
+    
+    @Test
+    public void rejectedTimeoutStillFails() {
+        CompletableFuture<Void> timed = Futures.within(new CompletableFuture<Void>(), 10, TimeUnit.MILLISECONDS, TimeoutException::new, task -> {
+            throw new RejectedExecutionException();
+        });
+        try {
+            timed.join();
+        }
+        catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+            return;
+        }
+        throw new AssertionError("The timeout must fail the future");
+    }
+    
+    @Test
+    public void completionInTimeWins() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> timed = Futures.within(future, 1, TimeUnit.MINUTES, TimeoutException::new);
+        future.complete("done");
+        assertEquals("done", timed.join());
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Distances from a location must match those from a point at the same place, and bearings must stay in [0, 360)
+ * @author Marco Vasapollo
+ *
+ */
+public class GeoPointsTest {
+    
+    @Test
+    public void bearingsStayBelow360() {
+        // Almost due north, a few ulps westward: atan2 returns a tiny negative angle, which rounds to 360 once shifted
+        double[][] legs = {
+                { 45.730878190703294, 9.410080811492202, 82.0563769289662, 9.410080811492197 },
+                { 45.33271705595951, 9.96775590942412, 80.06056010443103, 9.967755909424115 },
+                { 45.963704797023205, 9.939865388781909, 89.37722968486563, 9.939865388781904 },
+                { 45.93708214889597, 9.397174342184705, 83.44042848911079, 9.3971743421847 } };
+        for (double[] leg : legs) {
+            double bearing = GeoPoints.bearing(leg[0], leg[1], leg[2], leg[3]);
+            assertTrue("Bearing " + bearing, bearing >= 0 && bearing < 360);
+            bearing = new GeoPoints(new double[] { leg[0], leg[2] }, new double[] { leg[1], leg[3] }).bearing(0, 1);
+            assertTrue("Bearing " + bearing, bearing >= 0 && bearing < 360);
+        }
+        assertEquals(0, GeoPoints.bearing(45, 9, 46, 9), 0);
+        assertEquals(270, GeoPoints.bearing(0, 9, 0, 8), 1e-9);
+    }
+    
+    @Test
+    public void singlePairsMatchPoints() {
+        Random random = new Random(15);
+        for (int i = 0; i < 1000; i++) {
+            double[] latitudes = { 45 + random.nextDouble(), 45 + random.nextDouble() };
+            double[] longitudes = { 9 + random.nextDouble(), 9 + random.nextDouble() };
+            GeoPoints points = new GeoPoints(latitudes, longitudes);
+            assertEquals(points.distance(0, 1), GeoPoints.distance(latitudes[0], longitudes[0], latitudes[1], longitudes[1]), 1e-3);
+            double bearing = Math.abs(points.bearing(0, 1) - GeoPoints.bearing(latitudes[0], longitudes[0], latitudes[1], longitudes[1]));
+            assertEquals(0, Math.min(bearing, 360 - bearing), 1e-9);
+        }
+    }
+    
+    @Test
+    public void locationsMatchPoints() {
+        Random random = new Random(14);
+        int size = 200;
+        double[] latitudes = new double[size + 1];
+        double[] longitudes = new double[size + 1];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = 45 + random.nextDouble();
+            longitudes[i] = 9 + random.nextDouble();
+        }
+        // The last point is the location, left out of the points searched
+        GeoPoints all = new GeoPoints(latitudes, longitudes);
+        GeoPoints points = new GeoPoints(Arrays.copyOf(latitudes, size), Arrays.copyOf(longitudes, size));
+        double[] expected = new double[size + 1];
+        double[] actual = new double[size];
+        all.distances(size, expected);
+        points.distances(latitudes[size], longitudes[size], actual);
+        int nearest = 0;
+        for (int j = 0; j < size; j++) {
+            assertEquals(expected[j], actual[j], 1e-6);
+            if (expected[j] < expected[nearest]) {
+                nearest = j;
+            }
+        }
+        assertEquals(nearest, points.nearest(latitudes[size], longitudes[size]));
+        assertEquals(-1, new GeoPoints(new double[0], new double[0]).nearest(45, 9));
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import co.watly.vapor.TestFixtures;
+import co.watly.vapor.controller.VaporController;
+import co.watly.vapor.data.DroneCommand;
+import co.watly.vapor.data.Itinerary;
+
+/**
+ * Plans must come out of a {@link PlanStore} as they went in, whole or field by field
+ * @author Marco Vasapollo
+ *
+ */
+public class PlanStoreTest {
+    
+    @Test
+    public void plansRoundTrip() {
+        VaporController controller = TestFixtures.controller(TestFixtures.droneData());
+        List<DroneCommand[]> plans = new ArrayList<>();
+        for (Itinerary itinerary : TestFixtures.rounds(1000, 8, 20)) {
+            plans.add(controller.compile(itinerary));
+        }
+        plans.add(new DroneCommand[0]);
+        plans.add(new DroneCommand[] { new DroneCommand("down", Long.MAX_VALUE, Long.MIN_VALUE), new DroneCommand("rotate", -1, -0.5) });
+        
+        // Tiny initial capacity, so that the store grows many times
+        PlanStore store = new PlanStore(1, 1);
+        int commands = 0;
+        for (int i = 0; i < plans.size(); i++) {
+            assertEquals(i, store.add(plans.get(i)));
+            commands += plans.get(i).length;
+        }
+        store.trim();
+        assertEquals(plans.size(), store.size());
+        assertEquals(commands, store.getCommandCount());
+        for (int plan = 0; plan < plans.size(); plan++) {
+            DroneCommand[] expected = plans.get(plan);
+            assertArrayEquals(expected, store.get(plan));
+            assertEquals(expected.length, store.length(plan));
+            for (int step = 0; step < expected.length; step++) {
+                assertEquals(expected[step], store.get(plan, step));
+                assertEquals(expected[step].getName(), store.getName(plan, step));
+                assertEquals(expected[step].getSpeed(), store.getSpeed(plan, step));
+                assertEquals(expected[step].isDecimal(), store.isDecimal(plan, step));
+                assertEquals(expected[step].getArgAsLong(), store.getArgAsLong(plan, step));
+                assertEquals(Double.doubleToLongBits(expected[step].getArgAsDouble()), Double.doubleToLongBits(store.getArgAsDouble(plan, step)));
+            }
+        }
+    }
+}
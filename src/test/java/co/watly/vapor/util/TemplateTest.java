@@ -0,0 +1,68 @@
+/**
+ * This work is licensed under the 
+ * Creative Commons Attribution-ShareAlike 4.0 International License. 
+ * To view a copy of this license, visit 
+ * http://creativecommons.org/licenses/by-sa/4.0/ 
+ * or send a letter to 
+ * Creative Commons, 
+ * PO Box 1866, Mountain View, 
+ * CA 94042, USA.
+ */
+package co.watly.vapor.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * A compiled template must render as the plain replacement of each "{index}" it stands for
+ * @author Marco Vasapollo
+ *
+ */
+public class TemplateTest {
+    
+    private static final String[] TEMPLATES = {
+            "", "plain", "{0}", "{1} then {0}", "{0}{1}{2}{3}", "{0} at {1} cm/sec", "{", "}", "}{0}{", "{{0}}", "{1", "0}",
+            "{}", "{-1}", "{ 0}", "{01}", "{00}", "{007} and {0}", "{99999999999}", "{2147483648}", "{999999999}", "{\u0663}", "{0x1}"
+    };
+    
+    @Test
+    public void rendersAsPlainReplacement() {
+        for (String template : TEMPLATES) {
+            for (int count = 1; count <= 4; count++) {
+                Object[] values = new Object[count];
+                for (int i = 0; i < count; i++) {
+                    values[i] = i == 2 ? null : "v" + i;
+                }
+                assertEquals(template, replace(template, values), Template.compile(template).format(values));
+            }
+        }
+    }
+    
+    @Test
+    public void primitiveOverloadsMatchFormat() {
+        for (String template : TEMPLATES) {
+            Template compiled = Template.compile(template);
+            assertEquals(template, compiled.format(7L), compiled.appendTo(new StringBuilder(), 7L).toString());
+            assertEquals(template, compiled.format(7L, 1.5), compiled.appendTo(new StringBuilder(), 7L, 1.5).toString());
+            assertEquals(template, compiled.format(7L, 8L, 9L), compiled.appendTo(new StringBuilder(), 7L, 8L, 9L).toString());
+            assertEquals(template, compiled.format("up", 8L, 9L), compiled.appendTo(new StringBuilder(), "up", 8L, 9L).toString());
+        }
+    }
+    
+    @Test
+    public void helperKeepsOutOfRangeIndexes() {
+        assertEquals("{99999999999} {01} a", Helper.stringFormat("{99999999999} {01} {0}", "a"));
+    }
+    
+    /**
+     * Reference semantics: every "{i}" replaced by the i-th value, null values rendered as "null"
+     */
+    private static String replace(String template, Object[] values) {
+        String result = template;
+        for (int i = 0; i < values.length; i++) {
+            result = result.replace("{" + i + "}", String.valueOf(values[i]));
+        }
+        return result;
+    }
+}